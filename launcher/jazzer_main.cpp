@@ -101,9 +101,19 @@ int main(int argc, char **argv) {
       FLAGS_additional_jvm_args = split[1];
     } else if (split[0] == "--agent_path") {
       FLAGS_agent_path = split[1];
+    } else if (split[0] == "--cds_archive") {
+      FLAGS_cds_archive = split[1];
+    } else if (split[0] == "--internal.cds_warm_up") {
+      FLAGS_cds_warm_up = split[1] == "true";
     }
   }
 
+#if !defined(_WIN32) && !defined(_ANDROID)
+  if (!FLAGS_cds_archive.empty() && !FLAGS_cds_warm_up) {
+    jazzer::CreateCdsArchiveIfMissing(argc, argv);
+  }
+#endif
+
   StartLibFuzzer(std::unique_ptr<jazzer::JVM>(new jazzer::JVM()),
                  std::vector<std::string>(argv + 1, argv + argc));
 }
@@ -25,6 +25,14 @@
 #include <unistd.h>
 #endif
 
+#if !defined(_WIN32) && !defined(_ANDROID)
+#include <fcntl.h>
+#include <sys/file.h>
+#include <sys/wait.h>
+#include <unistd.h>
+#endif
+
+#include <cstdio>
 #include <cstdlib>
 #include <fstream>
 #include <iostream>
@@ -42,6 +50,8 @@ std::string FLAGS_cp = ".";
 std::string FLAGS_jvm_args;
 std::string FLAGS_additional_jvm_args;
 std::string FLAGS_agent_path;
+std::string FLAGS_cds_archive;
+bool FLAGS_cds_warm_up = false;
 
 #if defined(_WIN32) || defined(_WIN64)
 #define ARG_SEPARATOR ";"
@@ -129,6 +139,41 @@ std::string getInstrumentorAgentPath() {
   exit(1);
 }
 
+#if !defined(_ANDROID)
+// The archive is written to a temporary file first so that concurrently
+// started launchers never map a partially written archive.
+constexpr char kCdsArchiveTempSuffix[] = ".tmp";
+
+// Returns the JVM options that make the JVM map the classes in the AppCDS
+// archive at |archive_path| instead of loading, parsing and verifying them
+// from the class path. During the warm-up run started by
+// CreateCdsArchiveIfMissing, the JVM instead writes a temporary archive with
+// all classes it has loaded when it exits through System.exit. Both options
+// require JDK 13 or later, older JDKs ignore them.
+std::vector<std::string> getCdsArchiveArgs(const std::string &archive_path) {
+  if (FLAGS_cds_warm_up) {
+    return {absl::StrFormat("-XX:ArchiveClassesAtExit=%s%s", archive_path,
+                            kCdsArchiveTempSuffix)};
+  }
+  if (std::ifstream(archive_path).good()) {
+    return {absl::StrFormat("-XX:SharedArchiveFile=%s", archive_path)};
+  }
+  return {};
+}
+
+// Defined by jni.h as of JDK 21.
+#ifndef JNI_VERSION_21
+#define JNI_VERSION_21 0x00150000
+#endif
+
+// Returns whether the JVM supports |jni_version|, which every JDK since 19
+// increments with its feature release.
+bool supportsJniVersion(jint jni_version) {
+  JavaVMInitArgs args = {.version = jni_version};
+  return JNI_GetDefaultJavaVMInitArgs(&args) == JNI_OK;
+}
+#endif
+
 // Splits a string at the ARG_SEPARATOR unless it is escaped with a backslash.
 // Backslash itself can be escaped with another backslash.
 std::vector<std::string> splitEscaped(const std::string &str) {
@@ -241,6 +286,27 @@ JVM::JVM() {
       JavaVMOption{.optionString = (char *)"-XX:+IgnoreUnrecognizedVMOptions"});
   options.push_back(
       JavaVMOption{.optionString = (char *)"-XX:+CriticalJNINatives"});
+  // On JDK 21+, TraceDataFlowForeignCallbacks replaces CriticalJNINatives with
+  // the Foreign Function & Memory API, which requires native access. Older
+  // JDKs would fail to start as IgnoreUnrecognizedVMOptions doesn't cover this
+  // option.
+  if (supportsJniVersion(JNI_VERSION_21)) {
+    options.push_back(JavaVMOption{
+        .optionString = (char *)"--enable-native-access=ALL-UNNAMED"});
+  }
+#endif
+
+  // Keep the vector in scope as it contains the strings backing the C strings
+  // added to options.
+  std::vector<std::string> cds_archive_args;
+#if !defined(_ANDROID)
+  if (!FLAGS_cds_archive.empty()) {
+    cds_archive_args = getCdsArchiveArgs(FLAGS_cds_archive);
+    for (const auto &arg : cds_archive_args) {
+      options.push_back(
+          JavaVMOption{.optionString = const_cast<char *>(arg.c_str())});
+    }
+  }
 #endif
 
   std::vector<std::string> java_opts_args;
@@ -310,4 +376,45 @@ JVM::JVM() {
 JNIEnv &JVM::GetEnv() const { return *env_; }
 
 JVM::~JVM() { jvm_->DestroyJavaVM(); }
+
+#if !defined(_WIN32) && !defined(_ANDROID)
+void CreateCdsArchiveIfMissing(int argc, char **argv) {
+  if (std::ifstream(FLAGS_cds_archive).good()) return;
+  // Serializes the warm-up runs of concurrently started launchers. Launchers
+  // that wait for the lock use the archive created by the first one.
+  int lock_fd = open(absl::StrFormat("%s.lock", FLAGS_cds_archive).c_str(),
+                     O_RDWR | O_CREAT | O_CLOEXEC, 0644);
+  if (lock_fd == -1 || flock(lock_fd, LOCK_EX) != 0) {
+    std::cerr << "WARN: Failed to lock " << FLAGS_cds_archive
+              << ".lock, not creating the AppCDS archive" << std::endl;
+    if (lock_fd != -1) close(lock_fd);
+    return;
+  }
+  if (!std::ifstream(FLAGS_cds_archive).good()) {
+    std::cerr << "INFO: Creating AppCDS archive " << FLAGS_cds_archive
+              << std::endl;
+    std::string executable_path = getExecutablePath();
+    std::string warm_up_arg = "--internal.cds_warm_up=true";
+    std::vector<char *> warm_up_argv(argv, argv + argc);
+    warm_up_argv.push_back(const_cast<char *>(warm_up_arg.c_str()));
+    warm_up_argv.push_back(nullptr);
+    pid_t pid = fork();
+    if (pid == 0) {
+      execv(executable_path.c_str(), warm_up_argv.data());
+      _exit(127);
+    }
+    std::string temp_archive =
+        absl::StrFormat("%s%s", FLAGS_cds_archive, kCdsArchiveTempSuffix);
+    int status;
+    if (pid == -1 || waitpid(pid, &status, 0) == -1 || !WIFEXITED(status) ||
+        WEXITSTATUS(status) != 0 ||
+        rename(temp_archive.c_str(), FLAGS_cds_archive.c_str()) != 0) {
+      std::cerr << "WARN: Failed to create AppCDS archive " << FLAGS_cds_archive
+                << std::endl;
+      unlink(temp_archive.c_str());
+    }
+  }
+  close(lock_fd);
+}
+#endif
 }  // namespace jazzer
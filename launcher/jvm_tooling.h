@@ -24,11 +24,23 @@ extern std::string FLAGS_cp;
 extern std::string FLAGS_jvm_args;
 extern std::string FLAGS_additional_jvm_args;
 extern std::string FLAGS_agent_path;
+extern std::string FLAGS_cds_archive;
+extern bool FLAGS_cds_warm_up;
 
 namespace jazzer {
 
 void DumpJvmStackTraces();
 
+#if !defined(_WIN32) && !defined(_ANDROID)
+// Creates the AppCDS archive specified with --cds_archive if it doesn't exist
+// by running the launcher with the arguments |argv| once more in a warm-up
+// mode. In this mode, the JVM exits through System.exit right before it would
+// start libFuzzer, which is the only kind of exit after which HotSpot writes
+// the archive. Fuzzing JVMs, including all fork mode workers, exit through
+// libFuzzer's native exit and thus only ever read the archive.
+void CreateCdsArchiveIfMissing(int argc, char **argv);
+#endif
+
 // JVM is a thin wrapper around JNI_CreateJavaVM and DestroyJavaVM. The JVM
 // instance is created inside the constructor with some default JNI options
 // + options which can be added to via command line flags.
@@ -16,6 +16,7 @@ package com.code_intelligence.jazzer.sanitizers
 
 import com.code_intelligence.jazzer.api.FuzzerSecurityIssueCritical
 import com.code_intelligence.jazzer.api.HookType
+import com.code_intelligence.jazzer.api.HookedMethod
 import com.code_intelligence.jazzer.api.Jazzer
 import com.code_intelligence.jazzer.api.MethodHook
 import com.code_intelligence.jazzer.api.MethodHooks
@@ -92,7 +93,7 @@ object LdapInjection {
     @JvmStatic
     fun searchLdapContext(method: MethodHandle, thisObject: Any?, args: Array<Any>, hookId: Int): Any? {
         try {
-            return method.invokeWithArguments(thisObject, *args).also {
+            return HookedMethod.invoke(method, thisObject, args).also {
                 (args[0] as? String)?.let { name ->
                     Jazzer.guideTowardsEquality(name, NAME_CHARACTERS, hookId)
                 }
@@ -16,6 +16,7 @@ package com.code_intelligence.jazzer.sanitizers
 
 import com.code_intelligence.jazzer.api.FuzzerSecurityIssueLow
 import com.code_intelligence.jazzer.api.HookType
+import com.code_intelligence.jazzer.api.HookedMethod
 import com.code_intelligence.jazzer.api.Jazzer
 import com.code_intelligence.jazzer.api.MethodHook
 import com.code_intelligence.jazzer.api.MethodHooks
@@ -52,7 +53,7 @@ object RegexInjection {
     fun compileWithFlagsHook(method: MethodHandle, alwaysNull: Any?, args: Array<Any?>, hookId: Int): Any? {
         val pattern = args[0] as String?
         val hasCanonEqFlag = ((args[1] as Int) and Pattern.CANON_EQ) != 0
-        return hookInternal(method, pattern, hasCanonEqFlag, hookId, *args)
+        return hookInternal(method, pattern, hasCanonEqFlag, hookId, alwaysNull, args)
     }
 
     @MethodHooks(
@@ -71,7 +72,7 @@ object RegexInjection {
     )
     @JvmStatic
     fun patternHook(method: MethodHandle, alwaysNull: Any?, args: Array<Any?>, hookId: Int): Any? {
-        return hookInternal(method, args[0] as String?, false, hookId, *args)
+        return hookInternal(method, args[0] as String?, false, hookId, alwaysNull, args)
     }
 
     @MethodHooks(
@@ -108,7 +109,7 @@ object RegexInjection {
     )
     @JvmStatic
     fun stringHook(method: MethodHandle, thisObject: Any?, args: Array<Any?>, hookId: Int): Any? {
-        return hookInternal(method, args[0] as String?, false, hookId, thisObject, *args)
+        return hookInternal(method, args[0] as String?, false, hookId, thisObject, args)
     }
 
     private fun hookInternal(
@@ -116,7 +117,8 @@ object RegexInjection {
         pattern: String?,
         hasCanonEqFlag: Boolean,
         hookId: Int,
-        vararg args: Any?,
+        thisObject: Any?,
+        args: Array<Any?>,
     ): Any? {
         if (hasCanonEqFlag && pattern != null) {
             // With CANON_EQ enabled, Pattern.compile allocates an array with a size that is
@@ -139,7 +141,7 @@ memory allocations, even when wrapped with Pattern.quote(...).""",
             }
         }
         try {
-            return method.invokeWithArguments(*args).also {
+            return HookedMethod.invoke(method, thisObject, args).also {
                 // Only submit a fuzzer hint if no exception has been thrown.
                 if (!hasCanonEqFlag && pattern != null) {
                     Jazzer.guideTowardsContainment(pattern, FORCE_PATTERN_SYNTAX_EXCEPTION_PATTERN, hookId)
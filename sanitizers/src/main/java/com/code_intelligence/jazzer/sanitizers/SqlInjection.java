@@ -19,10 +19,10 @@ import static java.util.stream.Collectors.toSet;
 
 import com.code_intelligence.jazzer.api.FuzzerSecurityIssueHigh;
 import com.code_intelligence.jazzer.api.HookType;
+import com.code_intelligence.jazzer.api.HookedMethod;
 import com.code_intelligence.jazzer.api.Jazzer;
 import com.code_intelligence.jazzer.api.MethodHook;
 import java.lang.invoke.MethodHandle;
-import java.util.Arrays;
 import java.util.Set;
 import java.util.stream.Stream;
 import net.sf.jsqlparser.JSQLParserException;
@@ -88,8 +88,7 @@ public class SqlInjection {
       Jazzer.guideTowardsContainment(query, CHARACTERS_TO_ESCAPE, hookId);
     }
     try {
-      return method.invokeWithArguments(
-          Stream.concat(Stream.of(thisObject), Arrays.stream(arguments)).toArray());
+      return HookedMethod.invoke(method, thisObject, arguments);
     } catch (Throwable throwable) {
       // If we already validated the query string and know it's correct,
       // The exception is likely thrown by a non-existent table or something
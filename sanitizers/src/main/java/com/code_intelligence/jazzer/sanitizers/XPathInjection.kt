@@ -16,6 +16,7 @@ package com.code_intelligence.jazzer.sanitizers
 
 import com.code_intelligence.jazzer.api.FuzzerSecurityIssueHigh
 import com.code_intelligence.jazzer.api.HookType
+import com.code_intelligence.jazzer.api.HookedMethod
 import com.code_intelligence.jazzer.api.Jazzer
 import com.code_intelligence.jazzer.api.MethodHook
 import com.code_intelligence.jazzer.api.MethodHooks
@@ -53,7 +54,7 @@ object XPathInjection {
             Jazzer.guideTowardsContainment(query, CHARACTERS_TO_ESCAPE, hookId)
         }
         return try {
-            method.invokeWithArguments(thisObject, *arguments)
+            HookedMethod.invoke(method, thisObject, arguments)
         } catch (exception: XPathExpressionException) {
             // find innermost cause
             var innerCause = exception.cause
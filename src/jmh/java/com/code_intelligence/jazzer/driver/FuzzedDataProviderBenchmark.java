@@ -0,0 +1,116 @@
+/*
+ * Copyright 2023 Code Intelligence GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.code_intelligence.jazzer.driver;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the JNI-backed {@link FuzzedDataProviderImpl} with {@link
+ * PureJavaFuzzedDataProviderImpl} on a mix of consume calls typical for fuzz targets.
+ */
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 3)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class FuzzedDataProviderBenchmark {
+  @State(Scope.Thread)
+  public static class FuzzedDataProviderState {
+    @Param({"native", "pureJava"}) String implementation;
+
+    FuzzedDataProviderImpl data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      byte[] input = new byte[1024];
+      ThreadLocalRandom.current().nextBytes(input);
+      switch (implementation) {
+        case "native":
+          data = FuzzedDataProviderImpl.withJavaData(input);
+          break;
+        case "pureJava":
+          data = PureJavaFuzzedDataProviderImpl.withJavaData(input);
+          break;
+        default:
+          throw new IllegalArgumentException(implementation);
+      }
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+      data.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      data.close();
+    }
+  }
+
+  @Benchmark
+  public void consumeIntegrals(FuzzedDataProviderState state, Blackhole blackhole) {
+    FuzzedDataProviderImpl data = state.data;
+    for (int i = 0; i < 32; i++) {
+      blackhole.consume(data.consumeBoolean());
+      blackhole.consume(data.consumeInt());
+      blackhole.consume(data.consumeInt(-100, 100));
+      blackhole.consume(data.consumeLong());
+    }
+  }
+
+  @Benchmark
+  public void consumeFloats(FuzzedDataProviderState state, Blackhole blackhole) {
+    FuzzedDataProviderImpl data = state.data;
+    for (int i = 0; i < 32; i++) {
+      blackhole.consume(data.consumeDouble());
+      blackhole.consume(data.consumeRegularFloat(-1.5f, 3.5f));
+    }
+  }
+
+  @Benchmark
+  public void consumeStrings(FuzzedDataProviderState state, Blackhole blackhole) {
+    FuzzedDataProviderImpl data = state.data;
+    for (int i = 0; i < 16; i++) {
+      blackhole.consume(data.consumeString(16));
+      blackhole.consume(data.consumeAsciiString(16));
+    }
+  }
+
+  @Benchmark
+  public void consumeBytes(FuzzedDataProviderState state, Blackhole blackhole) {
+    FuzzedDataProviderImpl data = state.data;
+    for (int i = 0; i < 16; i++) {
+      blackhole.consume(data.consumeBytes(16));
+      blackhole.consume(data.consumeInts(4));
+    }
+  }
+}
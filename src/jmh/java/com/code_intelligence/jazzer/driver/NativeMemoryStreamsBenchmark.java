@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 Code Intelligence GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.code_intelligence.jazzer.driver;
+
+import com.code_intelligence.jazzer.mutation.ArgumentsMutator;
+import com.code_intelligence.jazzer.utils.UnsafeProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sun.misc.Unsafe;
+
+/**
+ * Compares the heap-copying input pipeline previously used by FuzzTargetRunner with direct reads
+ * from and writes to native memory. Run with {@code -prof gc} to see the difference in allocation
+ * rate.
+ */
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 3)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class NativeMemoryStreamsBenchmark {
+  private static final Unsafe UNSAFE = UnsafeProvider.getUnsafe();
+  private static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+  private static final int MAX_SIZE = 4096;
+
+  @SuppressWarnings("unused")
+  public static void fuzzerTestOneInput(int i, String s, List<Integer> list) {}
+
+  @State(Scope.Thread)
+  public static class MutatorState {
+    ArgumentsMutator mutator;
+    long dataPtr;
+    int dataLength;
+    NativeMemoryInputStream input = new NativeMemoryInputStream();
+    NativeMemoryOutputStream output = new NativeMemoryOutputStream();
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchMethodException {
+      mutator = ArgumentsMutator.forStaticMethodOrThrow(NativeMemoryStreamsBenchmark.class.getMethod(
+          "fuzzerTestOneInput", int.class, String.class, List.class));
+      mutator.init(1337);
+      for (int i = 0; i < 10; i++) {
+        mutator.mutate(i);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      mutator.write(out);
+      byte[] bytes = out.toByteArray();
+      dataLength = Math.min(bytes.length, MAX_SIZE);
+      dataPtr = UNSAFE.allocateMemory(MAX_SIZE);
+      UNSAFE.copyMemory(bytes, BYTE_ARRAY_OFFSET, null, dataPtr, dataLength);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      UNSAFE.freeMemory(dataPtr);
+    }
+  }
+
+  @Benchmark
+  public boolean readViaHeapCopy(MutatorState state) {
+    byte[] buf = new byte[state.dataLength];
+    UNSAFE.copyMemory(null, state.dataPtr, buf, BYTE_ARRAY_OFFSET, state.dataLength);
+    return state.mutator.read(new ByteArrayInputStream(buf));
+  }
+
+  @Benchmark
+  public boolean readViaNativeMemory(MutatorState state) {
+    return state.mutator.read(state.input.reset(state.dataPtr, state.dataLength));
+  }
+
+  @Benchmark
+  public int writeViaHeapCopy(MutatorState state) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    state.mutator.write(out);
+    byte[] bytes = out.toByteArray();
+    int newSize = Math.min(bytes.length, MAX_SIZE);
+    UNSAFE.copyMemory(bytes, BYTE_ARRAY_OFFSET, null, state.dataPtr, newSize);
+    return newSize;
+  }
+
+  @Benchmark
+  public int writeViaNativeMemory(MutatorState state) {
+    NativeMemoryOutputStream out = state.output.reset(state.dataPtr, MAX_SIZE);
+    state.mutator.write(out);
+    return out.size();
+  }
+}
@@ -179,7 +179,7 @@ public class FuzzerCallbacksBenchmark {
       needle = randomString(length, asciiOnly);
     }
 
-    private String randomString(int length, boolean asciiOnly) {
+    private static String randomString(int length, boolean asciiOnly) {
       String asciiString =
           ThreadLocalRandom.current()
               .ints('a', 'z' + 1)
@@ -216,4 +216,42 @@ public class FuzzerCallbacksBenchmark {
       throws UnsupportedEncodingException {
     FuzzerCallbacksOptimizedNonCritical.traceStrstrJava(state.haystack, state.needle, state.pc);
   }
+
+  @Benchmark
+  public void traceStrstrOptimizedJavaCachedNonCritical(TraceStrstrState state) {
+    FuzzerCallbacksOptimizedNonCritical.traceStrstrJavaCached(
+        state.haystack, state.needle, state.pc);
+  }
+
+  @State(Scope.Benchmark)
+  public static class TraceStrcmpState {
+    @Param({"10", "100"}) int length;
+    @Param({"true", "false"}) boolean asciiOnly;
+
+    // Models the common case of a fuzzer-provided string being compared against a literal: The
+    // constant side is always the same String instance, the dynamic side is a new instance on
+    // every comparison.
+    String constant;
+    char[] dynamicChars;
+    int pc = 0x12345678;
+
+    @Setup
+    public void setup() {
+      constant = TraceStrstrState.randomString(length, asciiOnly).intern();
+      dynamicChars = TraceStrstrState.randomString(length, asciiOnly).toCharArray();
+    }
+  }
+
+  @Benchmark
+  public void traceStrcmpOptimizedJavaNonCritical(TraceStrcmpState state)
+      throws UnsupportedEncodingException {
+    FuzzerCallbacksOptimizedNonCritical.traceStrcmpJava(
+        new String(state.dynamicChars), state.constant, 1, state.pc);
+  }
+
+  @Benchmark
+  public void traceStrcmpOptimizedJavaCachedNonCritical(TraceStrcmpState state) {
+    FuzzerCallbacksOptimizedNonCritical.traceStrcmpJavaCached(
+        new String(state.dynamicChars), state.constant, 1, state.pc);
+  }
 }
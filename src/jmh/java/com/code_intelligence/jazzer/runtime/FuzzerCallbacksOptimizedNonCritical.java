@@ -42,5 +42,51 @@ public final class FuzzerCallbacksOptimizedNonCritical {
     traceStrstrInternal(needle.substring(0, Math.min(needle.length(), 64)).getBytes("CESU8"), pc);
   }
 
+  static void traceStrcmpJava(String s1, String s2, int result, int pc)
+      throws UnsupportedEncodingException {
+    traceMemcmp(s1.substring(0, Math.min(s1.length(), 64)).getBytes("CESU8"),
+        s2.substring(0, Math.min(s2.length(), 64)).getBytes("CESU8"), result, pc);
+  }
+
+  private static final ThreadLocal<byte[][]> ENCODING_SCRATCH_BUFFERS =
+      ThreadLocal.withInitial(() -> new byte[2][Cesu8EncodingCache.MAX_ENCODED_LENGTH]);
+
+  static void traceStrcmpJavaCached(String s1, String s2, int result, int pc) {
+    byte[] b1 = Cesu8EncodingCache.getCached(s1);
+    byte[] b2 = Cesu8EncodingCache.getCached(s2);
+    int b1Length;
+    int b2Length;
+    if (b1 != null) {
+      b1Length = b1.length;
+    } else {
+      b1 = ENCODING_SCRATCH_BUFFERS.get()[0];
+      b1Length = Cesu8EncodingCache.encode(s1, b1);
+    }
+    if (b2 != null) {
+      b2Length = b2.length;
+    } else {
+      b2 = ENCODING_SCRATCH_BUFFERS.get()[1];
+      b2Length = Cesu8EncodingCache.encode(s2, b2);
+    }
+    traceMemcmpInternal(b1, b1Length, b2, b2Length, result, pc);
+  }
+
+  static void traceStrstrJavaCached(String haystack, String needle, int pc) {
+    byte[] needleBytes = Cesu8EncodingCache.getCached(needle);
+    int needleLength;
+    if (needleBytes != null) {
+      needleLength = needleBytes.length;
+    } else {
+      needleBytes = ENCODING_SCRATCH_BUFFERS.get()[0];
+      needleLength = Cesu8EncodingCache.encode(needle, needleBytes);
+    }
+    traceMemmemInternal(needleBytes, needleLength, pc);
+  }
+
   private static native void traceStrstrInternal(byte[] needle, int pc);
+
+  private static native void traceMemmemInternal(byte[] needle, int needleLength, int pc);
+
+  private static native void traceMemcmpInternal(
+      byte[] b1, int b1Length, byte[] b2, int b2Length, int result, int pc);
 }
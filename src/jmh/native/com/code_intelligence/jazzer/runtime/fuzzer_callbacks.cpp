@@ -211,3 +211,25 @@ JavaCritical_com_code_1intelligence_jazzer_runtime_FuzzerCallbacksOptimizedCriti
   __sanitizer_weak_hook_memmem(idToPc(id), nullptr, 0, needle, needle_length,
                                nullptr);
 }
+
+void Java_com_code_1intelligence_jazzer_runtime_FuzzerCallbacksOptimizedNonCritical_traceMemmemInternal(
+    JNIEnv *env, jclass cls, jbyteArray needle, jint needle_length, jint id) {
+  auto *needle_native =
+      static_cast<jbyte *>(env->GetPrimitiveArrayCritical(needle, nullptr));
+  __sanitizer_weak_hook_memmem(idToPc(id), nullptr, 0, needle_native,
+                               needle_length, nullptr);
+  env->ReleasePrimitiveArrayCritical(needle, needle_native, JNI_ABORT);
+}
+
+void Java_com_code_1intelligence_jazzer_runtime_FuzzerCallbacksOptimizedNonCritical_traceMemcmpInternal(
+    JNIEnv *env, jclass cls, jbyteArray b1, jint b1_length, jbyteArray b2,
+    jint b2_length, jint result, jint id) {
+  auto *b1_native =
+      static_cast<jbyte *>(env->GetPrimitiveArrayCritical(b1, nullptr));
+  auto *b2_native =
+      static_cast<jbyte *>(env->GetPrimitiveArrayCritical(b2, nullptr));
+  __sanitizer_weak_hook_compare_bytes(idToPc(id), b1_native, b2_native,
+                                      b1_length, b2_length, result);
+  env->ReleasePrimitiveArrayCritical(b1, b1_native, JNI_ABORT);
+  env->ReleasePrimitiveArrayCritical(b2, b2_native, JNI_ABORT);
+}
@@ -16,8 +16,11 @@
 
 package com.code_intelligence.jazzer.agent
 
+import com.code_intelligence.jazzer.Constants.JAZZER_VERSION
 import com.code_intelligence.jazzer.driver.Opt
+import com.code_intelligence.jazzer.instrumentor.ClassPathScan
 import com.code_intelligence.jazzer.instrumentor.CoverageRecorder
+import com.code_intelligence.jazzer.instrumentor.Hook
 import com.code_intelligence.jazzer.instrumentor.Hooks
 import com.code_intelligence.jazzer.instrumentor.InstrumentationType
 import com.code_intelligence.jazzer.sanitizers.Constants
@@ -29,6 +32,13 @@ import java.nio.file.Paths
 import kotlin.io.path.exists
 import kotlin.io.path.isDirectory
 
+/**
+ * The [RuntimeInstrumentor] registered by the last call to [installInternal], which can also be used to instrument
+ * classes that aren't loaded.
+ */
+var installedRuntimeInstrumentor: RuntimeInstrumentor? = null
+    private set
+
 fun install(instrumentation: Instrumentation) {
     installInternal(instrumentation)
 }
@@ -44,6 +54,8 @@ fun installInternal(
     trace: List<String> = Opt.trace,
     idSyncFile: String? = Opt.idSyncFile,
     dumpClassesDir: String = Opt.dumpClassesDir,
+    instrumentationCacheDir: String = Opt.instrumentationCacheDir,
+    hookIndexDir: String = Opt.hookIndexDir,
     additionalClassesExcludes: List<String> = Opt.additionalClassesExcludes,
 ) {
     val allCustomHookNames = (Constants.SANITIZER_HOOK_NAMES + userHookNames).toSet()
@@ -115,7 +127,37 @@ fun installInternal(
     // not be considered when resolving references to hook methods, leading to NoClassDefFoundError
     // being thrown.
     Hooks.appendHooksToBootstrapClassLoaderSearch(instrumentation, customHookNames.toSet())
-    val (includedHooks, customHooks) = Hooks.loadHooks(additionalClassesExcludes, includedHookNames.toSet(), customHookNames.toSet())
+    val hookIndexDirPath = hookIndexDir.takeUnless { it.isEmpty() }?.let {
+        val path = Paths.get(it).toAbsolutePath()
+        if (path.exists() && path.isDirectory()) {
+            path
+        } else {
+            Log.warn("Cannot cache hook targets in $path; does not exist or not a directory")
+            null
+        }
+    }
+    val (includedHooks, customHooks) = Hooks.loadHooks(
+        additionalClassesExcludes,
+        includedHookNames.toSet(),
+        customHookNames.toSet(),
+        hookIndexDir = hookIndexDirPath,
+    )
+
+    val instrumentationCache = instrumentationCacheDir.takeUnless { it.isEmpty() }?.let {
+        Paths.get(it).toAbsolutePath().let { path ->
+            if (path.exists() && path.isDirectory()) {
+                Log.info("Caching instrumented classes in $path")
+                InstrumentationCache(
+                    path,
+                    Opt.instrumentationCacheMaxSize,
+                    instrumentationConfiguration(instrumentationTypes, includedHooks.hooks, customHooks.hooks),
+                )
+            } else {
+                Log.error("Cannot cache instrumented classes in $path; does not exist or not a directory")
+                null
+            }
+        }
+    }
 
     val runtimeInstrumentor = RuntimeInstrumentor(
         instrumentation,
@@ -127,7 +169,9 @@ fun installInternal(
         customHooks.additionalHookClassNameGlobber,
         coverageIdSynchronizer,
         dumpClassesDirPath,
+        instrumentationCache,
     )
+    installedRuntimeInstrumentor = runtimeInstrumentor
 
     // These classes are e.g. dependencies of the RuntimeInstrumentor or hooks and thus were loaded
     // before the instrumentor was ready. Since we haven't enabled it yet, they can safely be
@@ -150,6 +194,9 @@ fun installInternal(
             retransformClassesWithRetry(instrumentation, classesToRetransform)
         }
     }
+    // The scan has been shared by hook loading and the retransformation of classes loaded by the bootstrap class
+    // loader. Classes are rarely retransformed later on, so it isn't worth keeping it in memory.
+    ClassPathScan.release()
 }
 
 private fun retransformClassesWithRetry(instrumentation: Instrumentation, classesToRetransform: Array<Class<*>>) {
@@ -167,6 +214,28 @@ private fun retransformClassesWithRetry(instrumentation: Instrumentation, classe
     }
 }
 
+/**
+ * Describes all options that influence how a class is instrumented apart from its bytecode and coverage IDs, which
+ * [InstrumentationCache] takes into account separately.
+ */
+internal fun instrumentationConfiguration(
+    instrumentationTypes: Set<InstrumentationType>,
+    includedHooks: List<Hook>,
+    customHooks: List<Hook>,
+): String {
+    fun describe(hook: Hook) = with(hook) {
+        "$hookType $targetInternalClassName.$targetMethodName$targetMethodDescriptor " +
+            "$hookInternalClassName.$hookMethodName$hookMethodDescriptor $additionalClassesToHook"
+    }
+    return listOf(
+        JAZZER_VERSION,
+        instrumentationTypes.sorted().toString(),
+        Opt.conditionalHooks.toString(),
+        includedHooks.joinToString("\n", transform = ::describe),
+        customHooks.joinToString("\n", transform = ::describe),
+    ).joinToString("\n\n")
+}
+
 private fun findManifestCustomHookNames() = ManifestUtils.combineManifestValues(ManifestUtils.HOOK_CLASSES)
     .flatMap { it.split(':') }
     .filter { it.isNotBlank() }
@@ -14,13 +14,12 @@
 
 package com.code_intelligence.jazzer.agent
 
-import com.code_intelligence.jazzer.utils.Log
 import java.nio.ByteBuffer
 import java.nio.channels.FileChannel
-import java.nio.channels.FileLock
 import java.nio.file.Path
 import java.nio.file.StandardOpenOption
-import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * Indicates a fatal failure to generate synchronized coverage IDs.
@@ -40,6 +39,9 @@ interface CoverageIdStrategy {
     /**
      * [withIdForClass] provides the initial coverage ID of the given [className] as parameter to the
      * [block] to execute. [block] has to return the number of additionally used IDs.
+     *
+     * [block] may be invoked more than once with different initial IDs, in which case only the last invocation counts.
+     * It has to return the same number of IDs on every invocation.
      */
     @Throws(CoverageIdException::class)
     fun withIdForClass(className: String, block: (Int) -> Int)
@@ -48,18 +50,29 @@ interface CoverageIdStrategy {
 /**
  * A memory synced strategy for coverage ID generation.
  *
- * This strategy uses a synchronized block to guard access to a global edge ID counter.
- * Even though concurrent fuzzing is not fully supported this strategy enables consistent coverage
- * IDs in case of concurrent class loading.
+ * This strategy reserves ranges of a global edge ID counter atomically without holding a lock while a class is
+ * instrumented, so that classes loaded concurrently are also instrumented concurrently. The class is optimistically
+ * instrumented with the next free ID, which is then reserved with a compare-and-set. If another class has reserved IDs
+ * in the meantime, the now known number of IDs is reserved unconditionally and the class is instrumented once more.
  *
  * It only prevents races within one VM instance.
  */
 class MemSyncCoverageIdStrategy : CoverageIdStrategy {
-    private var nextEdgeId = 0
+    private val nextEdgeId = AtomicInteger()
 
-    @Synchronized
     override fun withIdForClass(className: String, block: (Int) -> Int) {
-        nextEdgeId += block(nextEdgeId)
+        val expectedFirstId = nextEdgeId.get()
+        val numIds = block(expectedFirstId)
+        if (nextEdgeId.compareAndSet(expectedFirstId, expectedFirstId + numIds)) {
+            return
+        }
+        val firstId = nextEdgeId.getAndAdd(numIds)
+        val actualNumIds = block(firstId)
+        if (actualNumIds != numIds) {
+            throw CoverageIdException(
+                IllegalStateException("$className has $actualNumIds edges, but $numIds edges were reserved"),
+            )
+        }
     }
 }
 
@@ -68,156 +81,148 @@ class MemSyncCoverageIdStrategy : CoverageIdStrategy {
  * specified [idSyncFile].
  * This class takes care of synchronizing the access to the file between multiple processes as long as the general
  * contract of [CoverageIdStrategy] is followed.
+ *
+ * The sync file is an append-only binary table of records of the form
+ *   <length of class name (int)> <class name (UTF-8)> <first ID (int)> <num IDs (int)>
+ * preceded by a header holding the number of bytes of committed records (long). A file that is still empty is treated
+ * as not containing any records.
+ *
+ * Every process maintains an in-memory index from class names to their IDs, which it updates by parsing only the
+ * records committed since its last update. Looking up a class that has already been assigned IDs thus doesn't require
+ * any lock. The file lock is only taken to append a record for a class that is encountered for the first time.
  */
 class FileSyncCoverageIdStrategy(private val idSyncFile: Path) : CoverageIdStrategy {
-    private val uuid: UUID = UUID.randomUUID()
-    private var idFileLock: FileLock? = null
+    private val channel = FileChannel.open(idSyncFile, StandardOpenOption.WRITE, StandardOpenOption.READ)
+    private val index = ConcurrentHashMap<String, IdRange>()
+    private val fileLockMonitor = Any()
 
-    private var cachedFirstId: Int? = null
-    private var cachedClassName: String? = null
-    private var cachedIdCount: Int? = null
+    // Guarded by this.
+    private var indexedLength = 0L
+    private var nextFreeId = 0
+
+    private class IdRange(val firstId: Int, val numIds: Int)
 
-    /**
-     * This method is synchronized to prevent concurrent access to the internal file lock which would result in
-     * [java.nio.channels.OverlappingFileLockException]. Furthermore, every coverage ID obtained by [obtainFirstId]
-     * is always committed back again to the sync file by [commitIdCount].
-     */
-    @Synchronized
     override fun withIdForClass(className: String, block: (Int) -> Int) {
-        var actualNumEdgeIds = 0
-        try {
-            val firstId = obtainFirstId(className)
-            actualNumEdgeIds = block(firstId)
-        } finally {
-            commitIdCount(actualNumEdgeIds)
-        }
+        val idRange = syncFile { index[className] ?: updateIndex().let { index[className] } }
+            ?: return withNewIdsForClass(className, block)
+        checkNumIds(className, idRange, block(idRange.firstId))
     }
 
     /**
-     * Obtains a coverage ID for [className] such that all cooperating agent processes will obtain the same ID.
-     * There are two cases to consider:
-     * - This agent process is the first to encounter [className], i.e., it does not find a record for that class in
-     *   [idSyncFile]. In this case, a lock on the file is held until the class has been instrumented and a record with
-     *   the required number of coverage IDs has been added.
-     * - Another agent process has already encountered [className], i.e., there is a record that class in [idSyncFile].
-     *   In this case, the lock on the file is returned immediately and the extracted first coverage ID is returned to
-     *   the caller. The caller is still expected to call [commitIdCount] so that desynchronization can be detected.
+     * Assigns IDs to a class that hasn't been encountered by any process before. The lock on the sync file is held
+     * until the class has been instrumented and its record has been appended, so that no other process can assign
+     * the same IDs to a different class.
+     *
+     * Threads of the same process are serialized as they would otherwise try to acquire the file lock concurrently,
+     * which results in [java.nio.channels.OverlappingFileLockException].
      */
-    private fun obtainFirstId(className: String): Int {
-        try {
-            check(idFileLock == null) { "Already holding a lock on the ID file" }
-            val localIdFile = FileChannel.open(
-                idSyncFile,
-                StandardOpenOption.WRITE,
-                StandardOpenOption.READ,
-            )
-            // Wait until we have obtained the lock on the sync file. We hold the lock from this point until we have
-            // finished reading and writing (if necessary) to the file.
-            val localIdFileLock = localIdFile.lock()
-            check(localIdFileLock.isValid && !localIdFileLock.isShared)
-            // Parse the sync file, which consists of lines of the form
-            // <class name>:<first ID>:<num IDs>
-            val idInfo = localIdFileLock.channel().readFully()
-                .lineSequence()
-                .filterNot { it.isBlank() }
-                .map { line ->
-                    val parts = line.split(':')
-                    check(parts.size == 4) {
-                        "Expected ID file line to be of the form  '<class name>:<first ID>:<num IDs>:<uuid>', got '$line'"
-                    }
-                    val lineClassName = parts[0]
-                    val lineFirstId = parts[1].toInt()
-                    check(lineFirstId >= 0) { "Negative first ID in line: $line" }
-                    val lineIdCount = parts[2].toInt()
-                    check(lineIdCount >= 0) { "Negative ID count in line: $line" }
-                    Triple(lineClassName, lineFirstId, lineIdCount)
-                }.toList()
-            cachedClassName = className
-            val idInfoForClass = idInfo.filter { it.first == className }
-            return when (idInfoForClass.size) {
-                0 -> {
-                    // We are the first to encounter this class and thus need to hold the lock until the class has been
-                    // instrumented and we know the required number of coverage IDs.
-                    idFileLock = localIdFileLock
-                    // Compute the next free ID as the maximum over the sums of first ID and ID count, starting at 0 if
-                    // this is the first ID to be assigned. In fact, since this is the only way new lines are added to
-                    // the file, the maximum is always attained by the last line.
-                    val nextFreeId = idInfo.asSequence().map { it.second + it.third }.lastOrNull() ?: 0
-                    cachedFirstId = nextFreeId
-                    nextFreeId
-                }
-                1 -> {
-                    // This class has already been instrumented elsewhere, so we just return the first ID and ID count
-                    // reported from there and release the lock right away. The caller is still expected to call
-                    // commitIdCount.
-                    localIdFile.close()
-                    cachedIdCount = idInfoForClass.single().third
-                    idInfoForClass.single().second
-                }
-                else -> {
-                    localIdFile.close()
-                    Log.println(idInfo.joinToString("\n") { "${it.first}:${it.second}:${it.third}" })
-                    throw IllegalStateException("Multiple entries for $className in ID file")
+    private fun withNewIdsForClass(className: String, block: (Int) -> Int) {
+        synchronized(fileLockMonitor) {
+            withNewIdsForClassLocked(className, block)
+        }
+    }
+
+    private fun withNewIdsForClassLocked(className: String, block: (Int) -> Int) {
+        val lock = syncFile { channel.lock() }
+        val idRange = try {
+            // Another process may have encountered the class while we were waiting for the lock.
+            syncFile { updateIndex().let { index[className] } } ?: run {
+                val firstId = synchronized(this) { nextFreeId }
+                var numIds = 0
+                try {
+                    numIds = block(firstId)
+                } finally {
+                    // Even if instrumentation fails, the class is recorded so that all processes agree on the IDs of
+                    // subsequent classes.
+                    syncFile { appendRecord(className, firstId, numIds) }
                 }
+                return
             }
+        } finally {
+            syncFile { lock.release() }
+        }
+        checkNumIds(className, idRange, block(idRange.firstId))
+    }
+
+    private fun checkNumIds(className: String, idRange: IdRange, actualNumIds: Int) {
+        if (actualNumIds != idRange.numIds) {
+            throw CoverageIdException(
+                IllegalStateException("$className has $actualNumIds edges, but ${idRange.numIds} edges reserved in ID file"),
+            )
+        }
+    }
+
+    private inline fun <T> syncFile(action: () -> T): T {
+        return try {
+            action()
         } catch (e: Exception) {
             throw CoverageIdException(e)
         }
     }
 
-    /**
-     * Records the number of coverage IDs used to instrument the class specified in a previous call to [obtainFirstId].
-     * If instrumenting the class should fail, this function must still be called. In this case, [idCount] is set to 0.
-     */
-    private fun commitIdCount(idCount: Int) {
-        val localIdFileLock = idFileLock
-        try {
-            check(cachedClassName != null)
-            if (localIdFileLock == null) {
-                // We released the lock already in obtainFirstId since the class had already been instrumented
-                // elsewhere. As we know the expected number of IDs for the current class in this case, check for
-                // deviations.
-                check(cachedIdCount != null)
-                check(idCount == cachedIdCount) {
-                    "$cachedClassName has $idCount edges, but $cachedIdCount edges reserved in ID file"
-                }
-            } else {
-                // We are the first to instrument this class and should record the number of IDs in the sync file.
-                check(cachedFirstId != null)
-                localIdFileLock.channel().append("$cachedClassName:$cachedFirstId:$idCount:$uuid\n")
-                localIdFileLock.channel().force(true)
+    /** Adds all records committed since the last update to [index]. */
+    @Synchronized
+    private fun updateIndex() {
+        val committedLength = readCommittedLength()
+        if (committedLength == indexedLength) {
+            return
+        }
+        val records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + indexedLength, committedLength - indexedLength)
+        while (records.hasRemaining()) {
+            val name = ByteArray(records.int)
+            records.get(name)
+            val firstId = records.int
+            check(firstId >= 0) { "Negative first ID in ID file" }
+            val numIds = records.int
+            check(numIds >= 0) { "Negative ID count in ID file" }
+            val className = String(name, Charsets.UTF_8)
+            check(index.putIfAbsent(className, IdRange(firstId, numIds)) == null) {
+                "Multiple entries for $className in ID file"
             }
-            idFileLock = null
-            cachedFirstId = null
-            cachedIdCount = null
-            cachedClassName = null
-        } catch (e: Exception) {
-            throw CoverageIdException(e)
-        } finally {
-            localIdFileLock?.channel()?.close()
+            // Since records are only appended with the next free ID, the last record always attains the maximum.
+            nextFreeId = firstId + numIds
         }
+        indexedLength = committedLength
     }
-}
 
-/**
- * Reads the [FileChannel] to the end as a UTF-8 string.
- */
-fun FileChannel.readFully(): String {
-    check(size() <= Int.MAX_VALUE)
-    val buffer = ByteBuffer.allocate(size().toInt())
-    while (buffer.hasRemaining()) {
-        when (read(buffer)) {
-            0 -> throw IllegalStateException("No bytes read")
-            -1 -> break
+    /** Must only be called while holding the file lock and after [updateIndex]. */
+    @Synchronized
+    private fun appendRecord(className: String, firstId: Int, numIds: Int) {
+        val name = className.toByteArray(Charsets.UTF_8)
+        val record = ByteBuffer.allocate(3 * Int.SIZE_BYTES + name.size)
+            .putInt(name.size)
+            .put(name)
+            .putInt(firstId)
+            .putInt(numIds)
+        record.flip()
+        // The record is written first and only then committed by updating the header, so processes reading the file
+        // without holding the lock never observe a partially written record.
+        channel.writeFully(record, HEADER_SIZE + indexedLength)
+        val newLength = indexedLength + record.limit()
+        channel.writeFully(ByteBuffer.allocate(HEADER_SIZE.toInt()).putLong(newLength).flip() as ByteBuffer, 0)
+        index[className] = IdRange(firstId, numIds)
+        nextFreeId = firstId + numIds
+        indexedLength = newLength
+    }
+
+    private fun readCommittedLength(): Long {
+        val header = ByteBuffer.allocate(HEADER_SIZE.toInt())
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position().toLong()) == -1) {
+                // The header hasn't been written yet.
+                return 0
+            }
         }
+        return header.getLong(0)
     }
-    return String(buffer.array())
-}
 
-/**
- * Appends [string] to the end of the [FileChannel].
- */
-fun FileChannel.append(string: String) {
-    position(size())
-    write(ByteBuffer.wrap(string.toByteArray()))
+    private fun FileChannel.writeFully(buffer: ByteBuffer, position: Long) {
+        while (buffer.hasRemaining()) {
+            write(buffer, position + buffer.position())
+        }
+    }
+
+    companion object {
+        private const val HEADER_SIZE = Long.SIZE_BYTES.toLong()
+    }
 }
@@ -0,0 +1,165 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.agent
+
+import com.code_intelligence.jazzer.utils.Log
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.attribute.FileTime
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * The result of instrumenting a class: The instrumented bytecode and the number of coverage IDs it uses.
+ */
+class InstrumentedClass(val bytecode: ByteArray, val numEdgeIds: Int)
+
+/**
+ * An on-disk cache of instrumented classes that is shared between all Jazzer processes using the same [cacheDir], such
+ * as subsequent runs of a fuzzer or the workers of a fuzzer running in fork mode.
+ *
+ * Entries are keyed by a hash of the original bytecode, the first coverage ID assigned to the class and [configuration],
+ * which has to describe everything else that influences the instrumentation (Jazzer version, instrumentation types,
+ * hooks). Entries are written to a temporary file that is then atomically moved into place, so that concurrent readers
+ * never observe partially written entries. When the total size of all entries exceeds [maxSize], the least recently
+ * used entries are evicted.
+ */
+class InstrumentationCache(
+    private val cacheDir: Path,
+    private val maxSize: Long,
+    private val configuration: String,
+) {
+    private val approximateSize = AtomicLong(listEntries().sumOf { it.size })
+
+    /**
+     * Returns the key under which the instrumentation of [bytecode] is cached. [firstId] is the first coverage ID
+     * assigned to the class, or null if the class is not instrumented for coverage.
+     */
+    fun key(internalClassName: String, bytecode: ByteArray, firstId: Int?): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(configuration.toByteArray())
+        digest.update(0)
+        digest.update(internalClassName.toByteArray())
+        digest.update(0)
+        digest.update(ByteBuffer.allocate(Long.SIZE_BYTES).putLong(firstId?.toLong() ?: -1).array())
+        digest.update(bytecode)
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+
+    fun get(key: String): InstrumentedClass? {
+        val entry = cacheDir.resolve(key)
+        val content = try {
+            Files.readAllBytes(entry)
+        } catch (e: NoSuchFileException) {
+            return null
+        } catch (e: IOException) {
+            Log.warn("Failed to read instrumentation cache entry $entry", e)
+            return null
+        }
+        val buffer = ByteBuffer.wrap(content)
+        if (content.size < HEADER_SIZE || buffer.int != MAGIC) {
+            Log.warn("Ignoring corrupted instrumentation cache entry $entry")
+            return null
+        }
+        val numEdgeIds = buffer.int
+        try {
+            // The modification time is used to determine the least recently used entries on eviction.
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()))
+        } catch (e: IOException) {
+            // The entry may have been evicted by another process in the meantime, which is fine.
+        }
+        return InstrumentedClass(content.copyOfRange(HEADER_SIZE, content.size), numEdgeIds)
+    }
+
+    fun put(key: String, instrumentedClass: InstrumentedClass) {
+        val content = ByteBuffer.allocate(HEADER_SIZE + instrumentedClass.bytecode.size)
+            .putInt(MAGIC)
+            .putInt(instrumentedClass.numEdgeIds)
+            .put(instrumentedClass.bytecode)
+            .array()
+        try {
+            val tempFile = Files.createTempFile(cacheDir, key, TEMP_FILE_SUFFIX)
+            try {
+                Files.write(tempFile, content)
+                // Another process may have added the same entry concurrently, but its content is identical.
+                Files.move(tempFile, cacheDir.resolve(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+            } finally {
+                Files.deleteIfExists(tempFile)
+            }
+        } catch (e: IOException) {
+            Log.warn("Failed to write instrumentation cache entry ${cacheDir.resolve(key)}", e)
+            return
+        }
+        if (approximateSize.addAndGet(content.size.toLong()) > maxSize) {
+            evict()
+        }
+    }
+
+    @Synchronized
+    private fun evict() {
+        // Other processes may have added or evicted entries, so the size has to be recomputed from scratch.
+        val entries = listEntries().sortedBy { it.lastModifiedTime }
+        var size = entries.sumOf { it.size }
+        // Evict more than strictly necessary so that not every subsequent put triggers another eviction.
+        val targetSize = maxSize / 4 * 3
+        for (entry in entries) {
+            if (size <= targetSize) {
+                break
+            }
+            try {
+                Files.deleteIfExists(entry.path)
+            } catch (e: IOException) {
+                continue
+            }
+            size -= entry.size
+        }
+        approximateSize.set(size)
+    }
+
+    private class Entry(val path: Path, val size: Long, val lastModifiedTime: FileTime)
+
+    private fun listEntries(): List<Entry> {
+        return try {
+            Files.newDirectoryStream(cacheDir).use { stream ->
+                stream
+                    .filterNot { it.fileName.toString().endsWith(TEMP_FILE_SUFFIX) }
+                    .mapNotNull { path ->
+                        try {
+                            val attributes = Files.readAttributes(path, BasicFileAttributes::class.java)
+                            Entry(path, attributes.size(), attributes.lastModifiedTime())
+                        } catch (e: IOException) {
+                            // Evicted by another process.
+                            null
+                        }
+                    }
+            }
+        } catch (e: IOException) {
+            Log.warn("Failed to list instrumentation cache entries in $cacheDir", e)
+            emptyList()
+        }
+    }
+
+    companion object {
+        // Changing the format of entries requires changing this value.
+        private const val MAGIC = 0x4A5A4901
+        private const val HEADER_SIZE = 2 * Int.SIZE_BYTES
+        private const val TEMP_FILE_SUFFIX = ".tmp"
+    }
+}
@@ -15,14 +15,17 @@
 package com.code_intelligence.jazzer.agent
 
 import com.code_intelligence.jazzer.driver.Opt
+import com.code_intelligence.jazzer.instrumentor.ClassConstants
 import com.code_intelligence.jazzer.instrumentor.ClassInstrumentor
+import com.code_intelligence.jazzer.instrumentor.ClassPathScan
 import com.code_intelligence.jazzer.instrumentor.CoverageRecorder
 import com.code_intelligence.jazzer.instrumentor.Hook
+import com.code_intelligence.jazzer.instrumentor.HookIndex
 import com.code_intelligence.jazzer.instrumentor.InstrumentationType
+import com.code_intelligence.jazzer.runtime.CoverageMap
 import com.code_intelligence.jazzer.utils.ClassNameGlobber
+import com.code_intelligence.jazzer.utils.ConstantDictionary
 import com.code_intelligence.jazzer.utils.Log
-import io.github.classgraph.ClassGraph
-import java.io.File
 import java.lang.instrument.ClassFileTransformer
 import java.lang.instrument.Instrumentation
 import java.nio.file.Path
@@ -48,8 +51,20 @@ class RuntimeInstrumentor(
     private val additionalClassesToHookInstrument: ClassNameGlobber,
     private val coverageIdSynchronizer: CoverageIdStrategy,
     private val dumpClassesDir: Path?,
+    private val instrumentationCache: InstrumentationCache?,
 ) : ClassFileTransformer {
 
+    private val classWithHooksEnabledField = if (Opt.conditionalHooks) {
+        // Let the hook instrumentation emit additional logic that checks the value of the
+        // hooksEnabled field on this class and skips the hook if it is false.
+        "com/code_intelligence/jazzer/runtime/JazzerInternal"
+    } else {
+        null
+    }
+
+    private val allHooks = HookIndex(includedHooks + customHooks)
+    private val customHooksOnly = HookIndex(customHooks)
+
     @kotlin.time.ExperimentalTime
     override fun transform(
         loader: ClassLoader?,
@@ -58,24 +73,6 @@ class RuntimeInstrumentor(
         protectionDomain: ProtectionDomain?,
         classfileBuffer: ByteArray,
     ): ByteArray? {
-        var pathPrefix = ""
-        if (!Opt.instrumentOnly.isEmpty() && protectionDomain != null) {
-            var outputPathPrefix = protectionDomain.getCodeSource().getLocation().getFile().toString()
-            if (outputPathPrefix.isNotEmpty()) {
-                if (outputPathPrefix.contains(File.separator)) {
-                    outputPathPrefix = outputPathPrefix.substring(outputPathPrefix.lastIndexOf(File.separator) + 1, outputPathPrefix.length)
-                }
-
-                if (outputPathPrefix.endsWith(".jar")) {
-                    outputPathPrefix = outputPathPrefix.substring(0, outputPathPrefix.lastIndexOf(".jar"))
-                }
-
-                if (outputPathPrefix.isNotEmpty()) {
-                    pathPrefix = outputPathPrefix + File.separator
-                }
-            }
-        }
-
         return try {
             // Bail out early if we would instrument ourselves. This prevents ClassCircularityErrors as we might need to
             // load additional Jazzer classes until we reach the full exclusion logic.
@@ -100,21 +97,21 @@ class RuntimeInstrumentor(
             // failures. The docs advise to use a top-level try-catch.
             // https://docs.oracle.com/javase/9/docs/api/java/lang/instrument/ClassFileTransformer.html
             if (dumpClassesDir != null) {
-                dumpToClassFile(internalClassName, classfileBuffer, basenameSuffix = ".failed", pathPrefix = pathPrefix)
+                dumpToClassFile(internalClassName, classfileBuffer, basenameSuffix = ".failed")
             }
             Log.warn("Failed to instrument $internalClassName:", t)
             throw t
         }.also { instrumentedByteCode ->
             // Only dump classes that were instrumented.
             if (instrumentedByteCode != null && dumpClassesDir != null) {
-                dumpToClassFile(internalClassName, instrumentedByteCode, pathPrefix = pathPrefix)
-                dumpToClassFile(internalClassName, classfileBuffer, basenameSuffix = ".original", pathPrefix = pathPrefix)
+                dumpToClassFile(internalClassName, instrumentedByteCode)
+                dumpToClassFile(internalClassName, classfileBuffer, basenameSuffix = ".original")
             }
         }
     }
 
-    private fun dumpToClassFile(internalClassName: String, bytecode: ByteArray, basenameSuffix: String = "", pathPrefix: String = "") {
-        val relativePath = "$pathPrefix$internalClassName$basenameSuffix.class"
+    private fun dumpToClassFile(internalClassName: String, bytecode: ByteArray, basenameSuffix: String = "") {
+        val relativePath = "$internalClassName$basenameSuffix.class"
         val absolutePath = dumpClassesDir!!.resolve(relativePath)
         val dumpFile = absolutePath.toFile()
         dumpFile.parentFile.mkdirs()
@@ -165,24 +162,9 @@ class RuntimeInstrumentor(
 
     @kotlin.time.ExperimentalTime
     fun transformInternal(internalClassName: String, maybeClassfileBuffer: ByteArray?): ByteArray? {
-        val (fullInstrumentation, printInfo) = when {
-            classesToFullyInstrument.includes(internalClassName) -> Pair(true, true)
-            classesToHookInstrument.includes(internalClassName) -> Pair(false, true)
-            // The classes to hook specified by hooks are more of an implementation detail of the hook. The list is
-            // always the same unless the set of hooks changes and doesn't help the user judge whether their classes are
-            // being instrumented, so we don't print info for them.
-            additionalClassesToHookInstrument.includes(internalClassName) -> Pair(false, false)
-            else -> return null
-        }
+        val (fullInstrumentation, printInfo) = instrumentationMode(internalClassName) ?: return null
         val className = internalClassName.replace('/', '.')
-        val classfileBuffer = maybeClassfileBuffer ?: ClassGraph()
-            .enableSystemJarsAndModules()
-            .ignoreClassVisibility()
-            .acceptClasses(className)
-            .scan()
-            .use {
-                it.getClassInfo(className).resource.load()
-            }
+        val classfileBuffer = maybeClassfileBuffer ?: ClassPathScan.loadClassFile(className)
         val (instrumentedBytecode, duration) = measureTimedValue {
             try {
                 instrument(internalClassName, classfileBuffer, fullInstrumentation)
@@ -204,37 +186,106 @@ class RuntimeInstrumentor(
         return instrumentedBytecode
     }
 
+    /**
+     * Returns whether the class should be fully instrumented (or only with custom hooks) and whether info about its
+     * instrumentation should be printed, or null if the class should not be instrumented at all.
+     */
+    private fun instrumentationMode(internalClassName: String): Pair<Boolean, Boolean>? = when {
+        // Never instrument ourselves, see transform.
+        internalClassName.startsWith("com/code_intelligence/jazzer/") -> null
+        classesToFullyInstrument.includes(internalClassName) -> Pair(true, true)
+        classesToHookInstrument.includes(internalClassName) -> Pair(false, true)
+        // The classes to hook specified by hooks are more of an implementation detail of the hook. The list is
+        // always the same unless the set of hooks changes and doesn't help the user judge whether their classes are
+        // being instrumented, so we don't print info for them.
+        additionalClassesToHookInstrument.includes(internalClassName) -> Pair(false, false)
+        else -> null
+    }
+
+    /**
+     * Returns the number of coverage IDs the class requires, or null if the class is not instrumented.
+     *
+     * Together with [instrumentWithFirstId], this allows callers to assign coverage IDs to classes themselves, which
+     * [OfflineInstrumentor][com.code_intelligence.jazzer.driver.OfflineInstrumentor] uses to instrument classes
+     * concurrently and yet deterministically.
+     */
+    fun countCoverageIds(internalClassName: String, bytecode: ByteArray): Int? {
+        val (fullInstrumentation, _) = instrumentationMode(internalClassName) ?: return null
+        if (!fullInstrumentation) {
+            return 0
+        }
+        return ClassInstrumentor(internalClassName, bytecode).coverage(0).run {
+            instrument()
+            numEdgeIds
+        }
+    }
+
+    /**
+     * Instruments the class with coverage IDs starting at [firstId] rather than those obtained from the
+     * [CoverageIdStrategy]. Returns null if the class is not instrumented.
+     *
+     * This function can be called concurrently for different classes.
+     */
+    fun instrumentWithFirstId(internalClassName: String, bytecode: ByteArray, firstId: Int): ByteArray? {
+        val (fullInstrumentation, _) = instrumentationMode(internalClassName) ?: return null
+        if (!fullInstrumentation) {
+            return instrumentWithCustomHooksOnly(internalClassName, bytecode)
+        }
+        val cacheKey = instrumentationCache?.key(internalClassName, bytecode, firstId)
+        cacheKey?.let { instrumentationCache?.get(it) }?.let { return it.bytecode }
+        return ClassInstrumentor(internalClassName, bytecode).coverage(firstId).traceDataFlowAndHooks().run {
+            val instrumentedBytecode = instrument()
+            cacheKey?.let { instrumentationCache?.put(it, InstrumentedClass(instrumentedBytecode, numEdgeIds)) }
+            instrumentedBytecode
+        }
+    }
+
+    private fun instrumentWithCustomHooksOnly(internalClassName: String, bytecode: ByteArray): ByteArray {
+        val cacheKey = instrumentationCache?.key(internalClassName, bytecode, null)
+        cacheKey?.let { instrumentationCache?.get(it) }?.let { return it.bytecode }
+        return ClassInstrumentor(internalClassName, bytecode).hooks(customHooksOnly, classWithHooksEnabledField).run {
+            val instrumentedBytecode = instrument()
+            cacheKey?.let { instrumentationCache?.put(it, InstrumentedClass(instrumentedBytecode, 0)) }
+            instrumentedBytecode
+        }
+    }
+
+    private fun ClassInstrumentor.traceDataFlowAndHooks() =
+        traceDataFlow(instrumentationTypes).hooks(allHooks, classWithHooksEnabledField)
+
     private fun instrument(internalClassName: String, bytecode: ByteArray, fullInstrumentation: Boolean): ByteArray {
-        val classWithHooksEnabledField = if (Opt.conditionalHooks) {
-            // Let the hook instrumentation emit additional logic that checks the value of the
-            // hooksEnabled field on this class and skips the hook if it is false.
-            "com/code_intelligence/jazzer/runtime/JazzerInternal"
-        } else {
-            null
+        if (!fullInstrumentation) {
+            return instrumentWithCustomHooksOnly(internalClassName, bytecode)
         }
-        return ClassInstrumentor(internalClassName, bytecode).run {
-            if (fullInstrumentation) {
-                // Coverage instrumentation must be performed before any other code updates
-                // or there will be additional coverage points injected if any calls are inserted
-                // and JaCoCo will produce a broken coverage report.
-                coverageIdSynchronizer.withIdForClass(internalClassName) { firstId ->
-                    coverage(firstId).also { actualNumEdgeIds ->
-                        CoverageRecorder.recordInstrumentedClass(
-                            internalClassName,
-                            bytecode,
-                            firstId,
-                            actualNumEdgeIds,
-                        )
-                    }
-                }
-                // Hook instrumentation must be performed after data flow tracing as the injected
-                // bytecode would trigger the GEP callbacks for byte[].
-                traceDataFlow(instrumentationTypes)
-                hooks(includedHooks + customHooks, classWithHooksEnabledField)
-            } else {
-                hooks(customHooks, classWithHooksEnabledField)
+        var firstId = 0
+        var cacheKey: String? = null
+        var cachedClass: InstrumentedClass? = null
+        var instrumentedBytecode: ByteArray? = null
+        var numEdgeIds = 0
+        coverageIdSynchronizer.withIdForClass(internalClassName) { candidateFirstId ->
+            // This block may be invoked more than once if another class is assigned IDs concurrently, so it starts
+            // from the original bytecode every time.
+            firstId = candidateFirstId
+            // The coverage IDs are embedded into the instrumented bytecode, so a cached class can only be reused if
+            // it has been assigned the same IDs as in the run that cached it.
+            cacheKey = instrumentationCache?.key(internalClassName, bytecode, firstId)
+            cachedClass = cacheKey?.let { instrumentationCache?.get(it) }
+            numEdgeIds = cachedClass?.numEdgeIds?.also {
+                // Registers the counters just like the coverage instrumentation would have.
+                CoverageMap.enlargeIfNeeded(firstId + it - 1)
+            } ?: ClassInstrumentor(internalClassName, bytecode).coverage(firstId).traceDataFlowAndHooks().let {
+                instrumentedBytecode = it.instrument()
+                it.numEdgeIds
             }
-            instrumentedBytecode
+            numEdgeIds
+        }
+        CoverageRecorder.recordInstrumentedClass(internalClassName, bytecode, firstId, numEdgeIds)
+        if (Opt.constantDictionary) {
+            val constants = ClassConstants.of(bytecode)
+            ConstantDictionary.add(internalClassName.replace('/', '.'), constants.strings, constants.integrals)
         }
+        cachedClass?.let { return it.bytecode }
+        cacheKey?.let { instrumentationCache?.put(it, InstrumentedClass(instrumentedBytecode!!, numEdgeIds)) }
+        return instrumentedBytecode!!
     }
 }
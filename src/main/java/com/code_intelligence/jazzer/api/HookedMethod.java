@@ -0,0 +1,85 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.api;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Static helper methods that hooks can use to invoke the method they are hooking.
+ */
+public final class HookedMethod {
+  private static final MethodType STATIC_INVOKER_TYPE =
+      MethodType.methodType(Object.class, MethodHandle.class, Object[].class);
+  private static final MethodType INSTANCE_INVOKER_TYPE =
+      MethodType.methodType(Object.class, MethodHandle.class, Object.class, Object[].class);
+
+  // Invokers only depend on the erased type of the hooked method, so these maps stay small and
+  // don't keep classes of the fuzz target alive. The adaptation of the hooked method to the erased
+  // type is cached on the MethodHandle itself, which is the same for every invocation from a given
+  // call site.
+  private static final ConcurrentMap<MethodType, MethodHandle> STATIC_INVOKERS =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentMap<MethodType, MethodHandle> INSTANCE_INVOKERS =
+      new ConcurrentHashMap<>();
+
+  private HookedMethod() {}
+
+  /**
+   * Invokes the hooked method with the given receiver and arguments, as passed to a
+   * {@link HookType#REPLACE} hook, and returns its result.
+   * <p>
+   * This is equivalent to, but much faster than, calling
+   * {@link MethodHandle#invokeWithArguments(Object...)} on {@code method} with {@code thisObject}
+   * prepended to {@code arguments} if the hooked method is not static.
+   *
+   * @param method the {@link MethodHandle} passed to the hook
+   * @param thisObject the {@code thisObject} passed to the hook, which is ignored if the hooked
+   *     method is static
+   * @param arguments the arguments to invoke the hooked method with, which are unwrapped if they
+   *     are wrapped primitives
+   * @return the return value of the hooked method, wrapped if it is a primitive, or {@code null}
+   *     if the hooked method returns {@code void}
+   * @throws Throwable anything thrown by the hooked method
+   */
+  public static Object invoke(MethodHandle method, Object thisObject, Object[] arguments)
+      throws Throwable {
+    MethodType type = method.type();
+    if (type.parameterCount() == arguments.length) {
+      return (Object) invoker(STATIC_INVOKERS, type, 0, STATIC_INVOKER_TYPE)
+          .invokeExact(method, arguments);
+    } else {
+      return (Object) invoker(INSTANCE_INVOKERS, type, 1, INSTANCE_INVOKER_TYPE)
+          .invokeExact(method, thisObject, arguments);
+    }
+  }
+
+  private static MethodHandle invoker(ConcurrentMap<MethodType, MethodHandle> invokers,
+      MethodType type, int leadingArgCount, MethodType invokerType) {
+    MethodType erasedType = type.erase();
+    MethodHandle invoker = invokers.get(erasedType);
+    if (invoker == null) {
+      invoker = MethodHandles.spreadInvoker(erasedType, leadingArgCount).asType(invokerType);
+      MethodHandle existingInvoker = invokers.putIfAbsent(erasedType, invoker);
+      if (existingInvoker != null) {
+        invoker = existingInvoker;
+      }
+    }
+    return invoker;
+  }
+}
@@ -89,6 +89,11 @@ import java.lang.invoke.MethodType;
  * Return value: the value that should take the role of the value the target
  * method would have returned
  * <p>
+ * If the hook invokes the original method, it should do so via
+ * {@link HookedMethod#invoke(java.lang.invoke.MethodHandle, Object, Object[])}
+ * rather than {@link java.lang.invoke.MethodHandle#invokeWithArguments(Object...)}
+ * as the former avoids a costly adaptation of the method handle on every call.
+ * <p>
  * <dt><span class="strong">{@link HookType#AFTER}</span>
  * <dd>
  * <pre>{@code
@@ -116,6 +121,25 @@ import java.lang.invoke.MethodType;
  * If the original method has return type {@code void}, this value will be
  * {@code null}.
  * <p>
+ * If {@link #targetMethodDescriptor()} is specified, {@link HookType#BEFORE}
+ * and {@link HookType#AFTER} hooks can alternatively receive the arguments
+ * and the return value of the target method directly, which avoids the
+ * allocation of the argument array and the boxing of primitive values on
+ * every call and is thus preferable for frequently called target methods:
+ *
+ * <pre>{@code
+ * public static void hook(Object thisObject, T1 arg1, ..., Tn argn, int hookId)
+ * public static void hook(Object thisObject, T1 arg1, ..., Tn argn, int hookId, R returnValue)
+ * }</pre>
+ * The types {@code T1} to {@code Tn} and {@code R} have to match the
+ * parameter and return types of the target method, but may also be
+ * {@link Object} for reference types and {@code int} for {@code byte},
+ * {@code char}, {@code short} and {@code boolean}. The {@code returnValue}
+ * parameter is omitted if the target method has return type {@code void}.
+ * As for the other hook signatures, {@code thisObject} may also have the type
+ * of the target class and is {@code null} if the target method is static.
+ * Such hooks can't be applied to constructors.
+ * <p>
  * Multiple {@link HookType#BEFORE} and {@link HookType#AFTER} hooks are
  * allowed to reference the same target method. Exclusively one
  * {@link HookType#REPLACE} hook may reference a target method, no other types
@@ -0,0 +1,116 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.driver;
+
+import com.code_intelligence.jazzer.utils.ConstantDictionary;
+import com.code_intelligence.jazzer.utils.Log;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the constants in the {@link ConstantDictionary} to a libFuzzer dictionary file.
+ */
+final class ConstantDictionaryWriter {
+  private static final String DICT_ARG_PREFIX = "-dict=";
+  // libFuzzer ignores longer dictionary entries.
+  private static final int MAX_ENTRY_LENGTH = 64;
+  // String compares are reported to libFuzzer encoded as CESU-8, see
+  // TraceDataFlowNativeCallbacks.
+  private static final Charset CESU8 = Charset.forName("CESU8");
+
+  private ConstantDictionaryWriter() {}
+
+  /**
+   * Returns the given libFuzzer arguments with an additional {@code -dict} argument pointing to a
+   * dictionary with the current constants as well as the entries of the dictionary that is already
+   * specified in the arguments, if any.
+   */
+  static List<String> addConstantDictionary(List<String> args) {
+    String userDict = null;
+    for (String arg : args) {
+      // libFuzzer uses the last occurrence of a flag.
+      if (arg.startsWith(DICT_ARG_PREFIX)) {
+        userDict = arg.substring(DICT_ARG_PREFIX.length());
+      }
+    }
+    Set<String> lines = new LinkedHashSet<>();
+    try {
+      if (userDict != null) {
+        // Dictionary files are ASCII, but this preserves any other bytes.
+        lines.addAll(Files.readAllLines(Paths.get(userDict), StandardCharsets.ISO_8859_1));
+      }
+      int numUserLines = lines.size();
+      lines.addAll(dictionaryLines());
+      if (lines.size() == numUserLines) {
+        return args;
+      }
+      Path dict = Files.createTempFile("jazzer-", ".dict");
+      dict.toFile().deleteOnExit();
+      Files.write(dict, lines, StandardCharsets.ISO_8859_1);
+      List<String> newArgs = new ArrayList<>(args);
+      newArgs.add(DICT_ARG_PREFIX + dict.toAbsolutePath());
+      return newArgs;
+    } catch (IOException e) {
+      Log.warn("Failed to write the dictionary of constants", e);
+      return args;
+    }
+  }
+
+  static List<String> dictionaryLines() {
+    List<String> lines = new ArrayList<>();
+    for (String string : ConstantDictionary.strings()) {
+      byte[] bytes = string.getBytes(CESU8);
+      if (bytes.length <= MAX_ENTRY_LENGTH) {
+        lines.add(toDictionaryEntry(bytes));
+      }
+    }
+    for (long integral : ConstantDictionary.integrals()) {
+      // Integers are consumed from fuzzer inputs in little-endian byte order by libFuzzer's compare
+      // mutations and the FuzzedDataProvider alike.
+      ByteBuffer buffer;
+      if (integral == (int) integral) {
+        buffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(
+            (int) integral);
+      } else {
+        buffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(integral);
+      }
+      lines.add(toDictionaryEntry(buffer.array()));
+    }
+    return lines;
+  }
+
+  // See https://llvm.org/docs/LibFuzzer.html#dictionaries for the format.
+  private static String toDictionaryEntry(byte[] bytes) {
+    StringBuilder entry = new StringBuilder("\"");
+    for (byte b : bytes) {
+      if (b >= 0x20 && b < 0x7F && b != '"' && b != '\\') {
+        entry.append((char) b);
+      } else {
+        entry.append(String.format("\\x%02X", b & 0xFF));
+      }
+    }
+    return entry.append('"').toString();
+  }
+}
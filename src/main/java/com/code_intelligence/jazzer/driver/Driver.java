@@ -122,7 +122,7 @@ public class Driver {
     if (!Opt.autofuzz.isEmpty()) {
       AgentInstaller.install(Opt.hooks);
       FuzzTargetHolder.fuzzTarget = FuzzTargetHolder.AUTOFUZZ_FUZZ_TARGET;
-      return FuzzTargetRunner.startLibFuzzer(args);
+      return startLibFuzzer(args);
     }
 
     String targetClassName = FuzzTargetFinder.findFuzzTargetClassName();
@@ -134,7 +134,7 @@ public class Driver {
     if (JUnitRunner.isSupported()) {
       Optional<JUnitRunner> runner = JUnitRunner.create(targetClassName, args);
       if (runner.isPresent()) {
-        return runner.get().run();
+        return Opt.cdsWarmUp ? 0 : runner.get().run();
       }
     }
 
@@ -142,6 +142,15 @@ public class Driver {
     // in it on "Class.forName(targetClassName)", but only during native fuzzing.
     AgentInstaller.install(Opt.hooks);
     FuzzTargetHolder.fuzzTarget = FuzzTargetFinder.findFuzzTarget(targetClassName);
+    return startLibFuzzer(args);
+  }
+
+  private static int startLibFuzzer(List<String> args) {
+    if (Opt.cdsWarmUp) {
+      // The JVM writes the classes loaded so far to the --cds_archive when it exits through
+      // System.exit, which libFuzzer's native exit would skip. The fuzz target isn't executed.
+      return 0;
+    }
     return FuzzTargetRunner.startLibFuzzer(args);
   }
 
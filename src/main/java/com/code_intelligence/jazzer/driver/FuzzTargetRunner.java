@@ -26,10 +26,11 @@ import com.code_intelligence.jazzer.instrumentor.CoverageRecorder;
 import com.code_intelligence.jazzer.mutation.ArgumentsMutator;
 import com.code_intelligence.jazzer.runtime.FuzzTargetRunnerNatives;
 import com.code_intelligence.jazzer.runtime.JazzerInternal;
+import com.code_intelligence.jazzer.runtime.TraceDataFlowNativeCallbacks;
+import com.code_intelligence.jazzer.runtime.TraceEventBuffer;
+import com.code_intelligence.jazzer.utils.ConstantDictionary;
 import com.code_intelligence.jazzer.utils.Log;
 import com.code_intelligence.jazzer.utils.UnsafeProvider;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
@@ -55,7 +56,9 @@ import sun.misc.Unsafe;
  * Executes a fuzz target and reports findings.
  *
  * <p>This class maintains global state (both native and non-native) and thus cannot be used
- * concurrently.
+ * concurrently. In particular, libFuzzer drives all executions from a single thread and attributes
+ * all coverage to the input it is currently executing, so parallel fuzzing is only supported via
+ * libFuzzer's -fork and -jobs modes, which run each worker in a separate JVM.
  */
 public final class FuzzTargetRunner {
   private static final String OPENTEST4J_TEST_ABORTED_EXCEPTION =
@@ -72,13 +75,25 @@ public final class FuzzTargetRunner {
   private static boolean invalidCorpusFileWarningShown = false;
   private static final Set<Long> ignoredTokens = new HashSet<>(Opt.ignore);
   private static final FuzzedDataProviderImpl fuzzedDataProvider =
-      FuzzedDataProviderImpl.withNativeData();
+      Opt.pureJavaFuzzedDataProvider ? PureJavaFuzzedDataProviderImpl.withNativeData()
+                                     : FuzzedDataProviderImpl.withNativeData();
   private static final MethodHandle fuzzTargetMethod;
   private static final boolean useFuzzedDataProvider;
   // Reused in every iteration analogous to JUnit's PER_CLASS lifecycle.
   private static final Object fuzzTargetInstance;
   private static final Method fuzzerTearDown;
   private static final ArgumentsMutator mutator;
+  // Reused in every iteration to read and write mutator state directly from and to libFuzzer's
+  // native buffers without intermediate heap copies.
+  private static final NativeMemoryInputStream mutatorInput = new NativeMemoryInputStream();
+  private static final NativeMemoryOutputStream mutatorOutput = new NativeMemoryOutputStream();
+  // A native copy of the last input produced by mutateOne. libFuzzer usually executes a freshly
+  // mutated input right away, in which case the mutator's current arguments can be reused instead
+  // of deserializing them again. libFuzzer copies the input before executing it, so the pointer
+  // can't be used to identify it.
+  private static long lastMutatedInputPtr;
+  private static int lastMutatedInputCapacity;
+  private static int lastMutatedInputLength = -1;
   private static final ReproducerTemplate reproducerTemplate;
   private static Predicate<Throwable> findingHandler;
 
@@ -105,6 +120,7 @@ public final class FuzzTargetRunner {
     reproducerTemplate = new ReproducerTemplate(fuzzTargetClass.getName(), useFuzzedDataProvider);
 
     JazzerInternal.onFuzzTargetReady(fuzzTargetClass.getName());
+    ConstantDictionary.setTargetClassName(fuzzTargetClass.getName());
 
     try {
       fuzzTargetInstance = fuzzTarget.newInstance.call();
@@ -162,18 +178,21 @@ public final class FuzzTargetRunner {
     byte[] data;
     Object argument;
     if (Opt.experimentalMutator) {
-      // TODO: Instead of copying the native data and then reading it in, consider the following
-      //  optimizations if they turn out to be worthwhile in benchmarks:
-      //  1. Let libFuzzer pass in a null pointer if the byte array hasn't changed since the last
-      //     call to our custom mutator and skip the read entirely.
-      //  2. Implement a InputStream backed by Unsafe to avoid the copyToArray overhead.
-      byte[] buf = copyToArray(dataPtr, dataLength);
-      boolean readExactly = mutator.read(new ByteArrayInputStream(buf));
+      boolean readExactly;
+      if (isLastMutatedInput(dataPtr, dataLength) && mutator.canReuseArguments()) {
+        // The arguments have been produced by the mutator and thus trivially match the input.
+        readExactly = true;
+      } else {
+        readExactly = mutator.read(mutatorInput.reset(dataPtr, dataLength));
+      }
+      // The arguments are exposed to the fuzz target below and can't be reused afterwards.
+      lastMutatedInputLength = -1;
 
       // All inputs constructed by the mutator framework can be read exactly, existing corpus files
       // may not be valid for the current fuzz target anymore, though. In this case, print a warning
       // once.
-      if (!(invalidCorpusFileWarningShown || readExactly || isFixedLibFuzzerInput(buf))) {
+      if (!(invalidCorpusFileWarningShown || readExactly
+              || isFixedLibFuzzerInput(dataPtr, dataLength))) {
         invalidCorpusFileWarningShown = true;
         Log.warn("Some files in the seed corpus do not match the fuzz target signature. "
             + "This indicates that they were generated with a different signature and may cause issues reproducing previous findings.");
@@ -201,6 +220,9 @@ public final class FuzzTargetRunner {
     } catch (Throwable uncaughtFinding) {
       finding = uncaughtFinding;
     }
+    if (Opt.traceThrottle > 0) {
+      TraceDataFlowNativeCallbacks.onFuzzTargetExecuted();
+    }
 
     // When using libFuzzer's -merge flag, only the coverage of the current input is relevant, not
     // whether it is crashing. Since every crash would cause a restart of the process and thus the
@@ -288,11 +310,24 @@ public final class FuzzTargetRunner {
     return LIBFUZZER_CONTINUE;
   }
 
-  private static boolean isFixedLibFuzzerInput(byte[] input) {
+  private static boolean isFixedLibFuzzerInput(long dataPtr, int dataLength) {
     // Detect special libFuzzer inputs which can not be processed by the mutator framework.
     // libFuzzer always uses an empty input, and one with a single line feed (10) to indicate
     // end of initial corpus file processing.
-    return input.length == 0 || (input.length == 1 && input[0] == 10);
+    return dataLength == 0 || (dataLength == 1 && UNSAFE.getByte(dataPtr) == 10);
+  }
+
+  /**
+   * A test-only convenience wrapper around {@link #mutateOne(long, int, int, int)}.
+   */
+  static byte[] mutateOne(byte[] data, int maxSize, int seed) {
+    long dataPtr = UNSAFE.allocateMemory(Math.max(data.length, maxSize));
+    UNSAFE.copyMemory(data, BYTE_ARRAY_OFFSET, null, dataPtr, data.length);
+    try {
+      return copyToArray(dataPtr, mutateOne(dataPtr, data.length, maxSize, seed));
+    } finally {
+      UNSAFE.freeMemory(dataPtr);
+    }
   }
 
   // Called via JNI, being passed data from LLVMFuzzerCustomMutator.
@@ -303,22 +338,52 @@ public final class FuzzTargetRunner {
     if (size == 1 && UNSAFE.getByte(data) == '\n') {
       mutator.init(seed);
     } else {
-      // TODO: See the comment on earlier calls to read for potential optimizations.
-      mutator.read(new ByteArrayInputStream(copyToArray(data, size)));
+      mutator.read(mutatorInput.reset(data, size));
       mutator.mutate(seed);
     }
 
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
-    // TODO: Instead of writing to a byte array and then copying that array's contents into
-    //  memory, consider introducing an OutputStream backed by Unsafe.
+    // The mutator state has been fully deserialized at this point, so the input buffer can safely
+    // be overwritten in place. Bytes beyond maxSize are dropped by the stream.
+    NativeMemoryOutputStream out = mutatorOutput.reset(data, maxSize);
     mutator.write(out);
-    byte[] mutatedBytes = out.toByteArray();
-
-    int newSize = Math.min(mutatedBytes.length, maxSize);
-    UNSAFE.copyMemory(mutatedBytes, BYTE_ARRAY_OFFSET, null, data, newSize);
+    int newSize = out.size();
+    // A truncated input would not deserialize to the current arguments.
+    if (out.hasOverflowed()) {
+      lastMutatedInputLength = -1;
+    } else {
+      rememberLastMutatedInput(data, newSize);
+    }
     return newSize;
   }
 
+  private static void rememberLastMutatedInput(long dataPtr, int dataLength) {
+    if (dataLength > lastMutatedInputCapacity) {
+      // maxSize rarely changes during a fuzzing run, so this reallocates only a few times.
+      lastMutatedInputPtr = UNSAFE.reallocateMemory(lastMutatedInputPtr, dataLength);
+      lastMutatedInputCapacity = dataLength;
+    }
+    UNSAFE.copyMemory(dataPtr, lastMutatedInputPtr, dataLength);
+    lastMutatedInputLength = dataLength;
+  }
+
+  private static boolean isLastMutatedInput(long dataPtr, int dataLength) {
+    if (dataLength != lastMutatedInputLength) {
+      return false;
+    }
+    int i = 0;
+    for (; i + Long.BYTES <= dataLength; i += Long.BYTES) {
+      if (UNSAFE.getLong(dataPtr + i) != UNSAFE.getLong(lastMutatedInputPtr + i)) {
+        return false;
+      }
+    }
+    for (; i < dataLength; i++) {
+      if (UNSAFE.getByte(dataPtr + i) != UNSAFE.getByte(lastMutatedInputPtr + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /*
    * Starts libFuzzer via LLVMFuzzerRunDriver.
    */
@@ -337,6 +402,13 @@ public final class FuzzTargetRunner {
       // https://github.com/llvm/llvm-project/blob/da3623de2411dd931913eb510e94fe846c929c24/compiler-rt/lib/fuzzer/FuzzerFlags.def#L19
       args.add("-len_control=100");
     }
+    if (Opt.constantDictionary) {
+      args = ConstantDictionaryWriter.addConstantDictionary(args);
+      // Strings of classes loaded while fuzzing are added to libFuzzer's table of recently compared
+      // strings, which its dictionary mutations draw from.
+      ConstantDictionary.setNewStringListener(
+          string -> TraceDataFlowNativeCallbacks.traceStrstr("", string, 0));
+    }
     SignalHandler.initialize();
     return startLibFuzzer(
         args.stream().map(str -> str.getBytes(StandardCharsets.UTF_8)).toArray(byte[][] ::new));
@@ -461,6 +533,10 @@ public final class FuzzTargetRunner {
    * @return the return value of LLVMFuzzerRunDriver
    */
   private static int startLibFuzzer(byte[][] args) {
+    if (Opt.bufferedTraceEvents) {
+      // libFuzzer executes all inputs on the current thread.
+      TraceEventBuffer.bufferEventsOnCurrentThread();
+    }
     return FuzzTargetRunnerNatives.startLibFuzzer(
         args, FuzzTargetRunner.class, Opt.experimentalMutator);
   }
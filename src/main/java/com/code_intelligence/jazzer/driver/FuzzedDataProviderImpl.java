@@ -31,11 +31,11 @@ public class FuzzedDataProviderImpl implements FuzzedDataProvider, AutoCloseable
   private long originalDataPtr;
   private int originalRemainingBytes;
 
-  // Accessed in fuzzed_data_provider.cpp.
-  private long dataPtr;
-  private int remainingBytes;
+  // Accessed in fuzzed_data_provider.cpp and PureJavaFuzzedDataProviderImpl.
+  long dataPtr;
+  int remainingBytes;
 
-  private FuzzedDataProviderImpl(long dataPtr, int remainingBytes, byte[] javaData) {
+  FuzzedDataProviderImpl(long dataPtr, int remainingBytes, byte[] javaData) {
     this.javaData = javaData;
     this.originalDataPtr = dataPtr;
     this.dataPtr = dataPtr;
@@ -130,7 +130,7 @@ public class FuzzedDataProviderImpl implements FuzzedDataProvider, AutoCloseable
   private static final Unsafe UNSAFE = UnsafeProvider.getUnsafe();
   private static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
 
-  private static long allocateNativeCopy(byte[] data) {
+  static long allocateNativeCopy(byte[] data) {
     long nativeCopy = UNSAFE.allocateMemory(data.length);
     UNSAFE.copyMemory(data, BYTE_ARRAY_OFFSET, null, nativeCopy, data.length);
     return nativeCopy;
@@ -247,11 +247,11 @@ public class FuzzedDataProviderImpl implements FuzzedDataProvider, AutoCloseable
 
   @Override public native int remainingBytes();
 
-  private native byte consumeByteUnchecked(byte min, byte max);
-  private native short consumeShortUnchecked(short min, short max);
-  private native char consumeCharUnchecked(char min, char max);
-  private native int consumeIntUnchecked(int min, int max);
-  private native long consumeLongUnchecked(long min, long max);
-  private native float consumeRegularFloatUnchecked(float min, float max);
-  private native double consumeRegularDoubleUnchecked(double min, double max);
+  native byte consumeByteUnchecked(byte min, byte max);
+  native short consumeShortUnchecked(short min, short max);
+  native char consumeCharUnchecked(char min, char max);
+  native int consumeIntUnchecked(int min, int max);
+  native long consumeLongUnchecked(long min, long max);
+  native float consumeRegularFloatUnchecked(float min, float max);
+  native double consumeRegularDoubleUnchecked(double min, double max);
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 Code Intelligence GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.code_intelligence.jazzer.driver;
+
+import com.code_intelligence.jazzer.utils.UnsafeProvider;
+import java.io.InputStream;
+import sun.misc.Unsafe;
+
+/**
+ * An {@link InputStream} that reads directly from a region of native memory, such as the input
+ * buffer passed in by libFuzzer, without copying it onto the Java heap first.
+ *
+ * <p>Instances are meant to be reused across fuzzer iterations via {@link #reset(long, int)}. Just
+ * like {@link java.io.ByteArrayInputStream}, {@link #available()} is always exact, which makes
+ * these streams suitable for detecting whether an input has been consumed exactly.
+ *
+ * <p>The caller is responsible for ensuring that the native memory stays valid while it is being
+ * read. This class is not thread-safe.
+ */
+public final class NativeMemoryInputStream extends InputStream {
+  private static final Unsafe UNSAFE = UnsafeProvider.getUnsafe();
+  private static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+
+  private long position;
+  private long end;
+
+  public NativeMemoryInputStream() {
+    reset(0, 0);
+  }
+
+  public NativeMemoryInputStream(long dataPtr, int dataLength) {
+    reset(dataPtr, dataLength);
+  }
+
+  /**
+   * Points this stream at a new region of native memory.
+   *
+   * @param dataPtr    a native pointer to the beginning of the region
+   * @param dataLength the length of the region in bytes
+   * @return this stream
+   */
+  public NativeMemoryInputStream reset(long dataPtr, int dataLength) {
+    if (dataLength < 0) {
+      throw new IllegalArgumentException("dataLength must be non-negative, got " + dataLength);
+    }
+    this.position = dataPtr;
+    this.end = dataPtr + dataLength;
+    return this;
+  }
+
+  @Override
+  public int read() {
+    if (position == end) {
+      return -1;
+    }
+    return UNSAFE.getByte(position++) & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (len == 0) {
+      return 0;
+    }
+    int remaining = (int) (end - position);
+    if (remaining == 0) {
+      return -1;
+    }
+    int toRead = Math.min(len, remaining);
+    UNSAFE.copyMemory(null, position, b, BYTE_ARRAY_OFFSET + off, toRead);
+    position += toRead;
+    return toRead;
+  }
+
+  @Override
+  public long skip(long n) {
+    long toSkip = Math.max(0, Math.min(n, end - position));
+    position += toSkip;
+    return toSkip;
+  }
+
+  @Override
+  public int available() {
+    return (int) (end - position);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2023 Code Intelligence GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.code_intelligence.jazzer.driver;
+
+import com.code_intelligence.jazzer.utils.UnsafeProvider;
+import java.io.OutputStream;
+import sun.misc.Unsafe;
+
+/**
+ * An {@link OutputStream} that writes directly into a fixed-size region of native memory, such as
+ * the buffer libFuzzer passes to its custom mutator.
+ *
+ * <p>Bytes written past the end of the region are silently dropped, which matches libFuzzer's
+ * semantics of truncating mutated inputs to {@code maxSize}. {@link #size()} returns the number of
+ * bytes actually stored in the region.
+ *
+ * <p>Instances are meant to be reused across fuzzer iterations via {@link #reset(long, int)}. This
+ * class is not thread-safe.
+ */
+public final class NativeMemoryOutputStream extends OutputStream {
+  private static final Unsafe UNSAFE = UnsafeProvider.getUnsafe();
+  private static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+
+  private long start;
+  private long position;
+  private long end;
+  private boolean overflowed;
+
+  public NativeMemoryOutputStream() {
+    reset(0, 0);
+  }
+
+  public NativeMemoryOutputStream(long dataPtr, int capacity) {
+    reset(dataPtr, capacity);
+  }
+
+  /**
+   * Points this stream at a new region of native memory and discards the previous size.
+   *
+   * @param dataPtr  a native pointer to the beginning of the region
+   * @param capacity the maximal number of bytes that will be written to the region
+   * @return this stream
+   */
+  public NativeMemoryOutputStream reset(long dataPtr, int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity must be non-negative, got " + capacity);
+    }
+    this.start = dataPtr;
+    this.position = dataPtr;
+    this.end = dataPtr + capacity;
+    this.overflowed = false;
+    return this;
+  }
+
+  @Override
+  public void write(int b) {
+    if (position == end) {
+      overflowed = true;
+      return;
+    }
+    UNSAFE.putByte(position++, (byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    int toWrite = (int) Math.min(len, end - position);
+    if (toWrite < len) {
+      overflowed = true;
+    }
+    UNSAFE.copyMemory(b, BYTE_ARRAY_OFFSET + off, null, position, toWrite);
+    position += toWrite;
+  }
+
+  /**
+   * @return the number of bytes that have been stored in the region since the last reset
+   */
+  public int size() {
+    return (int) (position - start);
+  }
+
+  /**
+   * @return whether any bytes have been dropped since the last reset because they would have been
+   *     written past the end of the region
+   */
+  public boolean hasOverflowed() {
+    return overflowed;
+  }
+}
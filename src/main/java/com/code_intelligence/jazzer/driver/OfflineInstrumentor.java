@@ -14,48 +14,63 @@
 
 package com.code_intelligence.jazzer.driver;
 
+import com.code_intelligence.jazzer.agent.Agent;
 import com.code_intelligence.jazzer.agent.AgentInstaller;
+import com.code_intelligence.jazzer.agent.RuntimeInstrumentor;
 import com.code_intelligence.jazzer.utils.Log;
-import com.code_intelligence.jazzer.utils.ZipUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.lang.UnsupportedClassVersionError;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 public class OfflineInstrumentor {
+  private static final String MULTI_RELEASE_PREFIX = "META-INF/versions/";
+
   /**
    * Create a new jar file at <jazzer_path>/<jarBaseName>.instrumented.jar
    * for each jar in passed in, with classes that have Jazzer instrumentation.
    *
+   * <p>Classes are read from the jars directly and instrumented in parallel. Coverage IDs are
+   * assigned to classes in the order in which they appear in the jars, so the output doesn't depend
+   * on the order in which the classes are instrumented.
+   *
    * @param jarLists list of jars to instrument
    * @return a boolean representing the success status
    */
   public static boolean instrumentJars(List<String> jarLists) {
     AgentInstaller.install(Opt.hooks);
+    RuntimeInstrumentor runtimeInstrumentor = Agent.getInstalledRuntimeInstrumentor();
+    if (runtimeInstrumentor == null) {
+      Log.error("--instrument_only requires --hooks");
+      return false;
+    }
+    Instrumentor instrumentor = new Instrumentor() {
+      @Override
+      public Integer countCoverageIds(String internalClassName, byte[] bytecode) {
+        return runtimeInstrumentor.countCoverageIds(internalClassName, bytecode);
+      }
 
-    // Clear Opt.dumpClassesDir before adding new instrumented classes
-    File dumpClassesDir = new File(Opt.dumpClassesDir);
-    if (dumpClassesDir.exists()) {
-      for (String fn : dumpClassesDir.list()) {
-        new File(Opt.dumpClassesDir, fn).delete();
+      @Override
+      public byte[] instrumentWithFirstId(String internalClassName, byte[] bytecode, int firstId) {
+        return runtimeInstrumentor.instrumentWithFirstId(internalClassName, bytecode, firstId);
       }
-    }
+    };
 
-    List<String> errorMessages = new ArrayList<>();
+    List<String> errorMessages = Collections.synchronizedList(new ArrayList<>());
+    int nextId = 0;
     for (String jarPath : jarLists) {
       String outputBaseName = jarPath;
       if (outputBaseName.contains(File.separator)) {
@@ -70,18 +85,11 @@ public class OfflineInstrumentor {
       Log.info("Instrumenting jar file: " + jarPath);
 
       try {
-        errorMessages = createInstrumentedClasses(jarPath);
+        nextId = createInstrumentedJar(
+            instrumentor, jarPath, outputBaseName + ".instrumented.jar", nextId, errorMessages);
       } catch (IOException e) {
         errorMessages.add("Failed to instrument jar: " + jarPath
             + ". Please ensure the file at this location is a jar file. Error Message: " + e);
-        continue;
-      }
-
-      try {
-        createInstrumentedJar(jarPath, Opt.dumpClassesDir + File.separator + outputBaseName,
-            outputBaseName + ".instrumented.jar");
-      } catch (Exception e) {
-        errorMessages.add("Failed to instrument jar: " + jarPath + ". Error: " + e);
       }
     }
 
@@ -94,86 +102,159 @@ public class OfflineInstrumentor {
   }
 
   /**
-   * Loops over all classes in jar file and adds instrumentation. The output
-   * of the instrumented classes will be at --dump-classes-dir
+   * Creates a copy of the specified jar with all classes instrumented.
    *
-   * @param jarPath a path to a jar file to instrument.
-   * @return a list of errors that were hit when trying to instrument all classes in jar
+   * <p>Every class is instrumented twice: First to determine the number of coverage IDs it requires
+   * and then, once all classes in the jar have been assigned a range of IDs, with its final IDs.
+   * Both passes run in parallel on the common fork-join pool. The instrumented classes are written
+   * to the output jar as soon as they and all preceding entries are available.
+   *
+   * @param instrumentor the instrumentor to use, which has to be thread-safe
+   * @param originalJarPath a path to the original jar.
+   * @param outputJarPath output file.
+   * @param firstId the first coverage ID to assign to classes in this jar
+   * @param errorMessages a list to add errors that were hit when instrumenting classes to
+   * @return the first coverage ID not used by classes in this jar
    */
-  private static List<String> createInstrumentedClasses(String jarPath) throws IOException {
-    List<String> errorMessages = new ArrayList<>();
-    List<String> allClasses = new ArrayList<>();
-
-    // Collect all classes for jar file
-    try (JarFile jarFile = new JarFile(jarPath)) {
-      Enumeration<JarEntry> allEntries = jarFile.entries();
-      while (allEntries.hasMoreElements()) {
-        JarEntry entry = allEntries.nextElement();
-        if (entry.isDirectory()) {
-          continue;
+  // Visible for testing.
+  static int createInstrumentedJar(Instrumentor instrumentor, String originalJarPath,
+      String outputJarPath, int firstId, List<String> errorMessages) throws IOException {
+    try (JarFile jarFile = new JarFile(originalJarPath);
+         ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(outputJarPath))) {
+      List<JarEntry> entries = Collections.list(jarFile.entries());
+      List<ClassFile> classFiles = new ArrayList<>();
+      for (JarEntry entry : entries) {
+        if (!entry.isDirectory() && entry.getName().endsWith(".class")
+            && !entry.getName().endsWith("module-info.class")) {
+          classFiles.add(new ClassFile(entry));
+        }
+      }
+      if (classFiles.isEmpty()) {
+        errorMessages.add("Classes is empty for jar: " + originalJarPath);
+      }
+
+      classFiles.parallelStream().forEach(classFile -> {
+        try {
+          classFile.bytecode = readAllBytes(jarFile, classFile.entry);
+          Integer numIds =
+              instrumentor.countCoverageIds(classFile.internalClassName, classFile.bytecode);
+          classFile.numIds = numIds != null ? numIds : ClassFile.NOT_INSTRUMENTED;
+        } catch (Throwable e) {
+          // Catch all exceptions/errors and keep instrumenting to give user the option to manually
+          // fix one offs if possible
+          errorMessages.add(
+              "Failed to instrument class: " + classFile.internalClassName + ". Error: " + e);
         }
+      });
 
-        String name = entry.getName();
-        if (!name.endsWith(".class")) {
-          Log.info("Skipping instrumenting file: " + name);
+      // Assign IDs sequentially so that they don't depend on the order in which classes have been
+      // processed.
+      int nextId = firstId;
+      Map<String, CompletableFuture<byte[]>> instrumentedClasses = new HashMap<>();
+      for (ClassFile classFile : classFiles) {
+        if (classFile.numIds == ClassFile.NOT_INSTRUMENTED) {
           continue;
         }
+        int classFirstId = nextId;
+        nextId += classFile.numIds;
+        instrumentedClasses.put(
+            classFile.entry.getName(), CompletableFuture.supplyAsync(() -> {
+              try {
+                return instrumentor.instrumentWithFirstId(
+                    classFile.internalClassName, classFile.bytecode, classFirstId);
+              } catch (Throwable e) {
+                errorMessages.add(
+                    "Failed to instrument class: " + classFile.internalClassName + ". Error: " + e);
+                return null;
+              } finally {
+                classFile.bytecode = null;
+              }
+            }));
+      }
 
-        String className = name.substring(0, name.lastIndexOf(".class"));
-        className = className.replace('/', '.');
-        allClasses.add(className);
-        Log.info("Found class: " + className);
+      int numInstrumentedClasses = instrumentedClasses.size();
+      for (JarEntry entry : entries) {
+        CompletableFuture<byte[]> instrumentedClass = instrumentedClasses.remove(entry.getName());
+        byte[] instrumentedBytecode = instrumentedClass != null ? instrumentedClass.join() : null;
+        // Preserve the metadata of the original entry, such as its modification time and
+        // compression method. The compressed size depends on the compressor and is recomputed.
+        ZipEntry outputEntry = new ZipEntry(entry);
+        outputEntry.setCompressedSize(-1);
+        if (instrumentedBytecode != null) {
+          // Size and checksum can't be reset, but have to match the new contents.
+          CRC32 crc = new CRC32();
+          crc.update(instrumentedBytecode);
+          outputEntry.setSize(instrumentedBytecode.length);
+          outputEntry.setCrc(crc.getValue());
+          zos.putNextEntry(outputEntry);
+          zos.write(instrumentedBytecode);
+        } else {
+          zos.putNextEntry(outputEntry);
+          try (InputStream is = jarFile.getInputStream(entry)) {
+            copy(is, zos);
+          }
+        }
+        zos.closeEntry();
       }
+      Log.info(String.format("Instrumented %d classes in %s using %d coverage IDs",
+          numInstrumentedClasses, originalJarPath, nextId - firstId));
+      return nextId;
     }
+  }
 
-    // No classes found, so none to load. Return errors
-    if (allClasses.size() == 0) {
-      errorMessages.add("Classes is empty for jar: " + jarPath);
-      return errorMessages;
+  private static byte[] readAllBytes(JarFile jarFile, JarEntry entry) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream is = jarFile.getInputStream(entry)) {
+      copy(is, out);
     }
+    return out.toByteArray();
+  }
 
-    // Create class loader to load in all classes
-    File file = new File(jarPath);
-    URL url = file.toURI().toURL();
-    URL[] urls = new URL[] {url};
-    ClassLoader cl = new URLClassLoader(urls);
-
-    // Loop through all files and load in all classes, agent will instrument them as they load
-    for (String className : allClasses) {
-      try {
-        cl.loadClass(className);
-      } catch (UnsupportedClassVersionError ucve) {
-        // The classes will still get instrumented here, but warn so the user knows something
-        // happened
-        Log.warn(ucve.toString());
-      } catch (Throwable e) {
-        // Catch all exceptions/errors and keep instrumenting to give user the option to manually
-        // fix one offs if possible
-        errorMessages.add("Failed to instrument class: " + className + ". Error: " + e);
-      }
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buf = new byte[8192];
+    int i;
+    while ((i = in.read(buf)) != -1) {
+      out.write(buf, 0, i);
     }
-
-    return errorMessages;
   }
 
   /**
-   * This will create a new jar out of specified original jar and the merge in the instrumented
-   * classes from the specified instrumented classes dir
+   * Instruments individual classes with coverage IDs assigned by the caller.
    *
-   * @param originalJarPath a path to the original jar.
-   * @param instrumentedClassesDir a path to the instrumented classes dir.
-   * @param outputZip output file.
+   * @see RuntimeInstrumentor#countCoverageIds(String, byte[])
+   * @see RuntimeInstrumentor#instrumentWithFirstId(String, byte[], int)
    */
-  private static void createInstrumentedJar(
-      String originalJarPath, String instrumentedClassesDir, String outputZip) throws IOException {
-    try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(outputZip))) {
-      Set<String> dirFilesToSkip = new HashSet<>();
-      dirFilesToSkip.add(".original.class");
-      dirFilesToSkip.add(".failed.class");
-      Set<String> filesMerged =
-          ZipUtils.mergeDirectoryToZip(instrumentedClassesDir, zos, dirFilesToSkip);
-
-      ZipUtils.mergeZipToZip(originalJarPath, zos, filesMerged);
+  interface Instrumentor {
+    /**
+     * Returns the number of coverage IDs the class requires, or null if it isn't instrumented.
+     */
+    Integer countCoverageIds(String internalClassName, byte[] bytecode);
+
+    /**
+     * Returns the class instrumented with coverage IDs starting at {@code firstId}, or null if it
+     * isn't instrumented.
+     */
+    byte[] instrumentWithFirstId(String internalClassName, byte[] bytecode, int firstId);
+  }
+
+  private static final class ClassFile {
+    static final int NOT_INSTRUMENTED = -1;
+
+    final JarEntry entry;
+    final String internalClassName;
+    // Written and read by different tasks, which CompletableFuture and the parallel stream order.
+    byte[] bytecode;
+    int numIds = NOT_INSTRUMENTED;
+
+    ClassFile(JarEntry entry) {
+      this.entry = entry;
+      String name = entry.getName();
+      name = name.substring(0, name.length() - ".class".length());
+      // Classes in multi-release jars may be located in META-INF/versions/<version>/.
+      if (name.startsWith(MULTI_RELEASE_PREFIX)) {
+        name = name.substring(name.indexOf('/', MULTI_RELEASE_PREFIX.length()) + 1);
+      }
+      this.internalClassName = name;
     }
   }
 }
@@ -61,6 +61,9 @@ public final class Opt {
         "Additional arguments to pass to the JVM (separator can be escaped with '\\', native launcher only)");
     stringSetting(
         "agent_path", null, "Custom path to jazzer_agent_deploy.jar (native launcher only)");
+    stringSetting("cds_archive", null,
+        "Path of an AppCDS archive of the classes loaded at startup, which is created by a warm-up "
+            + "run if it doesn't exist and speeds up all starts (JDK 13+, native launcher only)");
     // The following arguments are interpreted by the Jazzer main class directly as they require
     // starting Jazzer as a subprocess.
     boolSetting(
@@ -80,6 +83,11 @@ public final class Opt {
           + "(examples: java.lang.System.out::println, java.lang.String::new(byte[]))");
   public static final List<String> autofuzzIgnore = stringListSetting("autofuzz_ignore", ',',
       "Fully qualified names of exception classes to ignore during fuzzing");
+  public static final boolean bufferedTraceEvents = boolSetting("buffered_trace_events", false,
+      "Pass compare, division, switch and array index events to libFuzzer once per execution "
+          + "rather than via a native call per event");
+  public static final boolean constantDictionary = boolSetting("constant_dictionary", false,
+      "Use string and integer constants of instrumented classes as a dictionary for the fuzzer");
   public static final String coverageDump = stringSetting("coverage_dump", "",
       "Path to write a JaCoCo .exec file to when the fuzzer exits (if non-empty)");
   public static final String coverageReport = stringSetting("coverage_report", "",
@@ -96,9 +104,17 @@ public final class Opt {
       "dump_classes_dir", "", "Directory to dump instrumented .class files into (if non-empty)");
   public static final boolean experimentalMutator =
       boolSetting("experimental_mutator", false, "Use an experimental structured mutator");
+  public static final String hookIndexDir = stringSetting("hook_index_dir", "",
+      "Directory to cache the classes targeted by hooks in across fuzzer runs and fork mode "
+          + "workers, which saves a scan of the class path (if non-empty)");
   public static final boolean hooks = boolSetting(
       "hooks", true, "Apply fuzzing instrumentation (use 'trace' for finer-grained control)");
   public static final String idSyncFile = stringSetting("id_sync_file", null, null);
+  public static final String instrumentationCacheDir = stringSetting("instrumentation_cache_dir", "",
+      "Directory to cache instrumented classes in across fuzzer runs and fork mode workers (if non-empty)");
+  public static final long instrumentationCacheMaxSize =
+      uint64Setting("instrumentation_cache_max_size", 512L * 1024 * 1024,
+          "Maximum size in bytes of the cache in --instrumentation_cache_dir");
   public static final List<String> instrumentationIncludes =
       stringListSetting("instrumentation_includes",
           "Glob patterns matching names of classes to instrument for fuzzing");
@@ -117,6 +133,9 @@ public final class Opt {
                           .collect(toSet()));
   public static final long keepGoing = uint64Setting(
       "keep_going", 1, "Number of distinct findings after which the fuzzer should stop");
+  public static final boolean pureJavaFuzzedDataProvider =
+      boolSetting("pure_java_fuzzed_data_provider", false,
+          "Consume values from FuzzedDataProvider in pure Java rather than via JNI calls");
   public static final String reproducerPath = stringSetting("reproducer_path", ".",
       "Directory in which stand-alone Java reproducers are stored for each finding");
   public static final String targetClass = stringSetting("target_class", "",
@@ -125,6 +144,10 @@ public final class Opt {
   public static final String targetMethod = stringSetting("target_method", "", null);
   public static final List<String> trace = stringListSetting("trace",
       "Types of instrumentation to apply: cmp, cov, div, gep (disabled by default), indir, native");
+  public static final long traceThrottle = uint64Setting("trace_throttle", 0,
+      "Number of consecutive events at a compare, division or switch site that don't produce new "
+          + "value profile features after which such events are no longer passed to libFuzzer "
+          + "(0: never throttle)");
 
   // The values of this setting depends on autofuzz.
   public static final List<String> targetArgs = autofuzz.isEmpty()
@@ -148,10 +171,15 @@ public final class Opt {
 
   // Some scenarios require instrumenting the jar before fuzzing begins
   public static final List<String> instrumentOnly = stringListSetting("instrument_only", ',',
-      "Comma separated list of jar files to instrument. No fuzzing is performed.");
+      "Comma separated list of jar files to instrument into <name>.instrumented.jar in the current "
+          + "directory. No fuzzing is performed.");
 
   static final boolean mergeInner = boolSetting("internal.merge_inner", false, null);
 
+  // Set by the native launcher for the run that creates the --cds_archive, which has to exit via
+  // System.exit before libFuzzer is started.
+  static final boolean cdsWarmUp = boolSetting("internal.cds_warm_up", false, null);
+
   private static final boolean help =
       boolSetting("help", false, "Show this list of all available arguments");
   private static final boolean version = boolSetting("version", false, "Print version information");
@@ -183,9 +211,5 @@ public final class Opt {
       Log.error("--nodedup is not supported with --ignore or --keep_going");
       exit(1);
     }
-    if (!instrumentOnly.isEmpty() && dumpClassesDir.isEmpty()) {
-      Log.error("--dump_classes_dir must be set with --instrument_only");
-      exit(1);
-    }
   }
 }
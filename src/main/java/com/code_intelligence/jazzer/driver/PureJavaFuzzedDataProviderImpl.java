@@ -0,0 +1,631 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.driver;
+
+import com.code_intelligence.jazzer.utils.UnsafeProvider;
+import sun.misc.Unsafe;
+
+/**
+ * A {@link FuzzedDataProviderImpl} that reads the native fuzzer input directly via {@link Unsafe}
+ * instead of calling into fuzzed_data_provider.cpp via JNI for every consumed value.
+ *
+ * <p>All methods are straight ports of their native counterparts and consume the same bytes,
+ * so existing corpora remain valid. Floating-point results are computed without fused
+ * multiply-add and may thus differ in the last bit from those of a native build that contracts
+ * floating-point operations.
+ */
+public final class PureJavaFuzzedDataProviderImpl extends FuzzedDataProviderImpl {
+  private static final Unsafe UNSAFE = UnsafeProvider.getUnsafe();
+
+  // Reused across calls to consume*String to hold the generated modified UTF-8 bytes.
+  private byte[] utf8Buffer = new byte[0];
+
+  private PureJavaFuzzedDataProviderImpl(long dataPtr, int remainingBytes, byte[] javaData) {
+    super(dataPtr, remainingBytes, javaData);
+  }
+
+  /**
+   * Pure Java variant of {@link FuzzedDataProviderImpl#withJavaData(byte[])}.
+   */
+  public static PureJavaFuzzedDataProviderImpl withJavaData(byte[] data) {
+    return new PureJavaFuzzedDataProviderImpl(allocateNativeCopy(data), data.length, data);
+  }
+
+  /**
+   * Pure Java variant of {@link FuzzedDataProviderImpl#withNativeData()}.
+   */
+  public static PureJavaFuzzedDataProviderImpl withNativeData() {
+    return new PureJavaFuzzedDataProviderImpl(0, 0, null);
+  }
+
+  @Override
+  public boolean consumeBoolean() {
+    return (consumeIntegralInRange(0, 0xFF, Byte.SIZE, 0xFF) & 1) == 1;
+  }
+
+  @Override
+  public boolean[] consumeBooleans(int maxLength) {
+    boolean[] array = new boolean[consumeArrayLength(maxLength, 1)];
+    consumeArray(array, Unsafe.ARRAY_BOOLEAN_BASE_OFFSET, array.length);
+    return array;
+  }
+
+  @Override
+  public byte consumeByte() {
+    return (byte) consumeIntegralInRange(0, 0xFF, Byte.SIZE, 0xFF);
+  }
+
+  @Override
+  public short consumeShort() {
+    return (short) consumeIntegralInRange(0, 0xFFFF, Short.SIZE, 0xFFFF);
+  }
+
+  @Override
+  public short[] consumeShorts(int maxLength) {
+    short[] array = new short[consumeArrayLength(maxLength, Short.BYTES)];
+    consumeArray(array, Unsafe.ARRAY_SHORT_BASE_OFFSET, array.length * Short.BYTES);
+    return array;
+  }
+
+  @Override
+  public int consumeInt() {
+    return (int) consumeIntegralInRange(0, 0xFFFFFFFFL, Integer.SIZE, 0xFFFFFFFFL);
+  }
+
+  @Override
+  public int[] consumeInts(int maxLength) {
+    int[] array = new int[consumeArrayLength(maxLength, Integer.BYTES)];
+    consumeArray(array, Unsafe.ARRAY_INT_BASE_OFFSET, array.length * Integer.BYTES);
+    return array;
+  }
+
+  @Override
+  public long consumeLong() {
+    return consumeIntegralInRange(0, -1L, Long.SIZE, -1L);
+  }
+
+  @Override
+  public long[] consumeLongs(int maxLength) {
+    long[] array = new long[consumeArrayLength(maxLength, Long.BYTES)];
+    consumeArray(array, Unsafe.ARRAY_LONG_BASE_OFFSET, array.length * Long.BYTES);
+    return array;
+  }
+
+  @Override
+  public float consumeFloat() {
+    if (remainingBytes == 0) {
+      return 0.0f;
+    }
+    int typeVal = consumeByte() & 0xFF;
+    if (typeVal <= 10) {
+      // Consume the same amount of bytes as for a regular float.
+      consumeRegularFloat();
+      switch (typeVal) {
+        case 0:
+          return 0.0f;
+        case 1:
+          return -0.0f;
+        case 2:
+          return Float.POSITIVE_INFINITY;
+        case 3:
+          return Float.NEGATIVE_INFINITY;
+        case 4:
+          return Float.NaN;
+        case 5:
+          return Float.MIN_VALUE;
+        case 6:
+          return -Float.MIN_VALUE;
+        case 7:
+          return Float.MIN_NORMAL;
+        case 8:
+          return -Float.MIN_NORMAL;
+        case 9:
+          return Float.MAX_VALUE;
+        default:
+          return -Float.MAX_VALUE;
+      }
+    }
+    return consumeRegularFloat();
+  }
+
+  @Override
+  public float consumeRegularFloat() {
+    return consumeRegularFloatUnchecked(-Float.MAX_VALUE, Float.MAX_VALUE);
+  }
+
+  @Override
+  public float consumeProbabilityFloat() {
+    // Matches the implicit uint32_t -> float conversion, which rounds to nearest.
+    float result = (float) (consumeInt() & 0xFFFFFFFFL);
+    return result / (float) 0xFFFFFFFFL;
+  }
+
+  @Override
+  public double consumeDouble() {
+    if (remainingBytes == 0) {
+      return 0.0;
+    }
+    int typeVal = consumeByte() & 0xFF;
+    if (typeVal <= 10) {
+      // Consume the same amount of bytes as for a regular double.
+      consumeRegularDouble();
+      switch (typeVal) {
+        case 0:
+          return 0.0;
+        case 1:
+          return -0.0;
+        case 2:
+          return Double.POSITIVE_INFINITY;
+        case 3:
+          return Double.NEGATIVE_INFINITY;
+        case 4:
+          return Double.NaN;
+        case 5:
+          return Double.MIN_VALUE;
+        case 6:
+          return -Double.MIN_VALUE;
+        case 7:
+          return Double.MIN_NORMAL;
+        case 8:
+          return -Double.MIN_NORMAL;
+        case 9:
+          return Double.MAX_VALUE;
+        default:
+          return -Double.MAX_VALUE;
+      }
+    }
+    return consumeRegularDouble();
+  }
+
+  @Override
+  public double consumeRegularDouble() {
+    return consumeRegularDoubleUnchecked(-Double.MAX_VALUE, Double.MAX_VALUE);
+  }
+
+  @Override
+  public double consumeProbabilityDouble() {
+    long raw = consumeLong();
+    // Converts the unsigned value to double with the same rounding as uint64_t -> double: Halving
+    // while keeping the lowest bit as a sticky bit preserves round-to-nearest-even.
+    double result = raw >= 0 ? (double) raw : ((double) ((raw >>> 1) | (raw & 1))) * 2.0;
+    // (double) UINT64_MAX rounds to 2^64.
+    return result / 0x1.0p64;
+  }
+
+  @Override
+  public char consumeChar() {
+    return (char) consumeIntegralInRange(0, 0xFFFF, Character.SIZE, 0xFFFF);
+  }
+
+  @Override
+  public char consumeCharNoSurrogates() {
+    char rawCodepoint = consumeChar();
+    if (rawCodepoint >= 0xD800 && rawCodepoint < 0xE000) {
+      rawCodepoint -= 0xD800;
+    }
+    return rawCodepoint;
+  }
+
+  @Override
+  public String consumeAsciiString(int maxLength) {
+    return consumeStringInternal(maxLength, true, true);
+  }
+
+  @Override
+  public String consumeString(int maxLength) {
+    return consumeStringInternal(maxLength, false, true);
+  }
+
+  @Override
+  public String consumeRemainingAsAsciiString() {
+    return consumeStringInternal(Integer.MAX_VALUE, true, false);
+  }
+
+  @Override
+  public String consumeRemainingAsString() {
+    return consumeStringInternal(Integer.MAX_VALUE, false, false);
+  }
+
+  @Override
+  public byte[] consumeBytes(int maxLength) {
+    byte[] array = new byte[consumeArrayLength(maxLength, 1)];
+    consumeArray(array, Unsafe.ARRAY_BYTE_BASE_OFFSET, array.length);
+    return array;
+  }
+
+  @Override
+  public byte[] consumeRemainingAsBytes() {
+    return consumeBytes(Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int remainingBytes() {
+    return remainingBytes;
+  }
+
+  @Override
+  byte consumeByteUnchecked(byte min, byte max) {
+    return (byte) consumeIntegralInRange(min, max, Byte.SIZE, Byte.MAX_VALUE);
+  }
+
+  @Override
+  short consumeShortUnchecked(short min, short max) {
+    return (short) consumeIntegralInRange(min, max, Short.SIZE, Short.MAX_VALUE);
+  }
+
+  @Override
+  char consumeCharUnchecked(char min, char max) {
+    return (char) consumeIntegralInRange(min, max, Character.SIZE, Character.MAX_VALUE);
+  }
+
+  @Override
+  int consumeIntUnchecked(int min, int max) {
+    return (int) consumeIntegralInRange(min, max, Integer.SIZE, Integer.MAX_VALUE);
+  }
+
+  @Override
+  long consumeLongUnchecked(long min, long max) {
+    return consumeIntegralInRange(min, max, Long.SIZE, Long.MAX_VALUE);
+  }
+
+  @Override
+  float consumeRegularFloatUnchecked(float min, float max) {
+    float range;
+    float result = min;
+
+    // Deal with overflow, in the event min and max are very far apart.
+    if (min < 0 && max > 0 && min + Float.MAX_VALUE < max) {
+      range = (max / 2) - (min / 2);
+      if (consumeBoolean()) {
+        result += range;
+      }
+    } else {
+      range = max - min;
+    }
+
+    float probability = consumeProbabilityFloat();
+    return result + range * probability;
+  }
+
+  @Override
+  double consumeRegularDoubleUnchecked(double min, double max) {
+    double range;
+    double result = min;
+
+    // Deal with overflow, in the event min and max are very far apart.
+    if (min < 0 && max > 0 && min + Double.MAX_VALUE < max) {
+      range = (max / 2) - (min / 2);
+      if (consumeBoolean()) {
+        result += range;
+      }
+    } else {
+      range = max - min;
+    }
+
+    double probability = consumeProbabilityDouble();
+    return result + range * probability;
+  }
+
+  /**
+   * Consumes an integral value in the range [min, max] from the end of the input, where min and
+   * max are the sign- or zero-extended bounds of an integral type with {@code typeBits} bits and
+   * maximum value {@code typeMax}.
+   *
+   * <p>Mirrors {@code ConsumeIntegralInRange} in fuzzed_data_provider.cpp, including the modulo
+   * bias and the wrap-around of the final addition.
+   */
+  private long consumeIntegralInRange(long min, long max, int typeBits, long typeMax) {
+    long range = max - min;
+    long result = 0;
+    int offset = 0;
+
+    while (offset < typeBits && (range >>> offset) != 0 && remainingBytes != 0) {
+      --remainingBytes;
+      result = (result << 8) | (UNSAFE.getByte(dataPtr + remainingBytes) & 0xFF);
+      offset += 8;
+    }
+
+    // A range covering all 64-bit values needs no reduction (and range + 1 would be 0).
+    if (range != typeMax && range != -1) {
+      // We accept modulo bias in favor of reading a dynamic number of bytes as this would make it
+      // harder for the fuzzer to mutate towards values from the table of recent compares.
+      result = Long.remainderUnsigned(result, range + 1);
+    }
+
+    return min + result;
+  }
+
+  private int consumeArrayLength(int maxLength, int elementSize) {
+    if (maxLength < 0) {
+      throw new IllegalArgumentException("maxLength must not be negative");
+    }
+    // Arrays of integral types are considered data and thus consumed from the beginning of the
+    // buffer.
+    return (int) (Math.min((long) elementSize * maxLength, remainingBytes) / elementSize);
+  }
+
+  private void consumeArray(Object array, long arrayBaseOffset, int numBytes) {
+    UNSAFE.copyMemory(null, dataPtr, array, arrayBaseOffset, numBytes);
+    dataPtr += numBytes;
+    remainingBytes -= numBytes;
+  }
+
+  // States of the modified UTF-8 generation state machine, see FixUpModifiedUtf8 in
+  // fuzzed_data_provider.cpp for a detailed explanation.
+  private static final int LEADING_BYTE_GENERIC = 0;
+  private static final int LEADING_BYTE_AFTER_BACKSLASH = 1;
+  private static final int CONTINUATION_BYTE_GENERIC = 2;
+  private static final int CONTINUATION_BYTE_LOW_LEADING_BYTE = 3;
+  private static final int FIRST_CONTINUATION_BYTE_LOW_LEADING_BYTE = 4;
+  private static final int FIRST_CONTINUATION_BYTE_SURROGATE_LEADING_BYTE = 5;
+  private static final int FIRST_CONTINUATION_BYTE_GENERIC = 6;
+  private static final int SECOND_CONTINUATION_BYTE_GENERIC = 7;
+  private static final int LEADING_BYTE_LOW_SURROGATE = 8;
+  private static final int FIRST_CONTINUATION_BYTE_LOW_SURROGATE = 9;
+  private static final int SECOND_CONTINUATION_BYTE_HIGH_SURROGATE = 10;
+  private static final int SECOND_CONTINUATION_BYTE_LOW_SURROGATE = 11;
+
+  private static final int TWO_BYTE_ZERO_LEADING_BYTE = 0b11000000;
+  private static final int TWO_BYTE_ZERO_CONTINUATION_BYTE = 0b10000000;
+  private static final int THREE_BYTE_LOW_LEADING_BYTE = 0b11100000;
+  private static final int SURROGATE_LEADING_BYTE = 0b11101101;
+
+  private String consumeStringInternal(
+      int maxLength, boolean asciiOnly, boolean stopOnBackslash) {
+    if (maxLength < 0) {
+      throw new IllegalArgumentException("maxLength must not be negative");
+    }
+    if (maxLength == 0 || remainingBytes == 0) {
+      return "";
+    }
+    if (remainingBytes == 1) {
+      remainingBytes = 0;
+      return "";
+    }
+
+    // Every consumed byte is transformed into at most one code unit, except for the case of a zero
+    // byte which requires two bytes.
+    int maxStrLength = (int) Math.min(
+        (asciiOnly ? 2L : 6L) * maxLength, Math.min(2L * remainingBytes, Integer.MAX_VALUE - 8));
+    if (utf8Buffer.length < maxStrLength) {
+      utf8Buffer = new byte[maxStrLength];
+    }
+    byte[] str = utf8Buffer;
+    int strLength = 0;
+
+    int state = LEADING_BYTE_GENERIC;
+    long pos = dataPtr;
+    long dataEnd = dataPtr + remainingBytes;
+  loop:
+    for (int length = 0; length < maxLength && pos != dataEnd; ++pos) {
+      int c = UNSAFE.getByte(pos) & 0xFF;
+      if (asciiOnly) {
+        // Clamp to 7-bit ASCII range.
+        c &= 0x7F;
+      }
+      switch (state) {
+        case LEADING_BYTE_GENERIC: {
+          switch (asciiOnly ? 0 : countlOne(c)) {
+            case 0: {
+              // valid - 1-byte code point (ASCII)
+              // The zero character has to be coded on two bytes in modified UTF-8.
+              if (c == 0) {
+                str[strLength++] = (byte) TWO_BYTE_ZERO_LEADING_BYTE;
+                c = TWO_BYTE_ZERO_CONTINUATION_BYTE;
+              } else if (stopOnBackslash && c == '\\') {
+                state = LEADING_BYTE_AFTER_BACKSLASH;
+                // The slash either signals the end of the string or is skipped, so don't append
+                // anything.
+                continue;
+              }
+              ++length;
+              break;
+            }
+            case 1:
+              // invalid - continuation byte at leader byte position
+              // Fix it up to be of the form 0b110XXXXX and fall through to the case of a 2-byte
+              // sequence.
+              c |= 1 << 6;
+              c &= ~(1 << 5);
+              // fall through
+            case 2: {
+              // (most likely) valid - start of a 2-byte sequence
+              // ASCII characters must be coded on a single byte, so we must ensure that the lower
+              // two bits combined with the six non-header bits of the following byte do not form a
+              // 7-bit ASCII value. This could only be the case if at most the lowest bit is set.
+              if ((c & 0b00011110) == 0) {
+                state = CONTINUATION_BYTE_LOW_LEADING_BYTE;
+              } else {
+                state = CONTINUATION_BYTE_GENERIC;
+              }
+              break;
+            }
+            default:
+              // invalid - at least four leading ones
+              // Not valid in the JVM's modified UTF-8 encoding, fix it up by clearing the fourth
+              // leading one and falling through to the 3-byte case.
+              c &= ~(1 << 4);
+              // fall through
+            case 3: {
+              // valid - start of a 3-byte sequence
+              if (c == THREE_BYTE_LOW_LEADING_BYTE) {
+                state = FIRST_CONTINUATION_BYTE_LOW_LEADING_BYTE;
+              } else if (c == SURROGATE_LEADING_BYTE) {
+                state = FIRST_CONTINUATION_BYTE_SURROGATE_LEADING_BYTE;
+              } else {
+                state = FIRST_CONTINUATION_BYTE_GENERIC;
+              }
+              break;
+            }
+          }
+          break;
+        }
+        case LEADING_BYTE_AFTER_BACKSLASH: {
+          if (c != '\\') {
+            // Mark the current byte as consumed.
+            ++pos;
+            break loop;
+          }
+          // A double backslash is consumed as a single one. As we skipped the first one, emit the
+          // second one as usual.
+          state = LEADING_BYTE_GENERIC;
+          ++length;
+          break;
+        }
+        case CONTINUATION_BYTE_LOW_LEADING_BYTE: {
+          c = forceContinuationByte(c);
+          // Preserve the zero character, which is coded on two bytes in modified UTF-8. In all
+          // other cases ensure that we are not incorrectly encoding an ASCII character on two
+          // bytes by setting the eighth least significant bit of the encoded value (second least
+          // significant bit of the leading byte).
+          int previousC = str[strLength - 1] & 0xFF;
+          if (previousC != TWO_BYTE_ZERO_LEADING_BYTE || c != TWO_BYTE_ZERO_CONTINUATION_BYTE) {
+            str[strLength - 1] = (byte) (previousC | (1 << 1));
+          }
+          state = LEADING_BYTE_GENERIC;
+          ++length;
+          break;
+        }
+        case CONTINUATION_BYTE_GENERIC: {
+          c = forceContinuationByte(c);
+          state = LEADING_BYTE_GENERIC;
+          ++length;
+          break;
+        }
+        case FIRST_CONTINUATION_BYTE_LOW_LEADING_BYTE: {
+          c = forceContinuationByte(c);
+          // Ensure that the current code point could not have been coded on two bytes by setting
+          // the highest non-header bit in this byte (fifth highest in the encoded value).
+          c |= 1 << 5;
+          state = SECOND_CONTINUATION_BYTE_GENERIC;
+          break;
+        }
+        case FIRST_CONTINUATION_BYTE_SURROGATE_LEADING_BYTE: {
+          c = forceContinuationByte(c);
+          if ((c & (1 << 5)) != 0) {
+            // Start with a high surrogate (0xD800-0xDBFF).
+            c |= 1 << 5;
+            c &= ~(1 << 4);
+            // The high surrogate must be followed by a low surrogate.
+            state = SECOND_CONTINUATION_BYTE_HIGH_SURROGATE;
+          } else {
+            state = SECOND_CONTINUATION_BYTE_GENERIC;
+          }
+          break;
+        }
+        case FIRST_CONTINUATION_BYTE_GENERIC: {
+          c = forceContinuationByte(c);
+          state = SECOND_CONTINUATION_BYTE_GENERIC;
+          break;
+        }
+        case SECOND_CONTINUATION_BYTE_HIGH_SURROGATE: {
+          c = forceContinuationByte(c);
+          state = LEADING_BYTE_LOW_SURROGATE;
+          ++length;
+          break;
+        }
+        case SECOND_CONTINUATION_BYTE_LOW_SURROGATE:
+        case SECOND_CONTINUATION_BYTE_GENERIC: {
+          c = forceContinuationByte(c);
+          state = LEADING_BYTE_GENERIC;
+          ++length;
+          break;
+        }
+        case LEADING_BYTE_LOW_SURROGATE: {
+          // We have to emit a low surrogate leading byte, which is a fixed value. We still consume
+          // a byte from the input to make fuzzer changes more stable and preserve valid surrogate
+          // pairs picked up from e.g. the table of recent compares.
+          c = SURROGATE_LEADING_BYTE;
+          state = FIRST_CONTINUATION_BYTE_LOW_SURROGATE;
+          break;
+        }
+        case FIRST_CONTINUATION_BYTE_LOW_SURROGATE: {
+          c = forceContinuationByte(c);
+          // Low surrogates are code points in the range 0xDC00-0xDFFF.
+          c |= (1 << 5) | (1 << 4);
+          state = SECOND_CONTINUATION_BYTE_LOW_SURROGATE;
+          break;
+        }
+        default:
+          throw new IllegalStateException("Unexpected state: " + state);
+      }
+      str[strLength++] = (byte) c;
+    }
+
+    // Backtrack the current incomplete character.
+    switch (state) {
+      case SECOND_CONTINUATION_BYTE_LOW_SURROGATE:
+        strLength -= 5;
+        break;
+      case FIRST_CONTINUATION_BYTE_LOW_SURROGATE:
+        strLength -= 4;
+        break;
+      case LEADING_BYTE_LOW_SURROGATE:
+        strLength -= 3;
+        break;
+      case SECOND_CONTINUATION_BYTE_GENERIC:
+      case SECOND_CONTINUATION_BYTE_HIGH_SURROGATE:
+        strLength -= 2;
+        break;
+      case CONTINUATION_BYTE_GENERIC:
+      case CONTINUATION_BYTE_LOW_LEADING_BYTE:
+      case FIRST_CONTINUATION_BYTE_GENERIC:
+      case FIRST_CONTINUATION_BYTE_LOW_LEADING_BYTE:
+      case FIRST_CONTINUATION_BYTE_SURROGATE_LEADING_BYTE:
+        strLength -= 1;
+        break;
+      default:
+        // No backtracking required.
+        break;
+    }
+
+    int consumedBytes = (int) (pos - dataPtr);
+    dataPtr += consumedBytes;
+    remainingBytes -= consumedBytes;
+    return decodeModifiedUtf8(str, strLength);
+  }
+
+  // Equivalent to C++20 std::countl_one for an unsigned 8-bit value.
+  private static int countlOne(int b) {
+    return Integer.numberOfLeadingZeros(~b & 0xFF) - 24;
+  }
+
+  // Forces a byte to be a valid UTF-8 continuation byte.
+  private static int forceContinuationByte(int b) {
+    return (b | (1 << 7)) & ~(1 << 6);
+  }
+
+  // Decodes valid modified UTF-8 as produced by consumeStringInternal, which consists of 1-byte,
+  // 2-byte and 3-byte sequences only.
+  private static String decodeModifiedUtf8(byte[] str, int strLength) {
+    char[] chars = new char[strLength];
+    int numChars = 0;
+    for (int i = 0; i < strLength;) {
+      int b = str[i] & 0xFF;
+      if (b < 0x80) {
+        chars[numChars++] = (char) b;
+        i += 1;
+      } else if ((b & 0xE0) == 0xC0) {
+        chars[numChars++] = (char) (((b & 0x1F) << 6) | (str[i + 1] & 0x3F));
+        i += 2;
+      } else {
+        chars[numChars++] =
+            (char) (((b & 0x0F) << 12) | ((str[i + 1] & 0x3F) << 6) | (str[i + 2] & 0x3F));
+        i += 3;
+      }
+    }
+    return new String(chars, 0, numChars);
+  }
+}
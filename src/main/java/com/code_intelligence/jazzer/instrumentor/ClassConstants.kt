@@ -0,0 +1,57 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.instrumentor
+
+import com.code_intelligence.jazzer.third_party.org.jacoco.core.internal.instr.InstrSupport
+
+/**
+ * The string and integer constants in the constant pool of a class.
+ *
+ * The constant pool contains all string literals as well as all integer literals that can't be pushed with a single
+ * instruction, which includes the keywords and magic numbers fuzz targets commonly compare their inputs against. In
+ * particular, a switch on a string compares against string literals. Reading them only requires a scan over the
+ * constant pool rather than over the code of the class.
+ */
+class ClassConstants private constructor(val strings: List<String>, val integrals: LongArray) {
+
+    companion object {
+        // Tags of constant pool entries, see
+        // https://docs.oracle.com/javase/specs/jvms/se17/html/jvms-4.html#jvms-4.4
+        private const val CONSTANT_INTEGER = 3
+        private const val CONSTANT_LONG = 5
+        private const val CONSTANT_DOUBLE = 6
+        private const val CONSTANT_STRING = 8
+
+        fun of(bytecode: ByteArray): ClassConstants {
+            val reader = InstrSupport.classReaderFor(bytecode)
+            val buffer = CharArray(reader.maxStringLength)
+            val strings = mutableListOf<String>()
+            val integrals = mutableListOf<Long>()
+            var index = 1
+            while (index < reader.itemCount) {
+                val offset = reader.getItem(index)
+                val tag = reader.readByte(offset - 1)
+                when (tag) {
+                    CONSTANT_INTEGER -> integrals.add(reader.readInt(offset).toLong())
+                    CONSTANT_LONG -> integrals.add(reader.readLong(offset))
+                    CONSTANT_STRING -> strings.add(reader.readUTF8(offset, buffer))
+                }
+                // Long and double constants take up two entries.
+                index += if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) 2 else 1
+            }
+            return ClassConstants(strings, integrals.toLongArray())
+        }
+    }
+}
@@ -15,37 +15,74 @@
 package com.code_intelligence.jazzer.instrumentor
 
 import com.code_intelligence.jazzer.runtime.CoverageMap
+import com.code_intelligence.jazzer.third_party.org.jacoco.core.internal.instr.InstrSupport
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.ClassWriter
 
 fun extractClassFileMajorVersion(classfileBuffer: ByteArray): Int {
     return ((classfileBuffer[6].toInt() and 0xff) shl 8) or (classfileBuffer[7].toInt() and 0xff)
 }
 
-class ClassInstrumentor(private val internalClassName: String, bytecode: ByteArray) {
+/**
+ * Instruments a single class with the instrumentations enabled via [coverage], [traceDataFlow] and [hooks].
+ *
+ * All instrumentations are applied in a single pass over the class file by chaining their visitors rather than by
+ * parsing and writing the class once for each of them.
+ */
+class ClassInstrumentor(private val internalClassName: String, private val bytecode: ByteArray) {
 
-    var instrumentedBytecode = bytecode
-        private set
+    private var edgeCoverageInstrumentor: EdgeCoverageInstrumentor? = null
+    private var traceDataFlowInstrumentor: TraceDataFlowInstrumentor? = null
+    private var hookInstrumentor: HookInstrumentor? = null
 
-    fun coverage(initialEdgeId: Int): Int {
-        val edgeCoverageInstrumentor = EdgeCoverageInstrumentor(
+    /**
+     * The number of coverage IDs used by the class, which is only known after [instrument] has been called.
+     */
+    val numEdgeIds
+        get() = edgeCoverageInstrumentor?.numEdges ?: 0
+
+    fun coverage(initialEdgeId: Int, coverageMap: Class<*> = defaultCoverageMap) = apply {
+        edgeCoverageInstrumentor = EdgeCoverageInstrumentor(
             defaultEdgeCoverageStrategy,
-            defaultCoverageMap,
+            coverageMap,
             initialEdgeId,
         )
-        instrumentedBytecode = edgeCoverageInstrumentor.instrument(internalClassName, instrumentedBytecode)
-        return edgeCoverageInstrumentor.numEdges
     }
 
-    fun traceDataFlow(instrumentations: Set<InstrumentationType>) {
-        instrumentedBytecode =
-            TraceDataFlowInstrumentor(instrumentations).instrument(internalClassName, instrumentedBytecode)
+    fun traceDataFlow(
+        instrumentations: Set<InstrumentationType>,
+        callbackInternalClassName: String = TraceDataFlowInstrumentor.DEFAULT_CALLBACK_INTERNAL_CLASS_NAME,
+    ) = apply {
+        traceDataFlowInstrumentor = TraceDataFlowInstrumentor(instrumentations, callbackInternalClassName)
     }
 
-    fun hooks(hooks: Iterable<Hook>, classWithHooksEnabledField: String?) {
-        instrumentedBytecode = HookInstrumentor(
-            hooks,
-            java6Mode = extractClassFileMajorVersion(instrumentedBytecode) < 51,
+    fun hooks(hookIndex: HookIndex, classWithHooksEnabledField: String?) = apply {
+        hookInstrumentor = HookInstrumentor(
+            hookIndex,
+            java6Mode = extractClassFileMajorVersion(bytecode) < 51,
             classWithHooksEnabledField = classWithHooksEnabledField,
-        ).instrument(internalClassName, instrumentedBytecode)
+        )
+    }
+
+    fun instrument(): ByteArray {
+        val reader = InstrSupport.classReaderFor(bytecode)
+        // The coverage instrumentation provides correct maximum stack sizes by itself, the other instrumentations rely
+        // on the writer to compute them.
+        val computeMaxs = traceDataFlowInstrumentor != null || hookInstrumentor != null
+        val writer = ClassWriter(reader, if (computeMaxs) ClassWriter.COMPUTE_MAXS else 0)
+        // Every visitor passes the class on to the one created before it, so the instrumentations are applied in the
+        // reverse order of the following statements:
+        // 1. Coverage instrumentation must be performed before any other code updates or there will be additional
+        //    coverage points injected if any calls are inserted and JaCoCo will produce a broken coverage report.
+        // 2. Hook instrumentation must be performed after data flow tracing as the injected bytecode would trigger
+        //    the GEP callbacks for byte[].
+        var visitor: ClassVisitor = writer
+        hookInstrumentor?.let { visitor = it.classVisitor(internalClassName, visitor) }
+        traceDataFlowInstrumentor?.let { visitor = it.classVisitor(visitor) }
+        edgeCoverageInstrumentor?.let { visitor = it.classVisitor(InstrSupport.getMajorVersion(reader), visitor) }
+        reader.accept(visitor, ClassReader.EXPAND_FRAMES)
+        return writer.toByteArray()
     }
 
     companion object {
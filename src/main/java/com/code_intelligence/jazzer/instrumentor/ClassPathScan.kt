@@ -0,0 +1,61 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.instrumentor
+
+import io.github.classgraph.ClassGraph
+import io.github.classgraph.ScanResult
+
+/**
+ * A ClassGraph scan of the class path including the JDK modules, which is shared by everything that needs information
+ * about classes that can't be obtained from a class loader, such as the class hierarchy and the original class files of
+ * classes loaded by the bootstrap class loader.
+ *
+ * Scanning takes seconds, so the scan is only performed on first use and then reused until [release] is called.
+ */
+object ClassPathScan {
+    private var scanResult: ScanResult? = null
+
+    /**
+     * Calls [block] with the scan result, which must not be used after [block] returns.
+     */
+    @Synchronized
+    fun <T> use(block: (ScanResult) -> T): T {
+        val scanResult = scanResult ?: ClassGraph()
+            .enableClassInfo()
+            .enableSystemJarsAndModules()
+            .ignoreClassVisibility()
+            .rejectPackages("jaz.*", "com.code_intelligence.jazzer.*")
+            .scan()
+            .also { scanResult = it }
+        return block(scanResult)
+    }
+
+    /**
+     * Returns the contents of the class file of the class with the given name as found on the class path or in the JDK.
+     */
+    fun loadClassFile(className: String): ByteArray = use { scanResult ->
+        val classInfo = checkNotNull(scanResult.getClassInfo(className)) { "Failed to find class file of $className" }
+        classInfo.resource.load()
+    }
+
+    /**
+     * Frees the resources held by the scan, which is performed again on next use.
+     */
+    @Synchronized
+    fun release() {
+        scanResult?.close()
+        scanResult = null
+    }
+}
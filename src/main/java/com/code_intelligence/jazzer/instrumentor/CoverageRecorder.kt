@@ -27,7 +27,9 @@ import java.io.File
 import java.io.FileOutputStream
 import java.io.OutputStream
 import java.time.Instant
+import java.util.BitSet
 import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
 
 private data class InstrumentedClassInfo(
     val classId: Long,
@@ -38,10 +40,12 @@ private data class InstrumentedClassInfo(
 
 object CoverageRecorder {
     var classNameGlobber = ClassNameGlobber(emptyList(), emptyList())
-    private val instrumentedClassInfo = mutableMapOf<String, InstrumentedClassInfo>()
+    // Classes may be recorded concurrently when they are loaded from multiple threads.
+    private val instrumentedClassInfo = ConcurrentHashMap<String, InstrumentedClassInfo>()
     private var startTimestamp: Instant? = null
-    private val additionalCoverage = mutableSetOf<Int>()
+    private val additionalCoverage = BitSet()
 
+    @Synchronized
     fun recordInstrumentedClass(internalClassName: String, bytecode: ByteArray, firstId: Int, numIds: Int) {
         if (startTimestamp == null) {
             startTimestamp = Instant.now()
@@ -60,7 +64,7 @@ object CoverageRecorder {
      */
     @JvmStatic
     fun updateCoveredIdsWithCoverageMap() {
-        additionalCoverage.addAll(CoverageMap.getCoveredIds())
+        additionalCoverage.or(CoverageMap.getCoveredIds())
     }
 
     /**
@@ -76,7 +80,7 @@ object CoverageRecorder {
 
     private fun computeFileCoverage(coveredIds: IntArray): String {
         fun Double.format(digits: Int) = "%.${digits}f".format(this)
-        val coverage = analyzeCoverage(coveredIds.toSet()) ?: return "No classes were instrumented"
+        val coverage = analyzeCoverage(coveredIds.toBitSet()) ?: return "No classes were instrumented"
         return coverage.sourceFiles.joinToString(
             "\n",
             prefix = "Branch coverage:\n",
@@ -142,43 +146,29 @@ object CoverageRecorder {
         outWriter.visitSessionInfo(
             SessionInfo(UUID.randomUUID().toString(), startTimestamp.epochSecond, dumpTimestamp.epochSecond),
         )
-        analyzeJacocoCoverage(coveredIds.toSet()).accept(outWriter)
+        analyzeJacocoCoverage(coveredIds.toBitSet()).accept(outWriter)
     }
 
     /**
      * Build up a JaCoCo [ExecutionDataStore] based on [coveredIds] containing the internally gathered coverage information.
      */
-    private fun analyzeJacocoCoverage(coveredIds: Set<Int>): ExecutionDataStore {
+    private fun analyzeJacocoCoverage(coveredIds: BitSet): ExecutionDataStore {
         val executionDataStore = ExecutionDataStore()
-        val sortedCoveredIds = (additionalCoverage + coveredIds).sorted().toIntArray()
+        val allCoveredIds = (coveredIds.clone() as BitSet).apply { or(additionalCoverage) }
         for ((internalClassName, info) in instrumentedClassInfo) {
-            // Determine the subarray of coverage IDs in sortedCoveredIds that contains the IDs generated while
-            // instrumenting the current class. Since the ID array is sorted, use binary search.
-            var coveredIdsStart = sortedCoveredIds.binarySearch(info.initialEdgeId)
-            if (coveredIdsStart < 0) {
-                coveredIdsStart = -(coveredIdsStart + 1)
-            }
-            var coveredIdsEnd = sortedCoveredIds.binarySearch(info.nextEdgeId)
-            if (coveredIdsEnd < 0) {
-                coveredIdsEnd = -(coveredIdsEnd + 1)
-            }
-            if (coveredIdsStart == coveredIdsEnd) {
+            // Extract the IDs generated while instrumenting the current class, i.e., map info.initialEdgeId to 0.
+            // BitSet.get copies the range a word at a time.
+            val classCoveredIds = allCoveredIds.get(info.initialEdgeId, info.nextEdgeId)
+            if (classCoveredIds.isEmpty) {
                 // No coverage data for the class.
                 continue
             }
-            check(coveredIdsStart in 0 until coveredIdsEnd && coveredIdsEnd <= sortedCoveredIds.size) {
-                "Invalid range [$coveredIdsStart, $coveredIdsEnd) with coveredIds.size=${sortedCoveredIds.size}"
-            }
-            // Generate a probes array for the current class only, i.e., mapping info.initialEdgeId to 0.
             val probes = BooleanArray(info.nextEdgeId - info.initialEdgeId)
-            (coveredIdsStart until coveredIdsEnd).asSequence()
-                .map {
-                    val globalEdgeId = sortedCoveredIds[it]
-                    globalEdgeId - info.initialEdgeId
-                }
-                .forEach { classLocalEdgeId ->
-                    probes[classLocalEdgeId] = true
-                }
+            var classLocalEdgeId = classCoveredIds.nextSetBit(0)
+            while (classLocalEdgeId >= 0) {
+                probes[classLocalEdgeId] = true
+                classLocalEdgeId = classCoveredIds.nextSetBit(classLocalEdgeId + 1)
+            }
             executionDataStore.visitClassExecution(ExecutionData(info.classId, internalClassName, probes))
         }
         return executionDataStore
@@ -187,7 +177,7 @@ object CoverageRecorder {
     /**
      * Create a [CoverageBuilder] containing all classes matching the include/exclude pattern and their coverage statistics.
      */
-    fun analyzeCoverage(coveredIds: Set<Int>): CoverageBuilder? {
+    fun analyzeCoverage(coveredIds: BitSet): CoverageBuilder? {
         return try {
             val coverage = CoverageBuilder()
             analyzeAllUncoveredClasses(coverage)
@@ -250,3 +240,5 @@ object CoverageRecorder {
         return coverage
     }
 }
+
+private fun IntArray.toBitSet() = BitSet().also { bitSet -> forEach { bitSet.set(it) } }
@@ -104,15 +104,19 @@ class EdgeCoverageInstrumentor(
     override fun instrument(internalClassName: String, bytecode: ByteArray): ByteArray {
         val reader = InstrSupport.classReaderFor(bytecode)
         val writer = ClassWriter(reader, 0)
-        val version = InstrSupport.getMajorVersion(reader)
-        val visitor = EdgeCoverageClassProbesAdapter(
-            ClassInstrumenter(edgeCoverageProbeArrayStrategy, edgeCoverageProbeInserterFactory, writer),
-            InstrSupport.needsFrames(version),
-        )
-        reader.accept(visitor, ClassReader.EXPAND_FRAMES)
+        reader.accept(classVisitor(InstrSupport.getMajorVersion(reader), writer), ClassReader.EXPAND_FRAMES)
         return writer.toByteArray()
     }
 
+    /**
+     * Returns a [ClassVisitor] that adds coverage instrumentation to a class with major version [classVersion] and
+     * passes it on to [cv]. The visitor expects expanded frames.
+     */
+    fun classVisitor(classVersion: Int, cv: ClassVisitor): ClassVisitor = EdgeCoverageClassProbesAdapter(
+        ClassInstrumenter(edgeCoverageProbeArrayStrategy, edgeCoverageProbeInserterFactory, cv),
+        InstrSupport.needsFrames(classVersion),
+    )
+
     fun analyze(executionData: ExecutionDataStore, coverageVisitor: ICoverageVisitor, bytecode: ByteArray, internalClassName: String) {
         Analyzer(executionData, coverageVisitor, edgeCoverageClassProbesAdapterFactory).run {
             analyzeClass(bytecode, internalClassName)
@@ -35,6 +35,11 @@ class Hook private constructor(
     val hookInternalClassName: String,
     val hookMethodName: String,
     val hookMethodDescriptor: String,
+    /**
+     * Whether the hook method receives the arguments and return value of the target method directly rather than a
+     * [MethodHandle] and an argument array, which allows calling it without allocations or boxing.
+     */
+    val isTyped: Boolean,
 ) {
 
     override fun toString(): String {
@@ -65,6 +70,7 @@ class Hook private constructor(
                 hookInternalClassName = hookClassName.replace('.', '/'),
                 hookMethodName = hookMethod.name,
                 hookMethodDescriptor = hookMethod.descriptor,
+                isTyped = hookMethod.parameterTypes.firstOrNull() != MethodHandle::class.java,
             )
         }
 
@@ -73,6 +79,11 @@ class Hook private constructor(
             require(Modifier.isPublic(hookMethod.modifiers)) { "$potentialHook: hook method must be public" }
             require(Modifier.isStatic(hookMethod.modifiers)) { "$potentialHook: hook method must be static" }
 
+            if (potentialHook.isTyped) {
+                verifyTyped(hookMethod, potentialHook)
+                return
+            }
+
             // Verify the hook method's parameter count.
             val numParameters = hookMethod.parameters.size
             when (potentialHook.hookType) {
@@ -128,5 +139,55 @@ class Hook private constructor(
                 }
             }
         }
+
+        private fun verifyTyped(hookMethod: Method, potentialHook: Hook) {
+            require(potentialHook.hookType != HookType.REPLACE) {
+                "$potentialHook: first parameter must have type MethodHandle"
+            }
+            val targetMethodDescriptor = requireNotNull(potentialHook.targetMethodDescriptor) {
+                "$potentialHook: first parameter must have type MethodHandle unless targetMethodDescriptor is specified"
+            }
+            require(potentialHook.targetMethodName != "<init>") {
+                "$potentialHook: first parameter must have type MethodHandle for constructor hooks"
+            }
+            require(hookMethod.returnType == Void.TYPE) { "$potentialHook: return type must be void" }
+
+            val targetParameterDescriptors = extractParameterTypeDescriptors(targetMethodDescriptor)
+            val targetReturnTypeDescriptor = extractReturnTypeDescriptor(targetMethodDescriptor)
+            val expectedNumParameters = 2 + targetParameterDescriptors.size +
+                if (potentialHook.hookType == HookType.AFTER && targetReturnTypeDescriptor != "V") 1 else 0
+            val parameterTypes = hookMethod.parameterTypes
+            require(parameterTypes.size == expectedNumParameters) {
+                "$potentialHook: incorrect number of parameters (expected $expectedNumParameters)"
+            }
+            require(parameterTypes[0] == Object::class.java || parameterTypes[0].name == potentialHook.targetClassName) {
+                "$potentialHook: first parameter must have type Object or ${potentialHook.targetClassName}"
+            }
+            for ((index, targetParameterDescriptor) in targetParameterDescriptors.withIndex()) {
+                require(acceptsTypedValue(parameterTypes[1 + index], targetParameterDescriptor)) {
+                    "$potentialHook: parameter ${2 + index} must match the descriptor $targetParameterDescriptor"
+                }
+            }
+            require(parameterTypes[1 + targetParameterDescriptors.size] == Int::class.javaPrimitiveType) {
+                "$potentialHook: parameter ${2 + targetParameterDescriptors.size} must have type int"
+            }
+            if (expectedNumParameters == 3 + targetParameterDescriptors.size) {
+                require(acceptsTypedValue(parameterTypes.last(), targetReturnTypeDescriptor)) {
+                    "$potentialHook: last parameter must match the descriptor $targetReturnTypeDescriptor"
+                }
+            }
+        }
+
+        /**
+         * Returns whether a typed hook parameter of type [parameterType] can receive a value with type descriptor
+         * [typeDescriptor] as is, which is the case if the types match, if the parameter has type Object and the value
+         * is a reference, or if the parameter has type int and the value is of a smaller integral type.
+         */
+        private fun acceptsTypedValue(parameterType: Class<*>, typeDescriptor: String) = when {
+            parameterType.descriptor == typeDescriptor -> true
+            parameterType == Object::class.java -> !isPrimitiveType(typeDescriptor)
+            parameterType == Int::class.javaPrimitiveType -> typeDescriptor in listOf("B", "C", "S", "Z")
+            else -> false
+        }
     }
 }
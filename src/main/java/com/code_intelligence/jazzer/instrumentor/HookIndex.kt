@@ -0,0 +1,75 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.instrumentor
+
+import com.code_intelligence.jazzer.api.HookType
+
+/**
+ * An immutable index of [hooks] by the methods they target.
+ *
+ * The index should be created once per set of hooks and can be shared between threads. Looking up the hooks for a
+ * method invocation doesn't allocate and, in the common case of a method that isn't hooked, only requires a single
+ * hash lookup.
+ */
+class HookIndex(hooks: Iterable<Hook>) {
+
+    private val hooksByOwnerAndName: Map<String, Map<String, MethodHooks>> =
+        hooks.groupBy { it.targetInternalClassName }.mapValues { (_, hooksForOwner) ->
+            hooksForOwner.groupBy { it.targetMethodName }.mapValues { (_, hooksForName) -> MethodHooks(hooksForName) }
+        }
+
+    /**
+     * Returns the hooks that apply to an invocation of the method [owner].[name] with descriptor [descriptor] in the
+     * order they should be applied in.
+     *
+     * @throws IllegalStateException if the method is targeted by a REPLACE hook as well as other hooks
+     */
+    fun findMatchingHooks(owner: String, name: String, descriptor: String): List<Hook> {
+        val methodHooks = hooksByOwnerAndName[owner]?.get(name) ?: return emptyList()
+        return (methodHooks.byDescriptor[descriptor] ?: methodHooks.anyDescriptor).get()
+    }
+
+    /**
+     * The hooks targeting methods with a particular owner and name, grouped by the descriptors they apply to.
+     */
+    private class MethodHooks(hooks: List<Hook>) {
+        private val withoutDescriptor = hooks.filter { it.targetMethodDescriptor == null }
+
+        // Hooks without a descriptor apply to all overloads.
+        val anyDescriptor = MatchingHooks(withoutDescriptor)
+        val byDescriptor: Map<String, MatchingHooks> = hooks.filter { it.targetMethodDescriptor != null }
+            .groupBy { it.targetMethodDescriptor!! }
+            .mapValues { (_, withDescriptor) -> MatchingHooks(withDescriptor + withoutDescriptor) }
+    }
+
+    private class MatchingHooks(hooks: List<Hook>) {
+        // The sort is stable: Hooks of the same type are applied in the order they have been registered in, with hooks
+        // for a particular descriptor preceding those for all overloads.
+        private val hooks = hooks.sortedBy { it.hookType }
+
+        // Conflicting hooks only result in an error if a method they target is actually invoked.
+        private val error = if (hooks.any { it.hookType == HookType.REPLACE } && hooks.size > 1) {
+            "For a given method, You can either have a single REPLACE hook or BEFORE/AFTER hooks. Found:\n " +
+                this.hooks
+        } else {
+            null
+        }
+
+        fun get(): List<Hook> {
+            check(error == null) { error!! }
+            return hooks
+        }
+    }
+}
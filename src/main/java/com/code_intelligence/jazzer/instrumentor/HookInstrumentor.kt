@@ -20,18 +20,41 @@ import org.objectweb.asm.ClassWriter
 import org.objectweb.asm.MethodVisitor
 
 internal class HookInstrumentor(
-    private val hooks: Iterable<Hook>,
+    private val hookIndex: HookIndex,
     private val java6Mode: Boolean,
     private val classWithHooksEnabledField: String?,
 ) : Instrumentor {
 
+    constructor(hooks: Iterable<Hook>, java6Mode: Boolean, classWithHooksEnabledField: String?) :
+        this(HookIndex(hooks), java6Mode, classWithHooksEnabledField)
+
     private lateinit var random: DeterministicRandom
 
     override fun instrument(internalClassName: String, bytecode: ByteArray): ByteArray {
         val reader = ClassReader(bytecode)
         val writer = ClassWriter(reader, ClassWriter.COMPUTE_MAXS)
-        random = DeterministicRandom("hook", reader.className)
-        val interceptor = object : ClassVisitor(Instrumentor.ASM_API_VERSION, writer) {
+        reader.accept(classVisitor(internalClassName, writer), ClassReader.EXPAND_FRAMES)
+        return writer.toByteArray()
+    }
+
+    /**
+     * Returns a [ClassVisitor] that adds hook instrumentation to a class and passes it on to [cv], which has to
+     * compute the maximum stack size. The visitor expects expanded frames.
+     */
+    fun classVisitor(internalClassName: String, cv: ClassVisitor): ClassVisitor =
+        object : ClassVisitor(Instrumentor.ASM_API_VERSION, cv) {
+            override fun visit(
+                version: Int,
+                access: Int,
+                name: String,
+                signature: String?,
+                superName: String?,
+                interfaces: Array<String>?,
+            ) {
+                random = DeterministicRandom("hook", name)
+                super.visit(version, access, name, signature, superName, interfaces)
+            }
+
             override fun visitMethod(
                 access: Int,
                 name: String?,
@@ -47,7 +70,7 @@ internal class HookInstrumentor(
                         name,
                         descriptor,
                         mv,
-                        hooks,
+                        hookIndex,
                         java6Mode,
                         random,
                         classWithHooksEnabledField,
@@ -57,7 +80,4 @@ internal class HookInstrumentor(
                 }
             }
         }
-        reader.accept(interceptor, ClassReader.EXPAND_FRAMES)
-        return writer.toByteArray()
-    }
 }
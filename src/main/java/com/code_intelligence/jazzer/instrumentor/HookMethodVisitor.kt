@@ -30,7 +30,7 @@ internal fun makeHookMethodVisitor(
     name: String?,
     descriptor: String?,
     methodVisitor: MethodVisitor?,
-    hooks: Iterable<Hook>,
+    hookIndex: HookIndex,
     java6Mode: Boolean,
     random: DeterministicRandom,
     classWithHooksEnabledField: String?,
@@ -41,7 +41,7 @@ internal fun makeHookMethodVisitor(
         name,
         descriptor,
         methodVisitor,
-        hooks,
+        hookIndex,
         java6Mode,
         random,
         classWithHooksEnabledField,
@@ -54,7 +54,7 @@ private class HookMethodVisitor(
     val name: String?,
     descriptor: String?,
     methodVisitor: MethodVisitor?,
-    hooks: Iterable<Hook>,
+    private val hookIndex: HookIndex,
     private val java6Mode: Boolean,
     private val random: DeterministicRandom,
     private val classWithHooksEnabledField: String?,
@@ -96,14 +96,6 @@ private class HookMethodVisitor(
         }
     }
 
-    private val hooks = hooks.groupBy { hook ->
-        var hookKey = "${hook.hookType}#${hook.targetInternalClassName}#${hook.targetMethodName}"
-        if (hook.targetMethodDescriptor != null) {
-            hookKey += "#${hook.targetMethodDescriptor}"
-        }
-        hookKey
-    }
-
     override fun visitMethodInsn(
         opcode: Int,
         owner: String,
@@ -187,6 +179,37 @@ private class HookMethodVisitor(
             // we do not need to emit a NOP to prevent duplicated stack map frames.
         }
 
+        if (matchingHooks.all { it.isTyped }) {
+            applyTypedHooks(opcode, owner, methodName, methodDescriptor, isInterface, matchingHooks)
+        } else {
+            applyHooks(opcode, owner, methodName, methodDescriptor, isInterface, matchingHooks)
+        }
+        if (useConditionalHooks) {
+            // Needs a stack map frame as the target of a jump.
+            mv.visitLabel(skipHooksLabel)
+            if (postCallFrame != null) {
+                mv.visitFrame(
+                    Opcodes.F_NEW,
+                    postCallFrame.first?.size ?: 0,
+                    postCallFrame.first,
+                    postCallFrame.second?.size ?: 0,
+                    postCallFrame.second,
+                )
+            }
+            // We do not control the next visitor calls, but we must not emit two frames for the
+            // same instruction.
+            mv.visitInsn(Opcodes.NOP)
+        }
+    }
+
+    private fun applyHooks(
+        opcode: Int,
+        owner: String,
+        methodName: String,
+        methodDescriptor: String,
+        isInterface: Boolean,
+        matchingHooks: List<Hook>,
+    ) {
         val paramDescriptors = extractParameterTypeDescriptors(methodDescriptor)
         val localObjArr = storeMethodArguments(paramDescriptors)
         // If the method we're hooking is not static there is now a reference to
@@ -212,7 +235,12 @@ private class HookMethodVisitor(
             val hookId = random.nextInt()
 
             // Start to build the arguments for the hook method.
-            if (methodName == "<init>") {
+            if (hook.isTyped) {
+                // Typed hooks receive the owner object and the unwrapped arguments instead of a MethodHandle, the owner
+                // object and the object array.
+                mv.visitVarInsn(Opcodes.ALOAD, localOwnerObj)
+                loadMethodArguments(paramDescriptors, localObjArr)
+            } else if (methodName == "<init>") {
                 // Constructor is invoked on an uninitialized object, and that's still on the stack.
                 // In case of REPLACE pop it from the stack and replace it afterwards with the returned
                 // one from the hook.
@@ -257,7 +285,9 @@ private class HookMethodVisitor(
             }
             // Stack layout: ... | MethodHandle (objectref) | owner (objectref)
             // Push a reference to our object array with the saved arguments
-            mv.visitVarInsn(Opcodes.ALOAD, localObjArr)
+            if (!hook.isTyped) {
+                mv.visitVarInsn(Opcodes.ALOAD, localObjArr)
+            }
             // Stack layout: ... | MethodHandle (objectref) | owner (objectref) | object array (arrayref)
             // Push the hook id
             mv.visitLdcInsn(hookId)
@@ -335,7 +365,12 @@ private class HookMethodVisitor(
                         wrapTypeIfPrimitive(returnTypeDescriptor)
                         mv.visitVarInsn(Opcodes.ASTORE, localReturnObj) // consume objectref
                     }
-                    mv.visitVarInsn(Opcodes.ALOAD, localReturnObj) // push objectref
+                    if (!hook.isTyped) {
+                        mv.visitVarInsn(Opcodes.ALOAD, localReturnObj) // push objectref
+                    } else if (returnTypeDescriptor != "V") {
+                        mv.visitVarInsn(Opcodes.ALOAD, localReturnObj) // push objectref
+                        unwrapTypeIfPrimitive(returnTypeDescriptor)
+                    }
 
                     // Stack layout: ... | MethodHandle (objectref) | owner (objectref) | object array (arrayref) | hookId (int)
                     //                   | return value (objectref)
@@ -360,21 +395,93 @@ private class HookMethodVisitor(
                 }
             }
         }
-        if (useConditionalHooks) {
-            // Needs a stack map frame as the target of a jump.
-            mv.visitLabel(skipHooksLabel)
-            if (postCallFrame != null) {
-                mv.visitFrame(
-                    Opcodes.F_NEW,
-                    postCallFrame.first?.size ?: 0,
-                    postCallFrame.first,
-                    postCallFrame.second?.size ?: 0,
-                    postCallFrame.second,
-                )
+    }
+
+    /**
+     * Applies hooks that all have typed parameters by passing the arguments and the return value of the hooked method
+     * to them directly, which avoids allocating an argument array and boxing primitive values.
+     */
+    private fun applyTypedHooks(
+        opcode: Int,
+        owner: String,
+        methodName: String,
+        methodDescriptor: String,
+        isInterface: Boolean,
+        matchingHooks: List<Hook>,
+    ) {
+        // Save the arguments and the owner object to new local variables, starting with the last argument as it is on
+        // top of the stack.
+        val argTypes = Type.getArgumentTypes(methodDescriptor)
+        val localArgs = IntArray(argTypes.size)
+        for (argIdx in argTypes.indices.reversed()) {
+            localArgs[argIdx] = lvs.newLocal(argTypes[argIdx])
+            mv.visitVarInsn(argTypes[argIdx].getOpcode(Opcodes.ISTORE), localArgs[argIdx])
+        }
+        val localOwnerObj = if (opcode != Opcodes.INVOKESTATIC) {
+            lvs.newLocal(Type.getObjectType(owner)).also { mv.visitVarInsn(Opcodes.ASTORE, it) }
+        } else {
+            null
+        }
+        // We now removed all values for the original method call from the operand stack
+        // and saved them to local variables.
+
+        val returnType = Type.getReturnType(methodDescriptor)
+        val localReturnValue = if (returnType != Type.VOID_TYPE) lvs.newLocal(returnType) else null
+
+        matchingHooks.forEachIndexed { index, hook ->
+            // The hookId is used to identify a call site.
+            val hookId = random.nextInt()
+
+            // Call the original method before the first AFTER hook.
+            if (hook.hookType == HookType.AFTER && (index == 0 || matchingHooks[index - 1].hookType != HookType.AFTER)) {
+                localOwnerObj?.let { mv.visitVarInsn(Opcodes.ALOAD, it) }
+                loadTypedMethodArguments(argTypes, localArgs)
+                mv.visitMethodInsn(opcode, owner, methodName, methodDescriptor, isInterface)
+                if (localReturnValue != null) {
+                    mv.visitVarInsn(returnType.getOpcode(Opcodes.ISTORE), localReturnValue)
+                }
+            }
+
+            // Stack layout: ...
+            // If the method is static, there is no owner object. We push a null ref instead.
+            if (localOwnerObj != null) {
+                mv.visitVarInsn(Opcodes.ALOAD, localOwnerObj)
+            } else {
+                mv.visitInsn(Opcodes.ACONST_NULL)
+            }
+            loadTypedMethodArguments(argTypes, localArgs)
+            mv.visitLdcInsn(hookId)
+            if (hook.hookType == HookType.AFTER && localReturnValue != null) {
+                mv.visitVarInsn(returnType.getOpcode(Opcodes.ILOAD), localReturnValue)
+            }
+            // Stack layout: ... | owner (objectref) | arg1 (primitive/objectref) | ... | hookId (int)
+            //                   | [return value (primitive/objectref)]
+            mv.visitMethodInsn(
+                Opcodes.INVOKESTATIC,
+                hook.hookInternalClassName,
+                hook.hookMethodName,
+                hook.hookMethodDescriptor,
+                false,
+            )
+
+            if (index == matchingHooks.lastIndex) {
+                if (hook.hookType == HookType.BEFORE) {
+                    // There are no AFTER hooks, so the original method is called after the last BEFORE hook.
+                    localOwnerObj?.let { mv.visitVarInsn(Opcodes.ALOAD, it) }
+                    loadTypedMethodArguments(argTypes, localArgs)
+                    mv.visitMethodInsn(opcode, owner, methodName, methodDescriptor, isInterface)
+                } else if (localReturnValue != null) {
+                    // Push the return value again after the last AFTER hook.
+                    mv.visitVarInsn(returnType.getOpcode(Opcodes.ILOAD), localReturnValue)
+                }
             }
-            // We do not control the next visitor calls, but we must not emit two frames for the
-            // same instruction.
-            mv.visitInsn(Opcodes.NOP)
+        }
+    }
+
+    // Loads all arguments for a method call from the local variables localArgs.
+    private fun loadTypedMethodArguments(argTypes: Array<Type>, localArgs: IntArray) {
+        for ((argIdx, argType) in argTypes.withIndex()) {
+            mv.visitVarInsn(argType.getOpcode(Opcodes.ILOAD), localArgs[argIdx])
         }
     }
 
@@ -386,22 +493,11 @@ private class HookMethodVisitor(
     )
 
     private fun findMatchingHooks(owner: String, name: String, descriptor: String): List<Hook> {
-        val result = HookType.values().flatMap { hookType ->
-            val withoutDescriptorKey = "$hookType#$owner#$name"
-            val withDescriptorKey = "$withoutDescriptorKey#$descriptor"
-            hooks[withDescriptorKey].orEmpty() + hooks[withoutDescriptorKey].orEmpty()
-        }.sortedBy { it.hookType }
-        val replaceHookCount = result.count { it.hookType == HookType.REPLACE }
-        check(
-            replaceHookCount == 0 ||
-                (replaceHookCount == 1 && result.size == 1),
-        ) {
-            "For a given method, You can either have a single REPLACE hook or BEFORE/AFTER hooks. Found:\n $result"
+        val result = hookIndex.findMatchingHooks(owner, name, descriptor)
+        if (!java6Mode || result.isEmpty()) {
+            return result
         }
-
-        return result
-            .filter { !isReplaceHookInJava6mode(it) }
-            .sortedByDescending { it.toString() }
+        return result.filter { !isReplaceHookInJava6mode(it) }
     }
 
     private fun isReplaceHookInJava6mode(hook: Hook): Boolean {
@@ -0,0 +1,152 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.instrumentor
+
+import com.code_intelligence.jazzer.utils.Log
+import java.io.File
+import java.io.IOException
+import java.io.UncheckedIOException
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import kotlin.io.path.isRegularFile
+
+/**
+ * Resolves the target class names of hooks to the names of all classes that have to be hooked, which includes all
+ * implementations of interfaces and subclasses of abstract classes.
+ *
+ * Resolving a target class requires a [ClassPathScan] of the entire class path including the JDK, which takes seconds.
+ * If [indexDir] is given, resolved targets are persisted in an index file in that directory that is shared by all
+ * Jazzer processes with the same class path, such as subsequent runs of a fuzzer or the workers of a fuzzer running
+ * in fork mode. The index file is named after a fingerprint of the class path, the JDK and the sizes and modification
+ * times of all class path entries, so a stale index is never found. The scan is only performed if the index doesn't
+ * contain all targets. As the index determines which classes are hooked, [indexDir] must not be writable by other
+ * users.
+ */
+class HookTargetIndex(private val indexDir: Path?) : AutoCloseable {
+    private val indexFile = indexDir?.resolve("jazzer-hook-index-${classPathFingerprint()}")
+    private val resolvedTargets = indexFile?.let(::readIndex) ?: mutableMapOf()
+    private var modified = false
+
+    fun classesToHook(targetClassName: String): List<String> {
+        return resolvedTargets.getOrPut(targetClassName) {
+            modified = true
+            resolve(targetClassName)
+        }
+    }
+
+    private fun resolve(targetClassName: String): List<String> = ClassPathScan.use { scanResult ->
+        val targetClassInfo = scanResult.getClassInfo(targetClassName) ?: return@use listOf(targetClassName)
+        val additionalTargetClasses = when {
+            targetClassInfo.isInterface -> scanResult.getClassesImplementing(targetClassName)
+            targetClassInfo.isAbstract -> scanResult.getSubclasses(targetClassName)
+            else -> emptyList()
+        }
+        // The shared scan also covers non-public classes, which hooks have never been applied to implicitly.
+        (listOf(targetClassName) + additionalTargetClasses.filter { it.isPublic }.map { it.name }).sorted()
+    }
+
+    /**
+     * Writes the index file if new targets have been resolved.
+     */
+    override fun close() {
+        if (modified && indexFile != null) {
+            writeIndex(indexFile)
+            modified = false
+        }
+    }
+
+    private fun readIndex(file: Path): MutableMap<String, List<String>>? {
+        val lines = try {
+            Files.readAllLines(file)
+        } catch (e: NoSuchFileException) {
+            return null
+        } catch (e: IOException) {
+            Log.warn("Failed to read hook index $file", e)
+            return null
+        }
+        if (lines.firstOrNull() != HEADER) {
+            Log.warn("Ignoring corrupted hook index $file")
+            return null
+        }
+        return lines.drop(1).filter { it.isNotEmpty() }.associateTo(mutableMapOf()) { line ->
+            val classNames = line.split(' ')
+            classNames.first() to classNames.drop(1)
+        }
+    }
+
+    private fun writeIndex(file: Path) {
+        val lines = listOf(HEADER) + resolvedTargets.entries
+            .sortedBy { it.key }
+            .map { (targetClassName, classNames) -> (listOf(targetClassName) + classNames).joinToString(" ") }
+        try {
+            val tempFile = Files.createTempFile(indexDir, file.fileName.toString(), TEMP_FILE_SUFFIX)
+            try {
+                Files.write(tempFile, lines)
+                // Another process may have written the index concurrently, but it only differs in the set of targets.
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+            } finally {
+                Files.deleteIfExists(tempFile)
+            }
+        } catch (e: IOException) {
+            Log.warn("Failed to write hook index $file", e)
+        }
+    }
+
+    companion object {
+        // Changing the format of the index requires changing this value.
+        private const val HEADER = "jazzer-hook-index-1"
+        private const val TEMP_FILE_SUFFIX = ".tmp"
+
+        private fun classPathFingerprint(): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            for (property in listOf("java.home", "java.version")) {
+                digest.update("$property=${System.getProperty(property)}\n".toByteArray())
+            }
+            for (property in listOf("java.class.path", "jdk.module.path", "jdk.boot.class.path.append")) {
+                digest.update("$property\n".toByteArray())
+                System.getProperty(property)?.split(File.pathSeparator)?.filter { it.isNotEmpty() }?.forEach { entry ->
+                    updateWithClassPathEntry(digest, Paths.get(entry))
+                }
+            }
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
+
+        private fun updateWithClassPathEntry(digest: MessageDigest, entry: Path) {
+            fun updateWithFile(file: Path) {
+                digest.update("$file ${Files.size(file)} ${Files.getLastModifiedTime(file).toMillis()}\n".toByteArray())
+            }
+            try {
+                if (entry.isRegularFile()) {
+                    updateWithFile(entry)
+                } else {
+                    // Class files in a directory can change without affecting the modification time of the directory
+                    // itself, so all files are taken into account.
+                    Files.walk(entry).use { paths ->
+                        paths.filter { it.isRegularFile() }.sorted().forEach(::updateWithFile)
+                    }
+                }
+            } catch (e: IOException) {
+                // Nonexistent class path entries are ignored by the JVM.
+                digest.update("$entry missing\n".toByteArray())
+            } catch (e: UncheckedIOException) {
+                digest.update("$entry missing\n".toByteArray())
+            }
+        }
+    }
+}
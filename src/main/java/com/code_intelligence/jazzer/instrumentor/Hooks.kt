@@ -18,10 +18,9 @@ import com.code_intelligence.jazzer.api.MethodHook
 import com.code_intelligence.jazzer.api.MethodHooks
 import com.code_intelligence.jazzer.utils.ClassNameGlobber
 import com.code_intelligence.jazzer.utils.Log
-import io.github.classgraph.ClassGraph
-import io.github.classgraph.ScanResult
 import java.lang.instrument.Instrumentation
 import java.lang.reflect.Method
+import java.nio.file.Path
 import java.util.jar.JarFile
 
 data class Hooks(
@@ -48,21 +47,27 @@ data class Hooks(
                 .forEach { instrumentation.appendToBootstrapClassLoaderSearch(it) }
         }
 
-        fun loadHooks(excludeHookClassNames: List<String>, vararg hookClassNames: Set<String>): List<Hooks> {
-            return ClassGraph()
-                .enableClassInfo()
-                .enableSystemJarsAndModules()
-                .rejectPackages("jaz.*", "com.code_intelligence.jazzer.*")
-                .scan()
-                .use { scanResult ->
-                    // Capture scanResult in HooksLoader field to not pass it through
-                    // all internal hook loading methods.
-                    val loader = HooksLoader(scanResult, excludeHookClassNames)
-                    hookClassNames.map(loader::load)
-                }
+        /**
+         * Loads the hooks in the given sets of hook classes. If [hookIndexDir] is given, the classes targeted by hooks
+         * are cached in that directory, see [HookTargetIndex].
+         */
+        fun loadHooks(
+            excludeHookClassNames: List<String>,
+            vararg hookClassNames: Set<String>,
+            hookIndexDir: Path? = null,
+        ): List<Hooks> {
+            return HookTargetIndex(hookIndexDir).use { hookTargetIndex ->
+                // Capture hookTargetIndex in HooksLoader field to not pass it through
+                // all internal hook loading methods.
+                val loader = HooksLoader(hookTargetIndex, excludeHookClassNames)
+                hookClassNames.map(loader::load)
+            }
         }
 
-        private class HooksLoader(private val scanResult: ScanResult, val excludeHookClassNames: List<String>) {
+        private class HooksLoader(
+            private val hookTargetIndex: HookTargetIndex,
+            val excludeHookClassNames: List<String>,
+        ) {
 
             fun load(hookClassNames: Set<String>): Hooks {
                 val hooksWithHookClasses = hookClassNames.flatMap(::loadHooks)
@@ -118,14 +123,7 @@ data class Hooks(
             private fun lookupClassesToHook(annotationTargetClassName: String): List<String> {
                 // Allowing arbitrary exterior whitespace in the target class name allows for an easy workaround
                 // for mangled hooks due to shading applied to hooks.
-                val targetClassName = annotationTargetClassName.trim()
-                val targetClassInfo = scanResult.getClassInfo(targetClassName) ?: return listOf(targetClassName)
-                val additionalTargetClasses = when {
-                    targetClassInfo.isInterface -> scanResult.getClassesImplementing(targetClassName)
-                    targetClassInfo.isAbstract -> scanResult.getSubclasses(targetClassName)
-                    else -> emptyList()
-                }
-                return (listOf(targetClassName) + additionalTargetClasses.map { it.name }).sorted()
+                return hookTargetIndex.classesToHook(annotationTargetClassName.trim())
             }
         }
     }
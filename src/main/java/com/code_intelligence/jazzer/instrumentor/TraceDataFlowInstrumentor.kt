@@ -15,10 +15,11 @@
 package com.code_intelligence.jazzer.instrumentor
 
 import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
 import org.objectweb.asm.Opcodes
 import org.objectweb.asm.tree.AbstractInsnNode
-import org.objectweb.asm.tree.ClassNode
 import org.objectweb.asm.tree.InsnList
 import org.objectweb.asm.tree.InsnNode
 import org.objectweb.asm.tree.IntInsnNode
@@ -30,27 +31,60 @@ import org.objectweb.asm.tree.TableSwitchInsnNode
 
 internal class TraceDataFlowInstrumentor(
     private val types: Set<InstrumentationType>,
-    private val callbackInternalClassName: String = "com/code_intelligence/jazzer/runtime/TraceDataFlowNativeCallbacks",
+    private val callbackInternalClassName: String = DEFAULT_CALLBACK_INTERNAL_CLASS_NAME,
 ) : Instrumentor {
 
     private lateinit var random: DeterministicRandom
 
     override fun instrument(internalClassName: String, bytecode: ByteArray): ByteArray {
-        val node = ClassNode()
         val reader = ClassReader(bytecode)
-        reader.accept(node, 0)
-        random = DeterministicRandom("trace", node.name)
-        for (method in node.methods) {
-            if (shouldInstrument(method)) {
-                addDataFlowInstrumentation(method)
-            }
-        }
-
         val writer = ClassWriter(ClassWriter.COMPUTE_MAXS)
-        node.accept(writer)
+        reader.accept(classVisitor(writer), 0)
         return writer.toByteArray()
     }
 
+    /**
+     * Returns a [ClassVisitor] that adds data flow instrumentation to a class and passes it on to [cv], which has to
+     * compute the maximum stack size.
+     *
+     * Only the instructions of a single method are held in memory at a time as the instrumentation needs to look at
+     * preceding instructions.
+     */
+    fun classVisitor(cv: ClassVisitor): ClassVisitor = object : ClassVisitor(Instrumentor.ASM_API_VERSION, cv) {
+        override fun visit(
+            version: Int,
+            access: Int,
+            name: String,
+            signature: String?,
+            superName: String?,
+            interfaces: Array<String>?,
+        ) {
+            random = DeterministicRandom("trace", name)
+            super.visit(version, access, name, signature, superName, interfaces)
+        }
+
+        override fun visitMethod(
+            access: Int,
+            name: String?,
+            descriptor: String?,
+            signature: String?,
+            exceptions: Array<String>?,
+        ): MethodVisitor? {
+            val mv = cv.visitMethod(access, name, descriptor, signature, exceptions) ?: return null
+            if (!shouldInstrument(access)) {
+                return mv
+            }
+            return object : MethodNode(Instrumentor.ASM_API_VERSION, access, name, descriptor, signature, exceptions) {
+                override fun visitEnd() {
+                    if (shouldInstrument(this)) {
+                        addDataFlowInstrumentation(this)
+                    }
+                    accept(mv)
+                }
+            }
+        }
+    }
+
     private fun addDataFlowInstrumentation(method: MethodNode) {
         loop@ for (inst in method.instructions.toArray()) {
             when (inst.opcode) {
@@ -231,6 +265,9 @@ internal class TraceDataFlowInstrumentor(
     }
 
     companion object {
+        const val DEFAULT_CALLBACK_INTERNAL_CLASS_NAME =
+            "com/code_intelligence/jazzer/runtime/TraceDataFlowNativeCallbacks"
+
         // Low constants (0, 1) are omitted as they create a lot of noise.
         val CONSTANT_INTEGER_PUSH_OPCODES = listOf(
             Opcodes.BIPUSH,
@@ -35,8 +35,8 @@ import com.code_intelligence.jazzer.mutation.engine.SeededPseudoRandom;
 import com.code_intelligence.jazzer.mutation.mutator.Mutators;
 import com.code_intelligence.jazzer.mutation.support.InputStreamSupport.ReadExactlyInputStream;
 import com.code_intelligence.jazzer.mutation.support.Preconditions;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.lang.reflect.AnnotatedType;
@@ -134,10 +134,12 @@ public final class ArgumentsMutator {
   }
 
   /**
+   * @param data a stream whose {@link InputStream#available()} is exact, e.g. a {@link
+   *     java.io.ByteArrayInputStream}
    * @return if the given input stream was consumed exactly
    * @throws UncheckedIOException if the underlying InputStream throws
    */
-  public boolean read(ByteArrayInputStream data) {
+  public boolean read(InputStream data) {
     try {
       ReadExactlyInputStream is = extendWithReadExactly(data);
       arguments = productMutator.readExclusive(is);
@@ -197,6 +199,14 @@ public final class ArgumentsMutator {
     }
   }
 
+  /**
+   * @return whether the current arguments have not been exposed to user-provided code since they
+   *     were last read, initialized or mutated and can thus be used again without reading them
+   */
+  public boolean canReuseArguments() {
+    return arguments != null && !argumentsExposed;
+  }
+
   public Object[] getArguments() {
     argumentsExposed = true;
     return arguments;
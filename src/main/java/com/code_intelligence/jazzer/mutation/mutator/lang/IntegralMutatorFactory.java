@@ -25,6 +25,7 @@ import com.code_intelligence.jazzer.mutation.api.MutatorFactory;
 import com.code_intelligence.jazzer.mutation.api.PseudoRandom;
 import com.code_intelligence.jazzer.mutation.api.SerializingMutator;
 import com.code_intelligence.jazzer.mutation.mutator.libfuzzer.LibFuzzerMutator;
+import com.code_intelligence.jazzer.utils.ConstantDictionary;
 import com.google.errorprone.annotations.ForOverride;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -172,6 +173,10 @@ final class IntegralMutatorFactory extends MutatorFactory {
     private final int largestMutableBitNegative;
     private final int largestMutableBitPositive;
     private final long[] specialValues;
+    // The snapshot of ConstantDictionary.integrals() that dictionary has been computed from.
+    private long[] dictionarySnapshot;
+    // The entries of dictionarySnapshot that are in [minValue, maxValue].
+    private long[] dictionary;
 
     AbstractIntegralMutator(
         AnnotatedType type, long defaultMinValueForType, long defaultMaxValueForType) {
@@ -250,7 +255,10 @@ final class IntegralMutatorFactory extends MutatorFactory {
       final long previousValue = value;
       // Mutate in a loop to verify that we really mutated.
       do {
-        switch (prng.indexIn(4)) {
+        // Only consume randomness for the dictionary if there is one so that mutations remain
+        // deterministic otherwise.
+        long[] dictionary = inRangeDictionary();
+        switch (prng.indexIn(dictionary.length == 0 ? 4 : 5)) {
           case 0:
             value = bitFlip(value, prng);
             break;
@@ -264,11 +272,27 @@ final class IntegralMutatorFactory extends MutatorFactory {
             // TODO: Replace this with a structure-aware dictionary/TORC search similar to fuzztest.
             value = forceInRange(mutateWithLibFuzzer(value));
             break;
+          case 4:
+            value = dictionary[prng.indexIn(dictionary.length)];
+            break;
         }
       } while (value == previousValue);
       return value;
     }
 
+    private long[] inRangeDictionary() {
+      // The snapshot is only replaced when new constants are found, which is rare after startup.
+      long[] snapshot = ConstantDictionary.integrals();
+      if (snapshot != dictionarySnapshot) {
+        dictionary = LongStream.of(snapshot)
+                         .filter(value -> value >= minValue)
+                         .filter(value -> value <= maxValue)
+                         .toArray();
+        dictionarySnapshot = snapshot;
+      }
+      return dictionary;
+    }
+
     @ForOverride protected abstract long mutateWithLibFuzzer(long value);
 
     /**
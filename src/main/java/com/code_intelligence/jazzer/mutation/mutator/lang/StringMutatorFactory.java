@@ -23,9 +23,17 @@ import com.code_intelligence.jazzer.mutation.annotation.Ascii;
 import com.code_intelligence.jazzer.mutation.annotation.WithUtf8Length;
 import com.code_intelligence.jazzer.mutation.api.Debuggable;
 import com.code_intelligence.jazzer.mutation.api.MutatorFactory;
+import com.code_intelligence.jazzer.mutation.api.PseudoRandom;
 import com.code_intelligence.jazzer.mutation.api.SerializingMutator;
+import com.code_intelligence.jazzer.utils.ConstantDictionary;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.AnnotatedType;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Predicate;
 
@@ -154,7 +162,8 @@ final class StringMutatorFactory extends MutatorFactory {
         .flatMap(parent -> factory.tryCreate(innerByteArray))
         .map(byteArrayMutator -> {
           boolean fixUpAscii = type.getDeclaredAnnotation(Ascii.class) != null;
-          return mutateThenMapToImmutable((SerializingMutator<byte[]>) byteArrayMutator,
+          return new DictionaryStringMutator(min, max, fixUpAscii,
+              mutateThenMapToImmutable((SerializingMutator<byte[]>) byteArrayMutator,
               bytes
               -> {
                 if (fixUpAscii) {
@@ -166,7 +175,85 @@ final class StringMutatorFactory extends MutatorFactory {
               },
               string
               -> string.getBytes(StandardCharsets.UTF_8),
-              (Predicate<Debuggable> inCycle) -> "String");
+              (Predicate<Debuggable> inCycle) -> "String"));
         });
   }
+
+  /**
+   * Occasionally replaces a string with one of the constants found in the classes under test, as
+   * long as it satisfies the length and character constraints.
+   */
+  private static final class DictionaryStringMutator extends SerializingMutator<String> {
+    private static final int INVERSE_FREQUENCY_DICTIONARY = 20;
+
+    private final int minBytes;
+    private final int maxBytes;
+    private final boolean ascii;
+    private final SerializingMutator<String> mutator;
+
+    DictionaryStringMutator(
+        int minBytes, int maxBytes, boolean ascii, SerializingMutator<String> mutator) {
+      this.minBytes = minBytes;
+      this.maxBytes = maxBytes;
+      this.ascii = ascii;
+      this.mutator = mutator;
+    }
+
+    @Override
+    public String read(DataInputStream in) throws IOException {
+      return mutator.read(in);
+    }
+
+    @Override
+    public void write(String value, DataOutputStream out) throws IOException {
+      mutator.write(value, out);
+    }
+
+    @Override
+    public String readExclusive(InputStream in) throws IOException {
+      return mutator.readExclusive(in);
+    }
+
+    @Override
+    public void writeExclusive(String value, OutputStream out) throws IOException {
+      mutator.writeExclusive(value, out);
+    }
+
+    @Override
+    public String init(PseudoRandom prng) {
+      return mutator.init(prng);
+    }
+
+    @Override
+    public String mutate(String value, PseudoRandom prng) {
+      // Only consume randomness if there is a dictionary so that mutations remain deterministic
+      // otherwise.
+      List<String> dictionary = ConstantDictionary.strings();
+      if (!dictionary.isEmpty() && prng.trueInOneOutOf(INVERSE_FREQUENCY_DICTIONARY)) {
+        String entry = prng.pickIn(dictionary);
+        if (!entry.equals(value) && isValid(entry)) {
+          return entry;
+        }
+      }
+      return mutator.mutate(value, prng);
+    }
+
+    @Override
+    public String detach(String value) {
+      return mutator.detach(value);
+    }
+
+    @Override
+    public String toDebugString(Predicate<Debuggable> isInCycle) {
+      return mutator.toDebugString(isInCycle);
+    }
+
+    private boolean isValid(String entry) {
+      if (ascii && !entry.chars().allMatch(c -> c < 0x80)) {
+        return false;
+      }
+      int length = entry.getBytes(StandardCharsets.UTF_8).length;
+      return length >= minBytes && length <= maxBytes;
+    }
+  }
 }
@@ -196,11 +196,12 @@ public final class InputStreamSupport {
   /**
    * Wraps a given stream with the functionality to detect if it was read exactly.
    * To do so, the stream must provide an accurate implementation of {@link
-   * InputStream#available()}, hence it's restricted to {@link ByteArrayInputStream} for now.
+   * InputStream#available()}, such as {@link ByteArrayInputStream} or a stream backed directly by
+   * native memory.
    *
    * @return {@code stream} extended that detects if it was consumed exactly
    */
-  public static ReadExactlyInputStream extendWithReadExactly(ByteArrayInputStream stream) {
+  public static ReadExactlyInputStream extendWithReadExactly(InputStream stream) {
     return new ReadExactlyInputStream(requireNonNull(stream));
   }
 
@@ -215,8 +216,8 @@ public final class InputStreamSupport {
 
     public boolean isConsumedExactly() {
       try {
-        // Forwards availability check to the underlying ByteInputStream,
-        // which is accurate for the number of available bytes.
+        // Forwards availability check to the underlying stream, which is required to be accurate
+        // for the number of available bytes.
         return !eof && available() == 0;
       } catch (IOException e) {
         return false;
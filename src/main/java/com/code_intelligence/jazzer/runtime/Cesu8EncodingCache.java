@@ -0,0 +1,121 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.runtime;
+
+/**
+ * Encodes the prefix of strings reported to libFuzzer's string hooks as CESU-8 without allocating
+ * and caches the encodings of strings that are compared repeatedly, such as literals.
+ *
+ * <p>The encoding produced by {@link #encode(String, byte[])} is identical to
+ * {@code str.substring(0, Math.min(str.length(), MAX_CHARS)).getBytes("CESU8")}.
+ */
+final class Cesu8EncodingCache {
+  // libFuzzer string hooks only ever consume the first 64 bytes, so we can definitely cut the
+  // string off after 64 characters.
+  static final int MAX_CHARS = 64;
+  // Every char is encoded as at most three bytes in CESU-8.
+  static final int MAX_ENCODED_LENGTH = 3 * MAX_CHARS;
+
+  private static final int CACHE_SIZE = 1024;
+  private static final int CACHE_MASK = CACHE_SIZE - 1;
+
+  private static final CachedEncoding[] cache = new CachedEncoding[CACHE_SIZE];
+  // Strings are only admitted to the cache when they are seen a second time, which keeps strings
+  // that are compared only once, e.g. most of those derived from the fuzzer input, from evicting
+  // the constant side of comparisons.
+  private static final String[] admissionCandidates = new String[CACHE_SIZE];
+
+  private Cesu8EncodingCache() {}
+
+  /**
+   * Returns the cached encoding of {@code str} if it has been seen before, otherwise {@code null}.
+   *
+   * <p>Strings are identified by reference, which makes lookups for interned literals cheap. Only
+   * strings not longer than {@link #MAX_CHARS} are cached so that the cache can't keep large
+   * strings alive. The returned array must not be modified.
+   */
+  static byte[] getCached(String str) {
+    int slot = System.identityHashCode(str) & CACHE_MASK;
+    CachedEncoding cached = cache[slot];
+    if (cached != null && cached.string == str) {
+      return cached.encoding;
+    }
+    if (str.length() > MAX_CHARS) {
+      return null;
+    }
+    if (admissionCandidates[slot] != str) {
+      admissionCandidates[slot] = str;
+      return null;
+    }
+    byte[] buffer = new byte[MAX_ENCODED_LENGTH];
+    int length = encode(str, buffer);
+    byte[] encoding = new byte[length];
+    System.arraycopy(buffer, 0, encoding, 0, length);
+    // Races between threads only result in lost cache entries, CachedEncoding is immutable and
+    // thus safely published.
+    cache[slot] = new CachedEncoding(str, encoding);
+    admissionCandidates[slot] = null;
+    return encoding;
+  }
+
+  /**
+   * Encodes the first {@link #MAX_CHARS} chars of {@code str} as CESU-8 into {@code buffer}, which
+   * must have a length of at least {@link #MAX_ENCODED_LENGTH}, and returns the number of bytes
+   * written.
+   *
+   * <p>As with {@link String#getBytes(java.nio.charset.Charset)}, unpaired surrogates are replaced
+   * with {@code '?'}.
+   */
+  static int encode(String str, byte[] buffer) {
+    int limit = Math.min(str.length(), MAX_CHARS);
+    int pos = 0;
+    for (int i = 0; i < limit; i++) {
+      char c = str.charAt(i);
+      if (c < 0x80) {
+        buffer[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[pos++] = (byte) (0xC0 | (c >> 6));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (!Character.isSurrogate(c)) {
+        pos = encodeThreeBytes(c, buffer, pos);
+      } else if (Character.isHighSurrogate(c) && i + 1 < limit
+          && Character.isLowSurrogate(str.charAt(i + 1))) {
+        // CESU-8 encodes both halves of a surrogate pair separately.
+        pos = encodeThreeBytes(c, buffer, pos);
+        pos = encodeThreeBytes(str.charAt(++i), buffer, pos);
+      } else {
+        buffer[pos++] = '?';
+      }
+    }
+    return pos;
+  }
+
+  private static int encodeThreeBytes(char c, byte[] buffer, int pos) {
+    buffer[pos++] = (byte) (0xE0 | (c >> 12));
+    buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+    return pos;
+  }
+
+  private static final class CachedEncoding {
+    final String string;
+    final byte[] encoding;
+
+    CachedEncoding(String string, byte[] encoding) {
+      this.string = string;
+      this.encoding = encoding;
+    }
+  }
+}
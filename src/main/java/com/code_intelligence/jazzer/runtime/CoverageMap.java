@@ -19,9 +19,7 @@ import com.github.fmeum.rules_jni.RulesJni;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.BitSet;
 import sun.misc.Unsafe;
 
 /**
@@ -35,9 +33,11 @@ final public class CoverageMap {
 
   private static final String ENV_MAX_NUM_COUNTERS = "JAZZER_MAX_NUM_COUNTERS";
 
+  // Only address space is reserved for counters that haven't been registered yet, so the default
+  // can be chosen large enough to never be hit in practice.
   private static final int MAX_NUM_COUNTERS = System.getenv(ENV_MAX_NUM_COUNTERS) != null
       ? Integer.parseInt(System.getenv(ENV_MAX_NUM_COUNTERS))
-      : 1 << 20;
+      : 1 << 30;
 
   private static final Unsafe UNSAFE = UnsafeProvider.getUnsafe();
   private static final Class<?> LOG;
@@ -60,17 +60,18 @@ final public class CoverageMap {
   /**
    * The collection of coverage counters directly interacted with by classes that are instrumented
    * for coverage. The instrumentation assumes that this is always one contiguous block of memory,
-   * so it is allocated once at maximum size. Using a larger number here increases the memory usage
-   * of all fuzz targets, but has otherwise no impact on performance.
+   * so it is reserved once at maximum size. The reservation only takes up address space, memory is
+   * committed as counters are registered and is zero-initialized.
    */
-  public static final long countersAddress = UNSAFE.allocateMemory(MAX_NUM_COUNTERS);
+  public static final long countersAddress = reserveCounters(MAX_NUM_COUNTERS);
 
   static {
-    UNSAFE.setMemory(countersAddress, MAX_NUM_COUNTERS, (byte) 0);
     initialize(countersAddress);
   }
 
   private static final int INITIAL_NUM_COUNTERS = 1 << 9;
+  // The number of counters up to which the map is doubled when it is enlarged.
+  private static final int DOUBLING_LIMIT = 1 << 16;
 
   static {
     registerNewCounters(0, INITIAL_NUM_COUNTERS);
@@ -80,31 +81,53 @@ final public class CoverageMap {
    * The number of coverage counters that are currently registered with libFuzzer. This number grows
    * dynamically as classes are instrumented and should be kept as low as possible as libFuzzer has
    * to iterate over the whole map for every execution.
+   *
+   * <p>Only modified while holding the lock on this class.
    */
-  private static int currentNumCounters = INITIAL_NUM_COUNTERS;
+  private static volatile int currentNumCounters = INITIAL_NUM_COUNTERS;
 
-  // Called via reflection.
+  // Called via reflection, possibly concurrently when classes are instrumented in parallel.
   @SuppressWarnings("unused")
   public static void enlargeIfNeeded(int nextId) {
-    int newNumCounters = currentNumCounters;
+    if (nextId >= currentNumCounters) {
+      enlarge(nextId);
+    }
+  }
+
+  private static synchronized void enlarge(int nextId) {
+    if (nextId < currentNumCounters) {
+      // Another thread enlarged the map in the meantime.
+      return;
+    }
+    if (nextId >= MAX_NUM_COUNTERS) {
+      logError(
+          String.format(
+              "Maximum number (%s) of coverage counters exceeded. Try to limit the scope of a single fuzz target as "
+                  + "much as possible to keep the fuzzer fast. If that is not possible, the maximum number of "
+                  + "counters can be increased via the %s environment variable.",
+              MAX_NUM_COUNTERS, ENV_MAX_NUM_COUNTERS),
+          null);
+      System.exit(1);
+    }
+    long newNumCounters = currentNumCounters;
     while (nextId >= newNumCounters) {
-      newNumCounters = 2 * newNumCounters;
-      if (newNumCounters > MAX_NUM_COUNTERS) {
-        logError(
-            String.format(
-                "Maximum number (%s) of coverage counters exceeded. Try to limit the scope of a single fuzz target as "
-                    + "much as possible to keep the fuzzer fast. If that is not possible, the maximum number of "
-                    + "counters can be increased via the %s environment variable.",
-                MAX_NUM_COUNTERS, ENV_MAX_NUM_COUNTERS),
-            null);
-        System.exit(1);
+      // Counters that are registered but not yet used by any class are still scanned and reset by
+      // libFuzzer after every execution. Every registration also adds a module to libFuzzer's table
+      // of at most 4096 modules, each of which costs a few loop iterations per execution on top of
+      // the scan of its counters. Below DOUBLING_LIMIT, at most 32 KiB of unused counters are
+      // scanned, so the map is doubled to keep the number of modules low. Beyond that, growing by a
+      // factor of 9/8 bounds the unused counters to 12.5% instead of 50%. Reaching 2^20 (2^24)
+      // counters then takes 32 (56) registrations compared to 13 (17) when always doubling.
+      if (newNumCounters < DOUBLING_LIMIT) {
+        newNumCounters *= 2;
+      } else {
+        newNumCounters += newNumCounters / 8;
       }
     }
-    if (newNumCounters > currentNumCounters) {
-      registerNewCounters(currentNumCounters, newNumCounters);
-      currentNumCounters = newNumCounters;
-      logInfo("New number of coverage counters: " + currentNumCounters);
-    }
+    int cappedNumCounters = (int) Math.min(newNumCounters, MAX_NUM_COUNTERS);
+    registerNewCounters(currentNumCounters, cappedNumCounters);
+    currentNumCounters = cappedNumCounters;
+    logInfo("New number of coverage counters: " + currentNumCounters);
   }
 
   // Called by the coverage instrumentation.
@@ -115,18 +138,32 @@ final public class CoverageMap {
     UNSAFE.putByte(address, (byte) (counter == -1 ? 1 : counter + 1));
   }
 
-  public static Set<Integer> getCoveredIds() {
-    Set<Integer> coveredIds = new HashSet<>();
-    for (int id = 0; id < currentNumCounters; id++) {
-      if (UNSAFE.getByte(countersAddress + id) > 0) {
-        coveredIds.add(id);
+  /** Returns the IDs of all coverage counters that are non-zero in the current execution. */
+  public static BitSet getCoveredIds() {
+    int numCounters = currentNumCounters;
+    BitSet coveredIds = new BitSet(numCounters);
+    int id = 0;
+    // Most counters are zero, so skip over them eight at a time. countersAddress is page-aligned,
+    // so these reads are aligned.
+    for (; id + Long.BYTES <= numCounters; id += Long.BYTES) {
+      if (UNSAFE.getLong(countersAddress + id) != 0) {
+        setCoveredIds(coveredIds, id, id + Long.BYTES);
       }
     }
-    return Collections.unmodifiableSet(coveredIds);
+    setCoveredIds(coveredIds, id, numCounters);
+    return coveredIds;
   }
 
-  public static void replayCoveredIds(Set<Integer> coveredIds) {
-    for (int id : coveredIds) {
+  private static void setCoveredIds(BitSet coveredIds, int fromId, int toId) {
+    for (int id = fromId; id < toId; id++) {
+      if (UNSAFE.getByte(countersAddress + id) != 0) {
+        coveredIds.set(id);
+      }
+    }
+  }
+
+  public static void replayCoveredIds(BitSet coveredIds) {
+    for (int id = coveredIds.nextSetBit(0); id >= 0; id = coveredIds.nextSetBit(id + 1)) {
       UNSAFE.putByte(countersAddress + id, (byte) 1);
     }
   }
@@ -157,6 +194,8 @@ final public class CoverageMap {
   // one).
   public static native int[] getEverCoveredIds();
 
+  private static native long reserveCounters(long maxNumCounters);
+
   private static native void initialize(long countersAddress);
 
   private static native void registerNewCounters(int oldNumCounters, int newNumCounters);
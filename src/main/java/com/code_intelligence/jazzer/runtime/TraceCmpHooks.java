@@ -36,8 +36,8 @@ final public class TraceCmpHooks {
   @MethodHook(type = HookType.BEFORE, targetClassName = "kotlin.jvm.internal.Intrinsics ",
       targetMethod = "compare", targetMethodDescriptor = "(II)I")
   public static void
-  integerCompare(MethodHandle method, Object alwaysNull, Object[] arguments, int hookId) {
-    TraceDataFlowNativeCallbacks.traceCmpInt((int) arguments[0], (int) arguments[1], hookId);
+  integerCompare(Object alwaysNull, int arg1, int arg2, int hookId) {
+    TraceDataFlowNativeCallbacks.traceCmpInt(arg1, arg2, hookId);
   }
 
   @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.Byte",
@@ -56,8 +56,8 @@ final public class TraceCmpHooks {
   @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.Long",
       targetMethod = "compareUnsigned", targetMethodDescriptor = "(JJ)I")
   public static void
-  longCompare(MethodHandle method, Object thisObject, Object[] arguments, int hookId) {
-    TraceDataFlowNativeCallbacks.traceCmpLong((long) arguments[0], (long) arguments[1], hookId);
+  longCompare(Object alwaysNull, long arg1, long arg2, int hookId) {
+    TraceDataFlowNativeCallbacks.traceCmpLong(arg1, arg2, hookId);
   }
 
   @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.Long",
@@ -70,8 +70,8 @@ final public class TraceCmpHooks {
   @MethodHook(type = HookType.BEFORE, targetClassName = "kotlin.jvm.internal.Intrinsics ",
       targetMethod = "compare", targetMethodDescriptor = "(JJ)I")
   public static void
-  longCompareKt(MethodHandle method, Object alwaysNull, Object[] arguments, int hookId) {
-    TraceDataFlowNativeCallbacks.traceCmpLong((long) arguments[0], (long) arguments[1], hookId);
+  longCompareKt(Object alwaysNull, long arg1, long arg2, int hookId) {
+    TraceDataFlowNativeCallbacks.traceCmpLong(arg1, arg2, hookId);
   }
 
   @MethodHook(type = HookType.AFTER, targetClassName = "java.lang.String", targetMethod = "equals")
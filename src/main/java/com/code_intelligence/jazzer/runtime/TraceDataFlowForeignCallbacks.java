@@ -0,0 +1,241 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.runtime;
+
+import com.github.fmeum.rules_jni.RulesJni;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+
+/**
+ * Invokes the native fuzzer callbacks through downcall handles of the Foreign Function & Memory API
+ * created with the trivial (JDK 21) or critical (JDK 22+) linker option, which replace the
+ * CriticalJNINatives feature removed in JDK 18.
+ *
+ * <p>As Jazzer is compiled for Java 8, the API is only accessed reflectively while creating the
+ * handles. Primitive callbacks are available on JDK 21+, callbacks taking arrays require JDK 22+ as
+ * only the critical linker option allows passing heap memory. Native access has to be enabled for
+ * Jazzer via {@code --enable-native-access=ALL-UNNAMED}, as the JVM would otherwise print a
+ * warning. The launcher passes this option on JDK 21+, other JVMs have to be started with it. In
+ * all other cases, {@link TraceDataFlowNativeCallbacks} falls back to JNI.
+ */
+final class TraceDataFlowForeignCallbacks {
+  static {
+    RulesJni.loadLibrary("jazzer_driver", "/com/code_intelligence/jazzer/driver");
+  }
+
+  // Must be kept in sync with the order in jazzer_fuzzer_callbacks.cpp.
+  private static final int CMP4 = 0;
+  private static final int CMP8 = 1;
+  private static final int SWITCH = 2;
+  private static final int DIV4 = 3;
+  private static final int DIV8 = 4;
+  private static final int GEP = 5;
+  private static final int PC_INDIR = 6;
+  private static final int MEMCMP = 7;
+  private static final int STRSTR = 8;
+
+  private static final MethodHandle[] HANDLES = createHandles();
+
+  // Each handle is stored in its own static final field so that the JIT treats it as a constant.
+  private static final MethodHandle TRACE_CMP4 = HANDLES[CMP4];
+  private static final MethodHandle TRACE_CMP8 = HANDLES[CMP8];
+  private static final MethodHandle TRACE_SWITCH = HANDLES[SWITCH];
+  private static final MethodHandle TRACE_DIV4 = HANDLES[DIV4];
+  private static final MethodHandle TRACE_DIV8 = HANDLES[DIV8];
+  private static final MethodHandle TRACE_GEP = HANDLES[GEP];
+  private static final MethodHandle TRACE_PC_INDIR = HANDLES[PC_INDIR];
+  private static final MethodHandle TRACE_MEMCMP = HANDLES[MEMCMP];
+  private static final MethodHandle TRACE_STRSTR = HANDLES[STRSTR];
+
+  /** Whether the callbacks that only take primitive arguments are available. */
+  static final boolean PRIMITIVE_CALLBACKS_AVAILABLE = TRACE_CMP4 != null;
+  /** Whether the callbacks that take arrays are available. */
+  static final boolean ARRAY_CALLBACKS_AVAILABLE = TRACE_MEMCMP != null;
+
+  private TraceDataFlowForeignCallbacks() {}
+
+  static void traceCmpInt(int arg1, int arg2, int pc) {
+    try {
+      TRACE_CMP4.invokeExact(pc, arg1, arg2);
+    } catch (Throwable t) {
+      throw unexpected(t);
+    }
+  }
+
+  static void traceCmpLong(long arg1, long arg2, int pc) {
+    try {
+      TRACE_CMP8.invokeExact(pc, arg1, arg2);
+    } catch (Throwable t) {
+      throw unexpected(t);
+    }
+  }
+
+  static void traceSwitch(long val, long[] cases, int pc) {
+    try {
+      TRACE_SWITCH.invokeExact(pc, val, cases);
+    } catch (Throwable t) {
+      throw unexpected(t);
+    }
+  }
+
+  static void traceDivInt(int val, int pc) {
+    try {
+      TRACE_DIV4.invokeExact(pc, val);
+    } catch (Throwable t) {
+      throw unexpected(t);
+    }
+  }
+
+  static void traceDivLong(long val, int pc) {
+    try {
+      TRACE_DIV8.invokeExact(pc, val);
+    } catch (Throwable t) {
+      throw unexpected(t);
+    }
+  }
+
+  static void traceGep(long val, int pc) {
+    try {
+      TRACE_GEP.invokeExact(pc, val);
+    } catch (Throwable t) {
+      throw unexpected(t);
+    }
+  }
+
+  // The argument order matches the one of TraceDataFlowNativeCallbacks#tracePcIndir.
+  static void tracePcIndir(int callee, int caller) {
+    try {
+      TRACE_PC_INDIR.invokeExact(callee, caller);
+    } catch (Throwable t) {
+      throw unexpected(t);
+    }
+  }
+
+  static void traceMemcmp(byte[] b1, int b1Length, byte[] b2, int b2Length, int result, int pc) {
+    try {
+      TRACE_MEMCMP.invokeExact(pc, b1, b1Length, b2, b2Length, result);
+    } catch (Throwable t) {
+      throw unexpected(t);
+    }
+  }
+
+  static void traceStrstr(byte[] needle, int needleLength, int pc) {
+    try {
+      TRACE_STRSTR.invokeExact(pc, needle, needleLength);
+    } catch (Throwable t) {
+      throw unexpected(t);
+    }
+  }
+
+  private static IllegalStateException unexpected(Throwable t) {
+    return new IllegalStateException("Unexpected exception in native fuzzer callback", t);
+  }
+
+  /**
+   * Returns the downcall handles indexed by the constants above. Entries are null if the
+   * corresponding handle isn't supported on the current JVM.
+   */
+  private static MethodHandle[] createHandles() {
+    MethodHandle[] handles = new MethodHandle[STRSTR + 1];
+    try {
+      Object module =
+          Class.class.getMethod("getModule").invoke(TraceDataFlowForeignCallbacks.class);
+      if (!(boolean) module.getClass().getMethod("isNativeAccessEnabled").invoke(module)) {
+        return handles;
+      }
+      new Linker().createHandles(getCallbackAddresses(), handles);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // The Foreign Function & Memory API isn't available, fall back to JNI.
+      return new MethodHandle[STRSTR + 1];
+    }
+    return handles;
+  }
+
+  /** A reflective view on the parts of the Foreign Function & Memory API used by Jazzer. */
+  private static final class Linker {
+    private final Class<?> memoryLayoutClass = Class.forName("java.lang.foreign.MemoryLayout");
+    private final Class<?> memorySegmentClass = Class.forName("java.lang.foreign.MemorySegment");
+    private final Class<?> functionDescriptorClass =
+        Class.forName("java.lang.foreign.FunctionDescriptor");
+    private final Class<?> optionClass = Class.forName("java.lang.foreign.Linker$Option");
+    private final Class<?> linkerClass = Class.forName("java.lang.foreign.Linker");
+    private final Class<?> valueLayoutClass = Class.forName("java.lang.foreign.ValueLayout");
+    private final Object linker = linkerClass.getMethod("nativeLinker").invoke(null);
+    private final Object javaInt = valueLayoutClass.getField("JAVA_INT").get(null);
+    private final Object javaLong = valueLayoutClass.getField("JAVA_LONG").get(null);
+    private final Object address = valueLayoutClass.getField("ADDRESS").get(null);
+
+    Linker() throws ReflectiveOperationException {}
+
+    void createHandles(long[] addresses, MethodHandle[] handles)
+        throws ReflectiveOperationException {
+      Method critical = null;
+      try {
+        critical = optionClass.getMethod("critical", boolean.class);
+      } catch (NoSuchMethodException e) {
+        // JDK 21 only offers the trivial option, which is equivalent to critical(false).
+      }
+      Object noHeapAccess = critical != null ? critical.invoke(null, false)
+                                             : optionClass.getMethod("isTrivial").invoke(null);
+      handles[CMP4] = downcall(addresses[CMP4], noHeapAccess, javaInt, javaInt, javaInt);
+      handles[CMP8] = downcall(addresses[CMP8], noHeapAccess, javaInt, javaLong, javaLong);
+      handles[DIV4] = downcall(addresses[DIV4], noHeapAccess, javaInt, javaInt);
+      handles[DIV8] = downcall(addresses[DIV8], noHeapAccess, javaInt, javaLong);
+      handles[GEP] = downcall(addresses[GEP], noHeapAccess, javaInt, javaLong);
+      handles[PC_INDIR] = downcall(addresses[PC_INDIR], noHeapAccess, javaInt, javaInt);
+      if (critical == null) {
+        // Callbacks taking arrays fall back to JNI.
+        return;
+      }
+
+      // Allows passing heap segments, which the native code must not retain.
+      Object heapAccess = critical.invoke(null, true);
+      MethodHandle ofByteArray = MethodHandles.publicLookup().unreflect(
+          memorySegmentClass.getMethod("ofArray", byte[].class));
+      MethodHandle ofLongArray = MethodHandles.publicLookup().unreflect(
+          memorySegmentClass.getMethod("ofArray", long[].class));
+      handles[SWITCH] = MethodHandles.filterArguments(
+          downcall(addresses[SWITCH], heapAccess, javaInt, javaLong, address), 2, ofLongArray);
+      handles[MEMCMP] = MethodHandles.filterArguments(
+          downcall(addresses[MEMCMP], heapAccess, javaInt, address, javaInt, address, javaInt,
+              javaInt),
+          1, ofByteArray, null, ofByteArray);
+      handles[STRSTR] = MethodHandles.filterArguments(
+          downcall(addresses[STRSTR], heapAccess, javaInt, address, javaInt), 1, ofByteArray);
+    }
+
+    private MethodHandle downcall(long functionAddress, Object option, Object... argLayouts)
+        throws ReflectiveOperationException {
+      Object layouts = Array.newInstance(memoryLayoutClass, argLayouts.length);
+      for (int i = 0; i < argLayouts.length; i++) {
+        Array.set(layouts, i, argLayouts[i]);
+      }
+      Object descriptor = functionDescriptorClass.getMethod("ofVoid", layouts.getClass())
+                              .invoke(null, layouts);
+      Object options = Array.newInstance(optionClass, 1);
+      Array.set(options, 0, option);
+      Object symbol =
+          memorySegmentClass.getMethod("ofAddress", long.class).invoke(null, functionAddress);
+      return (MethodHandle) linkerClass
+          .getMethod("downcallHandle", memorySegmentClass, functionDescriptorClass,
+              options.getClass())
+          .invoke(linker, symbol, descriptor, options);
+    }
+  }
+
+  private static native long[] getCallbackAddresses();
+}
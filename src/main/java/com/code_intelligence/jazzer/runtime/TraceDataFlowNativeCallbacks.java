@@ -14,12 +14,14 @@
 
 package com.code_intelligence.jazzer.runtime;
 
+import com.code_intelligence.jazzer.driver.Opt;
 import com.github.fmeum.rules_jni.RulesJni;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Method;
-import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.objectweb.asm.Type;
 
 @SuppressWarnings("unused")
@@ -33,19 +35,104 @@ final public class TraceDataFlowNativeCallbacks {
   // likely to insert literal null bytes, having both the fuzzer input and the reported string
   // comparisons be CESU8 should perform even better than the current implementation using modified
   // UTF-8.
-  private static final Charset FUZZED_DATA_CHARSET = Charset.forName("CESU8");
+  //
+  // The encoding itself is implemented in Cesu8EncodingCache, which avoids allocations by reusing
+  // the encodings of repeatedly compared strings and encoding all other strings into per-thread
+  // scratch buffers.
+  private static final ThreadLocal<byte[][]> ENCODING_SCRATCH_BUFFERS =
+      ThreadLocal.withInitial(() -> new byte[2][Cesu8EncodingCache.MAX_ENCODED_LENGTH]);
 
-  public static native void traceMemcmp(byte[] b1, byte[] b2, int result, int pc);
+  // If enabled, compare, division, switch and gep events recorded on the fuzzing thread are only
+  // passed to libFuzzer after the current execution, which saves a JNI call per event.
+  private static final boolean BUFFERED_TRACE_EVENTS = Opt.bufferedTraceEvents;
+
+  // If enabled, compare, division and switch events at sites that have repeatedly been hit without
+  // producing new value profile features are dropped before they reach libFuzzer.
+  private static final TraceThrottle THROTTLE = Opt.traceThrottle > 0
+      ? new TraceThrottle((int) Math.min(Opt.traceThrottle, Integer.MAX_VALUE))
+      : null;
+  private static final boolean THROTTLE_TRACE_EVENTS = THROTTLE != null;
+
+  // ClassValue is only available on Android 14+.
+  private static final boolean CACHE_REFLECTIVE_CALLEE_HASHES = !Opt.isAndroid;
+
+  // On JDK 21+, native callbacks are invoked via the Foreign Function & Memory API if possible,
+  // which is faster than JNI. See TraceDataFlowForeignCallbacks for the exact requirements.
+  private static final boolean FOREIGN_PRIMITIVE_CALLBACKS =
+      TraceDataFlowForeignCallbacks.PRIMITIVE_CALLBACKS_AVAILABLE;
+  private static final boolean FOREIGN_ARRAY_CALLBACKS =
+      TraceDataFlowForeignCallbacks.ARRAY_CALLBACKS_AVAILABLE;
+
+  /** Has to be called after every execution of the fuzz target. */
+  public static void onFuzzTargetExecuted() {
+    if (THROTTLE_TRACE_EVENTS) {
+      THROTTLE.onInputExecuted();
+    }
+  }
+
+  public static void traceMemcmp(byte[] b1, byte[] b2, int result, int pc) {
+    if (FOREIGN_ARRAY_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.traceMemcmp(b1, b1.length, b2, b2.length, result, pc);
+    } else {
+      traceMemcmp0(b1, b2, result, pc);
+    }
+  }
 
   public static void traceStrcmp(String s1, String s2, int result, int pc) {
-    traceMemcmp(encodeForLibFuzzer(s1), encodeForLibFuzzer(s2), result, pc);
+    byte[] b1 = Cesu8EncodingCache.getCached(s1);
+    byte[] b2 = Cesu8EncodingCache.getCached(s2);
+    int b1Length;
+    int b2Length;
+    if (b1 != null && b2 != null) {
+      b1Length = b1.length;
+      b2Length = b2.length;
+    } else {
+      byte[][] scratchBuffers = ENCODING_SCRATCH_BUFFERS.get();
+      if (b1 != null) {
+        b1Length = b1.length;
+      } else {
+        b1 = scratchBuffers[0];
+        b1Length = Cesu8EncodingCache.encode(s1, b1);
+      }
+      if (b2 != null) {
+        b2Length = b2.length;
+      } else {
+        b2 = scratchBuffers[1];
+        b2Length = Cesu8EncodingCache.encode(s2, b2);
+      }
+    }
+    if (FOREIGN_ARRAY_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.traceMemcmp(b1, b1Length, b2, b2Length, result, pc);
+    } else {
+      traceStrcmp0(b1, b1Length, b2, b2Length, result, pc);
+    }
   }
 
   public static void traceStrstr(String s1, String s2, int pc) {
-    traceStrstr0(encodeForLibFuzzer(s2), pc);
+    byte[] needle = Cesu8EncodingCache.getCached(s2);
+    int needleLength;
+    if (needle != null) {
+      needleLength = needle.length;
+    } else {
+      needle = ENCODING_SCRATCH_BUFFERS.get()[0];
+      needleLength = Cesu8EncodingCache.encode(s2, needle);
+    }
+    if (FOREIGN_ARRAY_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.traceStrstr(needle, needleLength, pc);
+    } else {
+      traceStrstr0(needle, needleLength, pc);
+    }
   }
 
   public static void traceReflectiveCall(Executable callee, int pc) {
+    if (CACHE_REFLECTIVE_CALLEE_HASHES) {
+      tracePcIndir(ReflectiveCalleeHashes.get(callee), pc);
+    } else {
+      tracePcIndir(hashReflectiveCallee(callee), pc);
+    }
+  }
+
+  private static int hashReflectiveCallee(Executable callee) {
     String className = callee.getDeclaringClass().getCanonicalName();
     String executableName = callee.getName();
     String descriptor;
@@ -54,7 +141,25 @@ final public class TraceDataFlowNativeCallbacks {
     } else {
       descriptor = Type.getConstructorDescriptor((Constructor<?>) callee);
     }
-    tracePcIndir(Arrays.hashCode(new String[] {className, executableName, descriptor}), pc);
+    return Arrays.hashCode(new String[] {className, executableName, descriptor});
+  }
+
+  // Caches the hashes of reflectively called methods and constructors per declaring class so that
+  // frameworks making heavy use of reflection don't pay for computing descriptors on every call.
+  // Executables are copied on every reflective lookup, so they are compared by equality.
+  private static final class ReflectiveCalleeHashes {
+    private static final ClassValue<ConcurrentMap<Executable, Integer>> HASHES =
+        new ClassValue<ConcurrentMap<Executable, Integer>>() {
+          @Override
+          protected ConcurrentMap<Executable, Integer> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+          }
+        };
+
+    static int get(Executable callee) {
+      return HASHES.get(callee.getDeclaringClass())
+          .computeIfAbsent(callee, TraceDataFlowNativeCallbacks::hashReflectiveCallee);
+    }
   }
 
   public static int traceCmpLongWrapper(long arg1, long arg2, int pc) {
@@ -86,25 +191,131 @@ final public class TraceDataFlowNativeCallbacks {
   }
 
   /* trace-cmp */
-  public static native void traceCmpInt(int arg1, int arg2, int pc);
-  public static native void traceConstCmpInt(int arg1, int arg2, int pc);
-  public static native void traceCmpLong(long arg1, long arg2, int pc);
-  public static native void traceSwitch(long val, long[] cases, int pc);
+  public static void traceCmpInt(int arg1, int arg2, int pc) {
+    if (THROTTLE_TRACE_EVENTS && !THROTTLE.shouldTrace(arg1, arg2, pc)) {
+      return;
+    }
+    if (BUFFERED_TRACE_EVENTS
+        && TraceEventBuffer.append(TraceEventBuffer.CMP_INT, pc, arg1, arg2)) {
+      return;
+    }
+    if (FOREIGN_PRIMITIVE_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.traceCmpInt(arg1, arg2, pc);
+    } else {
+      traceCmpInt0(arg1, arg2, pc);
+    }
+  }
+
+  public static void traceConstCmpInt(int arg1, int arg2, int pc) {
+    if (THROTTLE_TRACE_EVENTS && !THROTTLE.shouldTrace(arg1, arg2, pc)) {
+      return;
+    }
+    if (BUFFERED_TRACE_EVENTS
+        && TraceEventBuffer.append(TraceEventBuffer.CMP_INT, pc, arg1, arg2)) {
+      return;
+    }
+    if (FOREIGN_PRIMITIVE_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.traceCmpInt(arg1, arg2, pc);
+    } else {
+      traceConstCmpInt0(arg1, arg2, pc);
+    }
+  }
+
+  public static void traceCmpLong(long arg1, long arg2, int pc) {
+    if (THROTTLE_TRACE_EVENTS && !THROTTLE.shouldTrace(arg1, arg2, pc)) {
+      return;
+    }
+    if (BUFFERED_TRACE_EVENTS
+        && TraceEventBuffer.append(TraceEventBuffer.CMP_LONG, pc, arg1, arg2)) {
+      return;
+    }
+    if (FOREIGN_PRIMITIVE_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.traceCmpLong(arg1, arg2, pc);
+    } else {
+      traceCmpLong0(arg1, arg2, pc);
+    }
+  }
+
+  public static void traceSwitch(long val, long[] cases, int pc) {
+    if (THROTTLE_TRACE_EVENTS && !THROTTLE.shouldTraceSwitch(val, cases, pc)) {
+      return;
+    }
+    if (BUFFERED_TRACE_EVENTS && TraceEventBuffer.appendSwitch(val, cases, pc)) {
+      return;
+    }
+    if (FOREIGN_ARRAY_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.traceSwitch(val, cases, pc);
+    } else {
+      traceSwitch0(val, cases, pc);
+    }
+  }
+
   /* trace-div */
-  public static native void traceDivInt(int val, int pc);
-  public static native void traceDivLong(long val, int pc);
+  public static void traceDivInt(int val, int pc) {
+    if (THROTTLE_TRACE_EVENTS && !THROTTLE.shouldTrace(val, 0, pc)) {
+      return;
+    }
+    if (BUFFERED_TRACE_EVENTS && TraceEventBuffer.append(TraceEventBuffer.DIV_INT, pc, val, 0)) {
+      return;
+    }
+    if (FOREIGN_PRIMITIVE_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.traceDivInt(val, pc);
+    } else {
+      traceDivInt0(val, pc);
+    }
+  }
+
+  public static void traceDivLong(long val, int pc) {
+    if (THROTTLE_TRACE_EVENTS && !THROTTLE.shouldTrace(val, 0L, pc)) {
+      return;
+    }
+    if (BUFFERED_TRACE_EVENTS && TraceEventBuffer.append(TraceEventBuffer.DIV_LONG, pc, val, 0)) {
+      return;
+    }
+    if (FOREIGN_PRIMITIVE_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.traceDivLong(val, pc);
+    } else {
+      traceDivLong0(val, pc);
+    }
+  }
+
   /* trace-gep */
-  public static native void traceGep(long val, int pc);
+  public static void traceGep(long val, int pc) {
+    if (BUFFERED_TRACE_EVENTS && TraceEventBuffer.append(TraceEventBuffer.GEP, pc, val, 0)) {
+      return;
+    }
+    if (FOREIGN_PRIMITIVE_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.traceGep(val, pc);
+    } else {
+      traceGep0(val, pc);
+    }
+  }
+
   /* indirect-calls */
-  public static native void tracePcIndir(int callee, int caller);
+  public static void tracePcIndir(int callee, int caller) {
+    if (FOREIGN_PRIMITIVE_CALLBACKS) {
+      TraceDataFlowForeignCallbacks.tracePcIndir(callee, caller);
+    } else {
+      tracePcIndir0(callee, caller);
+    }
+  }
 
   public static native void handleLibraryLoad();
 
-  private static byte[] encodeForLibFuzzer(String str) {
-    // libFuzzer string hooks only ever consume the first 64 bytes, so we can definitely cut the
-    // string off after 64 characters.
-    return str.substring(0, Math.min(str.length(), 64)).getBytes(FUZZED_DATA_CHARSET);
-  }
+  // Only the first b1Length and b2Length bytes of b1 and b2 are reported to libFuzzer.
+  private static native void traceStrcmp0(
+      byte[] b1, int b1Length, byte[] b2, int b2Length, int result, int pc);
+
+  // Only the first needleLength bytes of needle are reported to libFuzzer.
+  private static native void traceStrstr0(byte[] needle, int needleLength, int pc);
 
-  private static native void traceStrstr0(byte[] needle, int pc);
+  private static native void traceMemcmp0(byte[] b1, byte[] b2, int result, int pc);
+  private static native void traceCmpInt0(int arg1, int arg2, int pc);
+  private static native void traceConstCmpInt0(int arg1, int arg2, int pc);
+  private static native void traceCmpLong0(long arg1, long arg2, int pc);
+  private static native void traceSwitch0(long val, long[] cases, int pc);
+  private static native void traceDivInt0(int val, int pc);
+  private static native void traceDivLong0(long val, int pc);
+  private static native void traceGep0(long val, int pc);
+  private static native void tracePcIndir0(int callee, int caller);
 }
@@ -0,0 +1,122 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.runtime;
+
+import com.code_intelligence.jazzer.utils.UnsafeProvider;
+import com.github.fmeum.rules_jni.RulesJni;
+import sun.misc.Unsafe;
+
+/**
+ * An off-heap buffer of data flow events that is passed to libFuzzer in a single native call after
+ * every execution of the fuzz target (see trace_event_buffer.cpp) rather than with one JNI call
+ * per event.
+ *
+ * <p>Only events recorded on the thread that calls {@link #bufferEventsOnCurrentThread()}, which
+ * has to be the thread libFuzzer executes inputs on, are buffered. On all other threads, {@code
+ * append} returns {@code false} and callers are expected to fall back to the immediate native
+ * callback.
+ */
+public final class TraceEventBuffer {
+  static {
+    RulesJni.loadLibrary("jazzer_driver", "/com/code_intelligence/jazzer/driver");
+  }
+
+  // Must be kept in sync with the constants in trace_event_buffer.cpp.
+  static final int CMP_INT = 0;
+  static final int CMP_LONG = 1;
+  static final int DIV_INT = 2;
+  static final int DIV_LONG = 3;
+  static final int GEP = 4;
+  static final int SWITCH = 5;
+
+  private static final Unsafe UNSAFE = UnsafeProvider.getUnsafe();
+  private static final long LONG_ARRAY_BASE_OFFSET = UNSAFE.arrayBaseOffset(long[].class);
+
+  // The buffer starts with a long holding the number of bytes used by records, followed by records
+  // of the form (int kind, int id, long arg1, long arg2). Switch records are followed by arg2 case
+  // values. All records are thus 8-byte aligned.
+  private static final int HEADER_SIZE = Long.BYTES;
+  private static final int RECORD_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES;
+  // Large enough to usually hold all events of a single execution.
+  private static final long CAPACITY = 1 << 20;
+
+  private static final long bufferAddress = UNSAFE.allocateMemory(HEADER_SIZE + CAPACITY);
+
+  static {
+    UNSAFE.putLong(bufferAddress, 0);
+    initialize(bufferAddress);
+  }
+
+  // Only ever written by the thread that claims the buffer. Other threads may observe a stale value,
+  // which is fine as they can never observe themselves as the owner.
+  private static Thread owner;
+
+  private TraceEventBuffer() {}
+
+  /**
+   * Buffers all subsequent events recorded on the current thread until the next execution of the
+   * fuzz target finishes.
+   */
+  public static void bufferEventsOnCurrentThread() {
+    owner = Thread.currentThread();
+  }
+
+  static boolean append(int kind, int id, long arg1, long arg2) {
+    if (Thread.currentThread() != owner) {
+      return false;
+    }
+    long size = UNSAFE.getLong(bufferAddress);
+    if (size + RECORD_SIZE > CAPACITY) {
+      drain();
+      size = 0;
+    }
+    putRecord(bufferAddress + HEADER_SIZE + size, kind, id, arg1, arg2);
+    UNSAFE.putLong(bufferAddress, size + RECORD_SIZE);
+    return true;
+  }
+
+  static boolean appendSwitch(long val, long[] cases, int id) {
+    if (Thread.currentThread() != owner) {
+      return false;
+    }
+    long casesSize = (long) cases.length * Long.BYTES;
+    long recordSize = RECORD_SIZE + casesSize;
+    if (recordSize > CAPACITY) {
+      return false;
+    }
+    long size = UNSAFE.getLong(bufferAddress);
+    if (size + recordSize > CAPACITY) {
+      drain();
+      size = 0;
+    }
+    long record = bufferAddress + HEADER_SIZE + size;
+    putRecord(record, SWITCH, id, val, cases.length);
+    UNSAFE.copyMemory(cases, LONG_ARRAY_BASE_OFFSET, null, record + RECORD_SIZE, casesSize);
+    UNSAFE.putLong(bufferAddress, size + recordSize);
+    return true;
+  }
+
+  private static void putRecord(long record, int kind, int id, long arg1, long arg2) {
+    UNSAFE.putInt(record, kind);
+    UNSAFE.putInt(record + Integer.BYTES, id);
+    UNSAFE.putLong(record + 2 * Integer.BYTES, arg1);
+    UNSAFE.putLong(record + 2 * Integer.BYTES + Long.BYTES, arg2);
+  }
+
+  private static native void initialize(long bufferAddress);
+
+  // Visible for testing.
+  static native void drain();
+}
@@ -0,0 +1,140 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Decides which compare, division and switch events are worth passing to libFuzzer.
+ *
+ * <p>libFuzzer derives value profile features for such an event from its site and both the Hamming
+ * distance and the number of leading zeros of the difference of its arguments. Every site
+ * remembers the distances it has already reported. Once a site has reported {@code limit}
+ * consecutive events without a new distance, further events with known distances are dropped. This
+ * saves the native call for hot sites such as loop counters and keeps them from flooding
+ * libFuzzer's table of recent compares, while events with new distances are always reported. As
+ * the arguments seen at a site change with the inputs, every site gets to report another {@code
+ * limit} events after every {@link #INPUTS_PER_RESET} inputs.
+ *
+ * <p>Sites are identified by their full id, which is kept in a hash table with a bounded number of
+ * probes. Events at sites that don't fit into the table are never throttled. The state is accessed
+ * without synchronization as lost updates are harmless.
+ */
+final class TraceThrottle {
+  static final int INPUTS_PER_RESET = 1 << 10;
+
+  private static final int SITE_BITS = 16;
+  private static final int NUM_SITES = 1 << SITE_BITS;
+  private static final int SITE_MASK = NUM_SITES - 1;
+  private static final int MAX_PROBES = 8;
+  private static final long NO_SITE = -1;
+
+  private final int limit;
+  // The key of the site stored at each index (see key), NO_SITE for unused indices.
+  private final long[] sites = new long[NUM_SITES];
+  // Bit i is set if the site has reported an event with a Hamming distance of i. 64 is recorded
+  // as 63.
+  private final long[] seenHammingDistances = new long[NUM_SITES];
+  // Bit i is set if the site has reported an event whose argument difference has i leading zeros.
+  private final long[] seenLeadingZeros = new long[NUM_SITES];
+  private final int[] eventsWithoutNewDistance = new int[NUM_SITES];
+  private int inputsSinceReset;
+
+  TraceThrottle(int limit) {
+    this.limit = limit;
+    Arrays.fill(sites, NO_SITE);
+  }
+
+  /** Has to be called after every execution of the fuzz target. */
+  void onInputExecuted() {
+    if (++inputsSinceReset == INPUTS_PER_RESET) {
+      inputsSinceReset = 0;
+      Arrays.fill(eventsWithoutNewDistance, 0);
+    }
+  }
+
+  boolean shouldTrace(int arg1, int arg2, int pc) {
+    // libFuzzer compares 32-bit arguments as unsigned 32-bit values.
+    return shouldTrace(
+        key(pc, 0), Integer.bitCount(arg1 ^ arg2), arg1 == arg2, (arg1 - arg2) & 0xFFFFFFFFL);
+  }
+
+  boolean shouldTrace(long arg1, long arg2, int pc) {
+    return shouldTrace(key(pc, 0), Long.bitCount(arg1 ^ arg2), arg1 == arg2, arg1 - arg2);
+  }
+
+  /**
+   * Switches are reported to libFuzzer as a compare of {@code val} with the first case value
+   * larger than it at a site derived from the index of that case, which is mirrored here.
+   */
+  boolean shouldTraceSwitch(long val, long[] cases, int pc) {
+    // The first two entries are the number of cases and the bit size of the values.
+    int numCases = (int) cases[0];
+    int i = 0;
+    long token = 0;
+    for (; i < numCases; i++) {
+      token = val ^ cases[2 + i];
+      if (Long.compareUnsigned(val, cases[2 + i]) < 0) {
+        break;
+      }
+    }
+    return shouldTrace(key(pc, i + 1), Long.bitCount(token), token == 0, token);
+  }
+
+  // Switch cases get their own sites so that they can't collide with compares.
+  private static long key(int pc, int switchCase) {
+    return ((long) switchCase << 32) | (pc & 0xFFFFFFFFL);
+  }
+
+  private boolean shouldTrace(long key, int hammingDistance, boolean equal, long difference) {
+    int site = findSite(key);
+    if (site == -1) {
+      return true;
+    }
+    long hammingBit = 1L << Math.min(hammingDistance, 63);
+    // Equal arguments are already distinguished by their Hamming distance of 0.
+    long leadingZerosBit = equal ? 0 : 1L << Long.numberOfLeadingZeros(difference);
+    if ((seenHammingDistances[site] & hammingBit) == 0
+        || (seenLeadingZeros[site] & leadingZerosBit) != leadingZerosBit) {
+      seenHammingDistances[site] |= hammingBit;
+      seenLeadingZeros[site] |= leadingZerosBit;
+      eventsWithoutNewDistance[site] = 0;
+      return true;
+    }
+    if (eventsWithoutNewDistance[site] >= limit) {
+      return false;
+    }
+    eventsWithoutNewDistance[site]++;
+    return true;
+  }
+
+  // Returns the index of the site with the given key, claiming an unused index if the site is new,
+  // or -1 if the site doesn't fit into the table.
+  private int findSite(long key) {
+    // Fibonacci hashing spreads both small instrumentation ids and random hook ids.
+    int index = (int) ((key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - SITE_BITS));
+    for (int probe = 0; probe < MAX_PROBES; probe++, index = (index + 1) & SITE_MASK) {
+      long site = sites[index];
+      if (site == key) {
+        return index;
+      }
+      if (site == NO_SITE) {
+        sites[index] = key;
+        return index;
+      }
+    }
+    return -1;
+  }
+}
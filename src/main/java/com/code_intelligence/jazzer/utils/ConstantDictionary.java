@@ -0,0 +1,195 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.utils;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * String and integer constants extracted from instrumented classes that the fuzzer can use as a
+ * dictionary.
+ *
+ * <p>Constants are ranked by the proximity of the class they have been found in to the fuzz
+ * target class, measured as the number of leading package name components the two share. At most
+ * {@link #MAX_ENTRIES} constants of each kind are kept: Once the limit is reached, a new constant
+ * replaces one of a lower rank, if any, so that constants of the code under test are preferred
+ * over those of its dependencies.
+ *
+ * <p>The dictionary is only modified when classes are loaded. Readers get an immutable snapshot
+ * without synchronization.
+ */
+public final class ConstantDictionary {
+  /** The maximum number of strings and the maximum number of integers in the dictionary. */
+  public static final int MAX_ENTRIES = 1 << 12;
+
+  // Integers this small are found quickly by mutations and compare instrumentation alike.
+  private static final long MAX_TRIVIAL_INTEGRAL = 0xFF;
+  // Sharing more package name components than this doesn't improve the rank any further.
+  private static final int MAX_RANK = 8;
+
+  private static final RankedSet<String> strings = new RankedSet<>();
+  private static final RankedSet<Long> integrals = new RankedSet<>();
+  private static String[] targetPackage = new String[0];
+  private static Consumer<String> newStringListener;
+
+  private static volatile List<String> stringsSnapshot = Collections.emptyList();
+  private static volatile long[] integralsSnapshot = new long[0];
+
+  private ConstantDictionary() {}
+
+  /**
+   * Adds the constants found in the class with the given name to the dictionary.
+   */
+  public static void add(String className, Collection<String> newStrings, long[] newIntegrals) {
+    List<String> addedStrings = new ArrayList<>();
+    synchronized (ConstantDictionary.class) {
+      String[] packageName = packageOf(className);
+      int rank = rank(packageName);
+      for (String string : newStrings) {
+        if (!string.isEmpty() && strings.add(string, packageName, rank)) {
+          addedStrings.add(string);
+        }
+      }
+      boolean addedIntegrals = false;
+      for (long integral : newIntegrals) {
+        if (isNonTrivial(integral) && integrals.add(integral, packageName, rank)) {
+          addedIntegrals = true;
+        }
+      }
+      publish(!addedStrings.isEmpty(), addedIntegrals);
+    }
+    Consumer<String> listener = newStringListener;
+    if (listener != null) {
+      addedStrings.forEach(listener);
+    }
+  }
+
+  /**
+   * Sets the class whose package is used to rank constants.
+   */
+  public static synchronized void setTargetClassName(String className) {
+    targetPackage = packageOf(className);
+    strings.rerank();
+    integrals.rerank();
+    publish(true, true);
+  }
+
+  /**
+   * Registers a listener that is called for every string that is added to the dictionary from now
+   * on.
+   */
+  public static void setNewStringListener(Consumer<String> listener) {
+    newStringListener = listener;
+  }
+
+  /** Returns the strings in the dictionary, in order of decreasing rank. */
+  public static List<String> strings() {
+    return stringsSnapshot;
+  }
+
+  /** Returns the integers in the dictionary, in order of decreasing rank. */
+  public static long[] integrals() {
+    return integralsSnapshot;
+  }
+
+  private static void publish(boolean publishStrings, boolean publishIntegrals) {
+    if (publishStrings) {
+      stringsSnapshot = unmodifiableList(strings.ranked());
+    }
+    if (publishIntegrals) {
+      integralsSnapshot = integrals.ranked().stream().mapToLong(Long::longValue).toArray();
+    }
+  }
+
+  private static boolean isNonTrivial(long integral) {
+    return integral < -MAX_TRIVIAL_INTEGRAL || integral > MAX_TRIVIAL_INTEGRAL;
+  }
+
+  private static String[] packageOf(String className) {
+    String[] components = className.split("\\.");
+    String[] packageName = new String[components.length - 1];
+    System.arraycopy(components, 0, packageName, 0, packageName.length);
+    return packageName;
+  }
+
+  private static int rank(String[] packageName) {
+    int length = 0;
+    while (length < MAX_RANK && length < packageName.length && length < targetPackage.length
+        && packageName[length].equals(targetPackage[length])) {
+      length++;
+    }
+    return length;
+  }
+
+  /** A set of at most {@link #MAX_ENTRIES} values that evicts values of the lowest rank first. */
+  private static final class RankedSet<T> {
+    // The package of the class each value has first been found in, in insertion order.
+    private final Map<T, String[]> packageNames = new LinkedHashMap<>();
+    // The values of rank r, in insertion order, are contained in buckets.get(r).
+    private final List<LinkedHashSet<T>> buckets = new ArrayList<>(MAX_RANK + 1);
+
+    RankedSet() {
+      for (int rank = 0; rank <= MAX_RANK; rank++) {
+        buckets.add(new LinkedHashSet<>());
+      }
+    }
+
+    boolean add(T value, String[] packageName, int rank) {
+      if (packageNames.containsKey(value)) {
+        return false;
+      }
+      if (packageNames.size() >= MAX_ENTRIES && !evictBelow(rank)) {
+        return false;
+      }
+      packageNames.put(value, packageName);
+      buckets.get(rank).add(value);
+      return true;
+    }
+
+    private boolean evictBelow(int rank) {
+      for (int lowerRank = 0; lowerRank < rank; lowerRank++) {
+        Iterator<T> it = buckets.get(lowerRank).iterator();
+        if (it.hasNext()) {
+          packageNames.remove(it.next());
+          it.remove();
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void rerank() {
+      buckets.forEach(LinkedHashSet::clear);
+      packageNames.forEach((value, packageName) -> buckets.get(rank(packageName)).add(value));
+    }
+
+    List<T> ranked() {
+      List<T> ranked = new ArrayList<>(packageNames.size());
+      for (int rank = MAX_RANK; rank >= 0; rank--) {
+        ranked.addAll(buckets.get(rank));
+      }
+      return ranked;
+    }
+  }
+}
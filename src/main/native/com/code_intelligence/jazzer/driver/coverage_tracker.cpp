@@ -17,6 +17,13 @@
 #include <jni.h>
 #include <stdint.h>
 
+#ifdef _WIN32
+#include <windows.h>
+#else
+#include <sys/mman.h>
+#include <unistd.h>
+#endif
+
 #include <iostream>
 #include <vector>
 
@@ -44,6 +51,28 @@ namespace jazzer {
 uint8_t *CoverageTracker::counters_ = nullptr;
 PCTableEntry *CoverageTracker::pc_entries_ = nullptr;
 
+jlong CoverageTracker::ReserveCounters(JNIEnv &env, jlong max_num_counters) {
+  // Only reserve address space for the counters, which are committed
+  // explicitly when they are registered. An inaccessible mapping isn't charged
+  // against the commit limit even with vm.overcommit_memory=2, which ignores
+  // MAP_NORESERVE for writable mappings. In both cases, committed memory is
+  // zero-initialized.
+#ifdef _WIN32
+  void *counters = VirtualAlloc(nullptr, max_num_counters, MEM_RESERVE,
+                                PAGE_NOACCESS);
+  if (counters == nullptr) {
+#else
+  void *counters = mmap(nullptr, max_num_counters, PROT_NONE,
+                        MAP_PRIVATE | MAP_ANONYMOUS | MAP_NORESERVE, -1, 0);
+  if (counters == MAP_FAILED) {
+#endif
+    std::cerr << "ERROR: Failed to reserve memory for " << max_num_counters
+              << " coverage counters" << std::endl;
+    _Exit(1);
+  }
+  return static_cast<jlong>(reinterpret_cast<uintptr_t>(counters));
+}
+
 void CoverageTracker::Initialize(JNIEnv &env, jlong counters) {
   if (counters_ != nullptr) {
     std::cerr << "ERROR: CoverageTracker::Initialize must not be called more "
@@ -72,6 +101,26 @@ void CoverageTracker::RegisterNewCounters(JNIEnv &env, jint old_num_counters,
     return;
   }
   std::size_t diff_num_counters = new_num_counters - old_num_counters;
+#ifdef _WIN32
+  if (VirtualAlloc(counters_ + old_num_counters, diff_num_counters, MEM_COMMIT,
+                   PAGE_READWRITE) == nullptr) {
+#else
+  // mprotect requires a page-aligned start address. The page containing the
+  // first new counter may already be accessible, which is fine as mprotect
+  // leaves its contents untouched.
+  static const uintptr_t page_size = sysconf(_SC_PAGESIZE);
+  uintptr_t commit_start =
+      reinterpret_cast<uintptr_t>(counters_ + old_num_counters) &
+      ~(page_size - 1);
+  uintptr_t commit_end =
+      reinterpret_cast<uintptr_t>(counters_ + new_num_counters);
+  if (mprotect(reinterpret_cast<void *>(commit_start),
+               commit_end - commit_start, PROT_READ | PROT_WRITE) != 0) {
+#endif
+    std::cerr << "ERROR: Failed to commit memory for " << new_num_counters
+              << " coverage counters" << std::endl;
+    _Exit(1);
+  }
   // libFuzzer requires an array containing the instruction addresses associated
   // with the coverage counters registered above. This is required to report how
   // many edges have been covered. However, libFuzzer only checks these
@@ -91,6 +140,12 @@ void CoverageTracker::RegisterNewCounters(JNIEnv &env, jint old_num_counters,
 }
 }  // namespace jazzer
 
+[[maybe_unused]] jlong
+Java_com_code_1intelligence_jazzer_runtime_CoverageMap_reserveCounters(
+    JNIEnv *env, jclass, jlong max_num_counters) {
+  return ::jazzer::CoverageTracker::ReserveCounters(*env, max_num_counters);
+}
+
 [[maybe_unused]] void
 Java_com_code_1intelligence_jazzer_runtime_CoverageMap_initialize(
     JNIEnv *env, jclass, jlong counters) {
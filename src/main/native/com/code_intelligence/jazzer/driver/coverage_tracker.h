@@ -29,13 +29,15 @@ struct __attribute__((packed)) PCTableEntry {
 };
 
 // CoverageTracker registers an array of 8-bit coverage counters with
-// libFuzzer. The array is populated from Java using Unsafe.
+// libFuzzer. The array is populated from Java using Unsafe and only consumes
+// memory for the counters registered so far.
 class CoverageTracker {
  private:
   static uint8_t *counters_;
   static PCTableEntry *pc_entries_;
 
  public:
+  static jlong ReserveCounters(JNIEnv &env, jlong max_num_counters);
   static void Initialize(JNIEnv &env, jlong counters);
   static void RegisterNewCounters(JNIEnv &env, jint old_num_counters,
                                   jint new_num_counters);
@@ -31,6 +31,7 @@
 #include <vector>
 
 #include "com_code_intelligence_jazzer_runtime_FuzzTargetRunnerNatives.h"
+#include "trace_event_buffer.h"
 
 extern "C" int LLVMFuzzerRunDriver(int *argc, char ***argv,
                                    int (*UserCb)(const uint8_t *Data,
@@ -49,6 +50,11 @@ jboolean gUseExperimentalMutator;
 // not include a stack trace.
 void (*gLibfuzzerPrintCrashingInput)() = nullptr;
 
+// Executes a single input via one upcall into FuzzTargetRunner.runOne.
+// Batching multiple inputs per upcall is not possible: libFuzzer invokes this
+// callback from Fuzzer::ExecuteCallback for exactly one input and collects and
+// resets the coverage features of that input as soon as the callback returns,
+// only then deciding which input to generate next.
 int testOneInput(const uint8_t *data, const std::size_t size) {
   JNIEnv &env = *gEnv;
   jint jsize =
@@ -58,6 +64,10 @@ int testOneInput(const uint8_t *data, const std::size_t size) {
     env.ExceptionDescribe();
     _Exit(1);
   }
+  // With --buffered_trace_events, data flow events are only passed to
+  // libFuzzer here, which still happens before it collects the features of
+  // this input.
+  ::jazzer::TraceEventBuffer::Drain();
   return res;
 }
 }  // namespace
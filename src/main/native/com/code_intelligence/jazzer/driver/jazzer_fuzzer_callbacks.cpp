@@ -17,6 +17,7 @@
 #include <cstddef>
 #include <cstdint>
 
+#include "com_code_intelligence_jazzer_runtime_TraceDataFlowForeignCallbacks.h"
 #include "com_code_intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks.h"
 #include "sanitizer_hooks_with_pc.h"
 
@@ -37,8 +38,7 @@ inline __attribute__((always_inline)) void *idToPc(jint id) {
 
 [[maybe_unused]] void
 Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceStrstr0(
-    JNIEnv *env, jclass cls, jbyteArray needle, jint id) {
-  jint needle_length = env->GetArrayLength(needle);
+    JNIEnv *env, jclass cls, jbyteArray needle, jint needle_length, jint id) {
   auto *needle_native =
       static_cast<jbyte *>(env->GetPrimitiveArrayCritical(needle, nullptr));
   __sanitizer_weak_hook_memmem(idToPc(id), nullptr, 0, needle_native,
@@ -48,13 +48,36 @@ Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceStr
 
 extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
 JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceStrstr0(
-    jint needle_length, jbyte *needle_native, jint id) {
+    jint needle_array_length, jbyte *needle_native, jint needle_length,
+    jint id) {
   __sanitizer_weak_hook_memmem(idToPc(id), nullptr, 0, needle_native,
                                needle_length, nullptr);
 }
 
 [[maybe_unused]] void
-Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceMemcmp(
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceStrcmp0(
+    JNIEnv *env, jclass cls, jbyteArray b1, jint b1_length, jbyteArray b2,
+    jint b2_length, jint result, jint id) {
+  auto *b1_native =
+      static_cast<jbyte *>(env->GetPrimitiveArrayCritical(b1, nullptr));
+  auto *b2_native =
+      static_cast<jbyte *>(env->GetPrimitiveArrayCritical(b2, nullptr));
+  __sanitizer_weak_hook_compare_bytes(idToPc(id), b1_native, b2_native,
+                                      b1_length, b2_length, result);
+  env->ReleasePrimitiveArrayCritical(b1, b1_native, JNI_ABORT);
+  env->ReleasePrimitiveArrayCritical(b2, b2_native, JNI_ABORT);
+}
+
+extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
+JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceStrcmp0(
+    jint b1_array_length, jbyte *b1, jint b1_length, jint b2_array_length,
+    jbyte *b2, jint b2_length, jint result, jint id) {
+  __sanitizer_weak_hook_compare_bytes(idToPc(id), b1, b2, b1_length, b2_length,
+                                      result);
+}
+
+[[maybe_unused]] void
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceMemcmp0(
     JNIEnv *env, jclass cls, jbyteArray b1, jbyteArray b2, jint result,
     jint id) {
   jint b1_length = env->GetArrayLength(b1);
@@ -70,7 +93,7 @@ Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceMem
 }
 
 extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
-JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceMemcmp(
+JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceMemcmp0(
     jint b1_length, jbyte *b1, jint b2_length, jbyte *b2, jint result,
     jint id) {
   __sanitizer_weak_hook_compare_bytes(idToPc(id), b1, b2, b1_length, b2_length,
@@ -78,43 +101,43 @@ JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_
 }
 
 [[maybe_unused]] void
-Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceCmpLong(
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceCmpLong0(
     JNIEnv *env, jclass cls, jlong value1, jlong value2, jint id) {
   __sanitizer_cov_trace_cmp8_with_pc(idToPc(id), value1, value2);
 }
 
 extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
-JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceCmpLong(
+JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceCmpLong0(
     jlong value1, jlong value2, jint id) {
   __sanitizer_cov_trace_cmp8_with_pc(idToPc(id), value1, value2);
 }
 
 [[maybe_unused]] void
-Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceCmpInt(
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceCmpInt0(
     JNIEnv *env, jclass cls, jint value1, jint value2, jint id) {
   __sanitizer_cov_trace_cmp4_with_pc(idToPc(id), value1, value2);
 }
 
 extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
-JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceCmpInt(
+JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceCmpInt0(
     jint value1, jint value2, jint id) {
   __sanitizer_cov_trace_cmp4_with_pc(idToPc(id), value1, value2);
 }
 
 [[maybe_unused]] void
-Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceConstCmpInt(
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceConstCmpInt0(
     JNIEnv *env, jclass cls, jint value1, jint value2, jint id) {
   __sanitizer_cov_trace_cmp4_with_pc(idToPc(id), value1, value2);
 }
 
 extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
-JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceConstCmpInt(
+JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceConstCmpInt0(
     jint value1, jint value2, jint id) {
   __sanitizer_cov_trace_cmp4_with_pc(idToPc(id), value1, value2);
 }
 
 [[maybe_unused]] void
-Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceSwitch(
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceSwitch0(
     JNIEnv *env, jclass cls, jlong switch_value,
     jlongArray libfuzzer_case_values, jint id) {
   auto *case_values = static_cast<jlong *>(
@@ -126,7 +149,7 @@ Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceSwi
 }
 
 extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
-JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceSwitch(
+JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceSwitch0(
     jlong switch_value, jint libfuzzer_case_values_length, jlong *case_values,
     jint id) {
   __sanitizer_cov_trace_switch_with_pc(
@@ -134,51 +157,121 @@ JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_
 }
 
 [[maybe_unused]] void
-Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceDivLong(
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceDivLong0(
     JNIEnv *env, jclass cls, jlong value, jint id) {
   __sanitizer_cov_trace_div8_with_pc(idToPc(id), value);
 }
 
 extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
-JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceDivLong(
+JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceDivLong0(
     jlong value, jint id) {
   __sanitizer_cov_trace_div8_with_pc(idToPc(id), value);
 }
 
 [[maybe_unused]] void
-Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceDivInt(
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceDivInt0(
     JNIEnv *env, jclass cls, jint value, jint id) {
   __sanitizer_cov_trace_div4_with_pc(idToPc(id), value);
 }
 
 extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
-JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceDivInt(
+JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceDivInt0(
     jint value, jint id) {
   __sanitizer_cov_trace_div4_with_pc(idToPc(id), value);
 }
 
 [[maybe_unused]] void
-Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceGep(
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceGep0(
     JNIEnv *env, jclass cls, jlong idx, jint id) {
   __sanitizer_cov_trace_gep_with_pc(idToPc(id), static_cast<uintptr_t>(idx));
 }
 
 extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
-JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceGep(
+JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_traceGep0(
     jlong idx, jint id) {
   __sanitizer_cov_trace_gep_with_pc(idToPc(id), static_cast<uintptr_t>(idx));
 }
 
 [[maybe_unused]] void
-Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_tracePcIndir(
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_tracePcIndir0(
     JNIEnv *env, jclass cls, jint caller_id, jint callee_id) {
   __sanitizer_cov_trace_pc_indir_with_pc(idToPc(caller_id),
                                          static_cast<uintptr_t>(callee_id));
 }
 
 extern "C" [[maybe_unused]] JNIEXPORT void JNICALL
-JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_tracePcIndir(
+JavaCritical_com_code_1intelligence_jazzer_runtime_TraceDataFlowNativeCallbacks_tracePcIndir0(
     jint caller_id, jint callee_id) {
   __sanitizer_cov_trace_pc_indir_with_pc(idToPc(caller_id),
                                          static_cast<uintptr_t>(callee_id));
 }
+
+// Variants of the callbacks above that are invoked via downcall handles of the
+// Foreign Function & Memory API rather than JNI (see
+// TraceDataFlowForeignCallbacks.java). Their addresses are passed to Java
+// directly, so they don't need to be exported.
+namespace {
+void ForeignTraceCmp4(jint id, jint value1, jint value2) {
+  __sanitizer_cov_trace_cmp4_with_pc(idToPc(id), value1, value2);
+}
+
+void ForeignTraceCmp8(jint id, jlong value1, jlong value2) {
+  __sanitizer_cov_trace_cmp8_with_pc(idToPc(id), value1, value2);
+}
+
+void ForeignTraceSwitch(jint id, jlong switch_value, jlong *case_values) {
+  __sanitizer_cov_trace_switch_with_pc(
+      idToPc(id), switch_value, reinterpret_cast<uint64_t *>(case_values));
+}
+
+void ForeignTraceDiv4(jint id, jint value) {
+  __sanitizer_cov_trace_div4_with_pc(idToPc(id), value);
+}
+
+void ForeignTraceDiv8(jint id, jlong value) {
+  __sanitizer_cov_trace_div8_with_pc(idToPc(id), value);
+}
+
+void ForeignTraceGep(jint id, jlong idx) {
+  __sanitizer_cov_trace_gep_with_pc(idToPc(id), static_cast<uintptr_t>(idx));
+}
+
+void ForeignTracePcIndir(jint caller_id, jint callee_id) {
+  __sanitizer_cov_trace_pc_indir_with_pc(idToPc(caller_id),
+                                         static_cast<uintptr_t>(callee_id));
+}
+
+void ForeignTraceMemcmp(jint id, const jbyte *b1, jint b1_length,
+                        const jbyte *b2, jint b2_length, jint result) {
+  __sanitizer_weak_hook_compare_bytes(idToPc(id), b1, b2, b1_length, b2_length,
+                                      result);
+}
+
+void ForeignTraceStrstr(jint id, const jbyte *needle, jint needle_length) {
+  __sanitizer_weak_hook_memmem(idToPc(id), nullptr, 0, needle, needle_length,
+                               nullptr);
+}
+
+template <typename F>
+jlong AddressOf(F *function) {
+  return static_cast<jlong>(reinterpret_cast<uintptr_t>(function));
+}
+}  // namespace
+
+[[maybe_unused]] jlongArray
+Java_com_code_1intelligence_jazzer_runtime_TraceDataFlowForeignCallbacks_getCallbackAddresses(
+    JNIEnv *env, jclass cls) {
+  // Must be kept in sync with the indices in TraceDataFlowForeignCallbacks.
+  const jlong addresses[] = {
+      AddressOf(ForeignTraceCmp4),   AddressOf(ForeignTraceCmp8),
+      AddressOf(ForeignTraceSwitch), AddressOf(ForeignTraceDiv4),
+      AddressOf(ForeignTraceDiv8),   AddressOf(ForeignTraceGep),
+      AddressOf(ForeignTracePcIndir), AddressOf(ForeignTraceMemcmp),
+      AddressOf(ForeignTraceStrstr),
+  };
+  constexpr jsize num_addresses = sizeof(addresses) / sizeof(addresses[0]);
+  jlongArray result = env->NewLongArray(num_addresses);
+  if (result == nullptr) return nullptr;
+  env->SetLongArrayRegion(result, 0, num_addresses, addresses);
+  return result;
+}
@@ -0,0 +1,119 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#include "trace_event_buffer.h"
+
+#include <jni.h>
+
+#include <cstdint>
+#include <iostream>
+
+#include "com_code_intelligence_jazzer_runtime_TraceEventBuffer.h"
+#include "sanitizer_hooks_with_pc.h"
+
+namespace {
+// Must be kept in sync with the constants in TraceEventBuffer.java.
+enum TraceEventKind : int32_t {
+  kCmpInt = 0,
+  kCmpLong = 1,
+  kDivInt = 2,
+  kDivLong = 3,
+  kGep = 4,
+  kSwitch = 5,
+};
+
+// The layout of a single record written by TraceEventBuffer.java. Switch
+// records are followed by arg2 libFuzzer case values.
+struct TraceEvent {
+  int32_t kind;
+  int32_t id;
+  uint64_t arg1;
+  uint64_t arg2;
+};
+static_assert(sizeof(TraceEvent) == 24, "TraceEvent must not be padded");
+
+// The buffer starts with the number of bytes used by records.
+constexpr std::size_t kHeaderSize = sizeof(uint64_t);
+
+inline __attribute__((always_inline)) void *idToPc(jint id) {
+  return reinterpret_cast<void *>(static_cast<uintptr_t>(id));
+}
+}  // namespace
+
+namespace jazzer {
+
+uint8_t *TraceEventBuffer::buffer_ = nullptr;
+
+void TraceEventBuffer::Initialize(jlong buffer) {
+  if (buffer_ != nullptr) {
+    std::cerr << "ERROR: TraceEventBuffer::Initialize must not be called more "
+                 "than once"
+              << std::endl;
+    _Exit(1);
+  }
+  buffer_ = reinterpret_cast<uint8_t *>(static_cast<uintptr_t>(buffer));
+}
+
+void TraceEventBuffer::Drain() {
+  if (buffer_ == nullptr) return;
+  auto *size = reinterpret_cast<uint64_t *>(buffer_);
+  uint8_t *pos = buffer_ + kHeaderSize;
+  const uint8_t *end = pos + *size;
+  while (pos < end) {
+    const auto *event = reinterpret_cast<const TraceEvent *>(pos);
+    pos += sizeof(TraceEvent);
+    void *pc = idToPc(event->id);
+    switch (event->kind) {
+      case kCmpInt:
+        __sanitizer_cov_trace_cmp4_with_pc(pc, event->arg1, event->arg2);
+        break;
+      case kCmpLong:
+        __sanitizer_cov_trace_cmp8_with_pc(pc, event->arg1, event->arg2);
+        break;
+      case kDivInt:
+        __sanitizer_cov_trace_div4_with_pc(pc, event->arg1);
+        break;
+      case kDivLong:
+        __sanitizer_cov_trace_div8_with_pc(pc, event->arg1);
+        break;
+      case kGep:
+        __sanitizer_cov_trace_gep_with_pc(pc,
+                                          static_cast<uintptr_t>(event->arg1));
+        break;
+      case kSwitch:
+        __sanitizer_cov_trace_switch_with_pc(
+            pc, event->arg1, reinterpret_cast<uint64_t *>(pos));
+        pos += event->arg2 * sizeof(uint64_t);
+        break;
+      default:
+        std::cerr << "ERROR: Invalid trace event kind " << event->kind
+                  << std::endl;
+        _Exit(1);
+    }
+  }
+  *size = 0;
+}
+}  // namespace jazzer
+
+[[maybe_unused]] void
+Java_com_code_1intelligence_jazzer_runtime_TraceEventBuffer_initialize(
+    JNIEnv *env, jclass, jlong buffer) {
+  ::jazzer::TraceEventBuffer::Initialize(buffer);
+}
+
+[[maybe_unused]] void
+Java_com_code_1intelligence_jazzer_runtime_TraceEventBuffer_drain(JNIEnv *env,
+                                                                  jclass) {
+  ::jazzer::TraceEventBuffer::Drain();
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2023 Code Intelligence GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#pragma once
+
+#include <jni.h>
+#include <stdint.h>
+
+namespace jazzer {
+
+// TraceEventBuffer replays data flow events that Java code records in an
+// off-heap buffer via Unsafe (see TraceEventBuffer.java) into libFuzzer's
+// compare, division, switch and gep hooks.
+class TraceEventBuffer {
+ private:
+  static uint8_t *buffer_;
+
+ public:
+  static void Initialize(jlong buffer);
+  // Passes all buffered events to libFuzzer and clears the buffer. Must be
+  // called on the thread that records events before libFuzzer inspects the
+  // data flow information of the current input.
+  static void Drain();
+};
+}  // namespace jazzer
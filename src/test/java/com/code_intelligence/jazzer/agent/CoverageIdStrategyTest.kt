@@ -0,0 +1,125 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.agent
+
+import org.junit.Test
+import java.nio.file.Files
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class CoverageIdStrategyTest {
+
+    private fun CoverageIdStrategy.firstIdForClass(className: String, numIds: Int): Int {
+        var firstId = -1
+        withIdForClass(className) {
+            firstId = it
+            numIds
+        }
+        return firstId
+    }
+
+    @Test
+    fun testEmptyFile() {
+        val idSyncFile = Files.createTempFile("id_sync", null)
+        val strategy = FileSyncCoverageIdStrategy(idSyncFile)
+        assertEquals(0, strategy.firstIdForClass("com.example.First", 5))
+        assertEquals(5, strategy.firstIdForClass("com.example.Second", 3))
+        assertEquals(8, strategy.firstIdForClass("com.example.Third", 0))
+        assertEquals(8, strategy.firstIdForClass("com.example.Fourth", 1))
+    }
+
+    @Test
+    fun testInstancesAgree() {
+        val idSyncFile = Files.createTempFile("id_sync", null)
+        val first = FileSyncCoverageIdStrategy(idSyncFile)
+        val second = FileSyncCoverageIdStrategy(idSyncFile)
+
+        assertEquals(0, first.firstIdForClass("com.example.First", 5))
+        // The second instance sees the record appended by the first one and assigns the next free IDs.
+        assertEquals(5, second.firstIdForClass("com.example.Second", 3))
+        assertEquals(0, second.firstIdForClass("com.example.First", 5))
+        assertEquals(5, first.firstIdForClass("com.example.Second", 3))
+        assertEquals(8, first.firstIdForClass("com.example.Third", 2))
+        assertEquals(8, second.firstIdForClass("com.example.Third", 2))
+
+        // A new instance reads all records from the file.
+        val third = FileSyncCoverageIdStrategy(idSyncFile)
+        assertEquals(5, third.firstIdForClass("com.example.Second", 3))
+        assertEquals(10, third.firstIdForClass("com.example.Fourth", 1))
+        assertEquals(10, first.firstIdForClass("com.example.Fourth", 1))
+    }
+
+    @Test
+    fun testRecordedClass() {
+        val idSyncFile = Files.createTempFile("id_sync", null)
+        val strategy = FileSyncCoverageIdStrategy(idSyncFile)
+        assertEquals(0, strategy.firstIdForClass("com.example.First", 5))
+        assertEquals(5, strategy.firstIdForClass("com.example.Second", 3))
+        assertEquals(0, strategy.firstIdForClass("com.example.First", 5))
+        // Recorded IDs are not reassigned to a class with a different number of edges.
+        assertFailsWith<CoverageIdException> { strategy.firstIdForClass("com.example.First", 6) }
+        assertEquals(8, strategy.firstIdForClass("com.example.Third", 1))
+
+        // Non-ASCII class names are recorded in UTF-8.
+        assertEquals(9, strategy.firstIdForClass("com.example.Ünïcödé", 2))
+        assertEquals(9, FileSyncCoverageIdStrategy(idSyncFile).firstIdForClass("com.example.Ünïcödé", 2))
+    }
+
+    @Test
+    fun testMemSync() {
+        val strategy = MemSyncCoverageIdStrategy()
+        assertEquals(0, strategy.firstIdForClass("com.example.First", 5))
+        assertEquals(5, strategy.firstIdForClass("com.example.Second", 0))
+        assertEquals(5, strategy.firstIdForClass("com.example.Third", 3))
+    }
+
+    @Test
+    fun testMemSyncConcurrentReservation() {
+        val strategy = MemSyncCoverageIdStrategy()
+        assertEquals(0, strategy.firstIdForClass("com.example.First", 2))
+
+        val outerFirstIds = mutableListOf<Int>()
+        var innerFirstId = -1
+        strategy.withIdForClass("com.example.Outer") { firstId ->
+            outerFirstIds.add(firstId)
+            if (outerFirstIds.size == 1) {
+                // Simulate another class reserving IDs while this one is being instrumented.
+                innerFirstId = strategy.firstIdForClass("com.example.Inner", 3)
+            }
+            5
+        }
+        // The inner class got the IDs the outer class was optimistically instrumented with, so the outer class is
+        // instrumented again with the IDs following those of the inner class.
+        assertEquals(2, innerFirstId)
+        assertEquals(listOf(2, 5), outerFirstIds)
+        assertEquals(10, strategy.firstIdForClass("com.example.Last", 1))
+    }
+
+    @Test
+    fun testMemSyncConcurrentReservationWithChangedNumIds() {
+        val strategy = MemSyncCoverageIdStrategy()
+        var invocations = 0
+        assertFailsWith<CoverageIdException> {
+            strategy.withIdForClass("com.example.Outer") {
+                if (++invocations == 1) {
+                    strategy.firstIdForClass("com.example.Inner", 3)
+                }
+                // The block violates its contract by returning a different number of IDs when invoked again.
+                4 + invocations
+            }
+        }
+        assertEquals(2, invocations)
+    }
+}
@@ -0,0 +1,133 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.agent
+
+import com.code_intelligence.jazzer.api.HookType
+import com.code_intelligence.jazzer.api.MethodHook
+import com.code_intelligence.jazzer.instrumentor.Hook
+import com.code_intelligence.jazzer.instrumentor.InstrumentationType
+import org.junit.Test
+import java.lang.invoke.MethodHandle
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+import kotlin.test.assertEquals
+import kotlin.test.assertNotEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+object CacheTestHooks {
+    @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.String", targetMethod = "equals")
+    @JvmStatic
+    fun equalsHook(method: MethodHandle, thisObject: Any?, arguments: Array<Any?>, hookId: Int) {}
+
+    @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.String", targetMethod = "startsWith")
+    @JvmStatic
+    fun startsWithHook(method: MethodHandle, thisObject: Any?, arguments: Array<Any?>, hookId: Int) {}
+}
+
+class InstrumentationCacheTest {
+
+    private val bytecode = ByteArray(ENTRY_SIZE - HEADER_SIZE) { it.toByte() }
+
+    private fun hook(methodName: String): Hook {
+        val method = CacheTestHooks::class.java.methods.single { it.name == methodName }
+        val annotation = method.getAnnotation(MethodHook::class.java)
+        return Hook.createAndVerifyHook(method, annotation, annotation.targetClassName)
+    }
+
+    @Test
+    fun testHit() {
+        val cacheDir = Files.createTempDirectory("instrumentation_cache")
+        val cache = InstrumentationCache(cacheDir, Long.MAX_VALUE, "config")
+        val key = cache.key("com/example/Target", bytecode, 5)
+        assertNull(cache.get(key))
+
+        cache.put(key, InstrumentedClass(byteArrayOf(1, 2, 3), 7))
+        for (reader in listOf(cache, InstrumentationCache(cacheDir, Long.MAX_VALUE, "config"))) {
+            assertEquals(key, reader.key("com/example/Target", bytecode.copyOf(), 5))
+            val instrumentedClass = assertNotNull(reader.get(key))
+            assertEquals(listOf<Byte>(1, 2, 3), instrumentedClass.bytecode.asList())
+            assertEquals(7, instrumentedClass.numEdgeIds)
+        }
+    }
+
+    @Test
+    fun testMisses() {
+        val cacheDir = Files.createTempDirectory("instrumentation_cache")
+        val types = setOf(InstrumentationType.COV, InstrumentationType.CMP)
+        val hooks = listOf(hook("equalsHook"))
+        fun cache(configuration: String) = InstrumentationCache(cacheDir, Long.MAX_VALUE, configuration)
+        val cache = cache(instrumentationConfiguration(types, hooks, emptyList()))
+        val key = cache.key("com/example/Target", bytecode, 5)
+        cache.put(key, InstrumentedClass(byteArrayOf(1, 2, 3), 7))
+
+        val otherKeys = listOf(
+            cache.key("com/example/Target", bytecode, 6),
+            cache.key("com/example/Target", bytecode, null),
+            cache.key("com/example/Other", bytecode, 5),
+            cache.key("com/example/Target", bytecode.copyOf(bytecode.size - 1), 5),
+        ) + listOf(
+            instrumentationConfiguration(types + InstrumentationType.DIV, hooks, emptyList()),
+            instrumentationConfiguration(types - InstrumentationType.CMP, hooks, emptyList()),
+            instrumentationConfiguration(types, hooks + hook("startsWithHook"), emptyList()),
+            instrumentationConfiguration(types, emptyList(), emptyList()),
+            // The same hook as a custom instead of an included hook.
+            instrumentationConfiguration(types, emptyList(), hooks),
+        ).map { configuration ->
+            cache(configuration).key("com/example/Target", bytecode, 5)
+        }
+        assertEquals(otherKeys.size, otherKeys.toSet().size)
+        for (otherKey in otherKeys) {
+            assertNotEquals(key, otherKey)
+            assertNull(cache.get(otherKey))
+        }
+        // Configurations are independent of the order in which instrumentation types are specified.
+        val sameConfiguration = instrumentationConfiguration(types.reversed().toSet(), hooks, emptyList())
+        assertEquals(key, cache(sameConfiguration).key("com/example/Target", bytecode, 5))
+    }
+
+    @Test
+    fun testEviction() {
+        val cacheDir = Files.createTempDirectory("instrumentation_cache")
+        val cache = InstrumentationCache(cacheDir, 10L * ENTRY_SIZE, "config")
+        val keys = (0 until 11).map { cache.key("com/example/Target$it", bytecode, 0) }
+        for ((i, key) in keys.take(10).withIndex()) {
+            cache.put(key, InstrumentedClass(bytecode, i))
+            // Make the order in which entries have been used independent of the file system's timestamp resolution.
+            Files.setLastModifiedTime(cacheDir.resolve(key), FileTime.fromMillis(1000L * (i + 1)))
+        }
+        // The cache is full, but not exceeded.
+        assertTrue(keys.take(10).all { Files.exists(cacheDir.resolve(it)) })
+
+        // Using an entry makes it the most recently used one.
+        assertNotNull(cache.get(keys[0]))
+        // Exceeding the limit evicts the least recently used entries until the cache is at most 3/4 full.
+        cache.put(keys[10], InstrumentedClass(bytecode, 10))
+        val evicted = keys.filterNot { Files.exists(cacheDir.resolve(it)) }
+        assertEquals(keys.subList(1, 5), evicted)
+        for ((i, key) in keys.withIndex()) {
+            if (key !in evicted) {
+                assertEquals(i, assertNotNull(cache.get(key)).numEdgeIds)
+            }
+        }
+    }
+
+    companion object {
+        // Matches the entry header written by InstrumentationCache.
+        private const val HEADER_SIZE = 2 * Int.SIZE_BYTES
+        private const val ENTRY_SIZE = 100
+    }
+}
@@ -0,0 +1,110 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import org.junit.Test;
+
+public class HookedMethodTest {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private static int sideEffect = 0;
+
+  private final String prefix;
+
+  public HookedMethodTest() {
+    this("");
+  }
+
+  private HookedMethodTest(String prefix) {
+    this.prefix = prefix;
+  }
+
+  private static String repeat(String s, int times) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+
+  private static void increment(int delta) {
+    sideEffect += delta;
+  }
+
+  private String withPrefix(String s) {
+    return prefix + s;
+  }
+
+  // Has the same erased type as the static method withPrefix.
+  private static String withPrefix(Object prefix, String s) {
+    return "static" + s;
+  }
+
+  private boolean hasPrefix() {
+    return !prefix.isEmpty();
+  }
+
+  private static void fail(String message) {
+    throw new IllegalStateException(message);
+  }
+
+  @Test
+  public void testStaticMethod() throws Throwable {
+    MethodHandle repeat = LOOKUP.findStatic(HookedMethodTest.class, "repeat",
+        MethodType.methodType(String.class, String.class, int.class));
+    assertEquals("abab", HookedMethod.invoke(repeat, null, new Object[] {"ab", 2}));
+    assertEquals("", HookedMethod.invoke(repeat, null, new Object[] {"ab", 0}));
+  }
+
+  @Test
+  public void testVoidMethod() throws Throwable {
+    MethodHandle increment = LOOKUP.findStatic(
+        HookedMethodTest.class, "increment", MethodType.methodType(void.class, int.class));
+    int before = sideEffect;
+    assertNull(HookedMethod.invoke(increment, null, new Object[] {5}));
+    assertEquals(before + 5, sideEffect);
+  }
+
+  @Test
+  public void testInstanceMethod() throws Throwable {
+    MethodHandle withPrefix = LOOKUP.findVirtual(HookedMethodTest.class, "withPrefix",
+        MethodType.methodType(String.class, String.class));
+    MethodHandle staticWithPrefix = LOOKUP.findStatic(HookedMethodTest.class, "withPrefix",
+        MethodType.methodType(String.class, Object.class, String.class));
+    MethodHandle hasPrefix = LOOKUP.findVirtual(
+        HookedMethodTest.class, "hasPrefix", MethodType.methodType(boolean.class));
+    HookedMethodTest thisObject = new HookedMethodTest("foo");
+    assertEquals("foobar", HookedMethod.invoke(withPrefix, thisObject, new Object[] {"bar"}));
+    assertEquals(
+        "staticbar", HookedMethod.invoke(staticWithPrefix, null, new Object[] {thisObject, "bar"}));
+    assertEquals(true, HookedMethod.invoke(hasPrefix, thisObject, new Object[0]));
+  }
+
+  @Test
+  public void testExceptionIsPropagated() throws Throwable {
+    MethodHandle fail = LOOKUP.findStatic(
+        HookedMethodTest.class, "fail", MethodType.methodType(void.class, String.class));
+    IllegalStateException e = assertThrows(IllegalStateException.class,
+        () -> HookedMethod.invoke(fail, null, new Object[] {"expected"}));
+    assertEquals("expected", e.getMessage());
+  }
+}
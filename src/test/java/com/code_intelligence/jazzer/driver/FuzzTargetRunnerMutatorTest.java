@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 Code Intelligence GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.code_intelligence.jazzer.driver;
+
+import com.code_intelligence.jazzer.agent.AgentInstaller;
+import com.code_intelligence.jazzer.mutation.ArgumentsMutator;
+import com.code_intelligence.jazzer.mutation.annotation.NotNull;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Verifies when {@link FuzzTargetRunner} reuses the arguments produced by the mutator for the input
+ * it wrote instead of reading them from the input again.
+ */
+public class FuzzTargetRunnerMutatorTest {
+  private static Object lastList;
+
+  public static void fuzzerTestOneInput(@NotNull List<@NotNull Integer> list, boolean flag) {
+    lastList = list;
+  }
+
+  public static void main(String[] args) throws ReflectiveOperationException {
+    // Do not instrument any classes.
+    System.setProperty("jazzer.instrumentation_excludes", "**");
+    System.setProperty("jazzer.custom_hook_excludes", "**");
+    System.setProperty("jazzer.target_class", FuzzTargetRunnerMutatorTest.class.getName());
+    System.setProperty("jazzer.experimental_mutator", "true");
+
+    AgentInstaller.install(true);
+    FuzzTargetHolder.fuzzTarget =
+        FuzzTargetFinder.findFuzzTarget(FuzzTargetRunnerMutatorTest.class.getName());
+
+    // libFuzzer passes "\n" to initialize the mutator if there is no corpus.
+    byte[] input = FuzzTargetRunner.mutateOne(new byte[] {'\n'}, 100, 1);
+    Object mutatedList = currentList();
+    FuzzTargetRunner.runOne(input);
+    assert lastList == mutatedList : "Arguments for the last mutated input were not reused";
+
+    // The arguments have been passed to the fuzz target and may have been modified by it, so
+    // executing the same input again requires reading it.
+    FuzzTargetRunner.runOne(input);
+    assert lastList != mutatedList : "Arguments passed to the fuzz target were reused";
+    assert lastList.equals(mutatedList);
+
+    // The arguments are exposed after the input has been written.
+    input = FuzzTargetRunner.mutateOne(input, 100, 2);
+    mutatedList = currentList();
+    getMutator().getArguments();
+    FuzzTargetRunner.runOne(input);
+    assert lastList != mutatedList : "Exposed arguments were reused";
+    assert lastList.equals(mutatedList);
+
+    // libFuzzer executes an input other than the one written by the mutator, with the same and with
+    // a different length.
+    input = FuzzTargetRunner.mutateOne(input, 100, 3);
+    mutatedList = currentList();
+    byte[] otherInput = input.clone();
+    otherInput[otherInput.length - 1] ^= 1;
+    FuzzTargetRunner.runOne(otherInput);
+    assert lastList != mutatedList : "Arguments for a different input were reused";
+
+    input = FuzzTargetRunner.mutateOne(input, 100, 4);
+    mutatedList = currentList();
+    FuzzTargetRunner.runOne(Arrays.copyOf(input, input.length + 1));
+    assert lastList != mutatedList : "Arguments for a longer input were reused";
+
+    // The mutator state doesn't fit into maxSize, so the input has been truncated to nothing and
+    // doesn't correspond to the arguments anymore.
+    input = FuzzTargetRunner.mutateOne(input, 0, 5);
+    assert input.length == 0;
+    mutatedList = currentList();
+    FuzzTargetRunner.runOne(input);
+    assert lastList != mutatedList : "Arguments for a truncated input were reused";
+  }
+
+  private static ArgumentsMutator getMutator() throws ReflectiveOperationException {
+    Field mutator = FuzzTargetRunner.class.getDeclaredField("mutator");
+    mutator.setAccessible(true);
+    return (ArgumentsMutator) mutator.get(null);
+  }
+
+  // Returns the mutator's current list argument without marking it as exposed, which
+  // ArgumentsMutator#getArguments would do.
+  private static Object currentList() throws ReflectiveOperationException {
+    Field arguments = ArgumentsMutator.class.getDeclaredField("arguments");
+    arguments.setAccessible(true);
+    return ((Object[]) arguments.get(getMutator()))[0];
+  }
+}
@@ -28,7 +28,6 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import sun.misc.Unsafe;
 
 public class FuzzTargetRunnerTest {
@@ -70,7 +69,7 @@ public class FuzzTargetRunnerTest {
       assert DEDUP_TOKEN_PATTERN.matcher(outOutput).find();
 
       assert finishedAllNonCrashingRuns : "Did not finish all expected runs before crashing";
-      assert CoverageMap.getCoveredIds().equals(Stream.of(0, 1, 2, 3).collect(Collectors.toSet()));
+      assert Arrays.equals(CoverageMap.getCoveredIds().stream().toArray(), new int[] {0, 1, 2, 3});
       assert UNSAFE.getByte(CoverageMap.countersAddress) == 2;
       assert UNSAFE.getByte(CoverageMap.countersAddress + 1) == 2;
       assert UNSAFE.getByte(CoverageMap.countersAddress + 2) == 2;
@@ -114,7 +113,7 @@ public class FuzzTargetRunnerTest {
 
       assert result == 0;
       assert fuzzerInitializeRan;
-      assert CoverageMap.getCoveredIds().equals(Stream.of(0).collect(Collectors.toSet()));
+      assert Arrays.equals(CoverageMap.getCoveredIds().stream().toArray(), new int[] {0});
       assert UNSAFE.getByte(CoverageMap.countersAddress) == i;
       assert UNSAFE.getByte(CoverageMap.countersAddress + 1) == 0;
       assert UNSAFE.getByte(CoverageMap.countersAddress + 2) == 0;
@@ -136,7 +135,7 @@ public class FuzzTargetRunnerTest {
       int result = FuzzTargetRunner.runOne("first finding".getBytes(StandardCharsets.UTF_8));
 
       assert result == 0;
-      assert CoverageMap.getCoveredIds().equals(Stream.of(0, 1).collect(Collectors.toSet()));
+      assert Arrays.equals(CoverageMap.getCoveredIds().stream().toArray(), new int[] {0, 1});
       assert UNSAFE.getByte(CoverageMap.countersAddress) == 2;
       assert UNSAFE.getByte(CoverageMap.countersAddress + 1) == i;
       assert UNSAFE.getByte(CoverageMap.countersAddress + 2) == 0;
@@ -162,7 +161,7 @@ public class FuzzTargetRunnerTest {
       int result = FuzzTargetRunner.runOne("second finding".getBytes(StandardCharsets.UTF_8));
 
       assert result == 0;
-      assert CoverageMap.getCoveredIds().equals(Stream.of(0, 1, 2).collect(Collectors.toSet()));
+      assert Arrays.equals(CoverageMap.getCoveredIds().stream().toArray(), new int[] {0, 1, 2});
       assert UNSAFE.getByte(CoverageMap.countersAddress) == 2;
       assert UNSAFE.getByte(CoverageMap.countersAddress + 1) == 2;
       assert UNSAFE.getByte(CoverageMap.countersAddress + 2) == i;
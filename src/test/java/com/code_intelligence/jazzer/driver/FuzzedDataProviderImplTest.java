@@ -26,6 +26,10 @@ public class FuzzedDataProviderImplTest {
              FuzzedDataProviderImpl.withJavaData(INPUT_BYTES)) {
       verifyFuzzedDataProvider(fuzzedDataProvider);
     }
+    try (FuzzedDataProviderImpl fuzzedDataProvider =
+             PureJavaFuzzedDataProviderImpl.withJavaData(INPUT_BYTES)) {
+      verifyFuzzedDataProvider(fuzzedDataProvider);
+    }
   }
 
   private strictfp static void verifyFuzzedDataProvider(FuzzedDataProvider data) {
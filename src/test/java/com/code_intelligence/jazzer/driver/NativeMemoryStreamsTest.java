@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 Code Intelligence GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.code_intelligence.jazzer.driver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.code_intelligence.jazzer.utils.UnsafeProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sun.misc.Unsafe;
+
+public class NativeMemoryStreamsTest {
+  private static final Unsafe UNSAFE = UnsafeProvider.getUnsafe();
+  private static final int SIZE = 8;
+
+  private long dataPtr;
+
+  @Before
+  public void allocate() {
+    dataPtr = UNSAFE.allocateMemory(SIZE);
+    for (int i = 0; i < SIZE; i++) {
+      UNSAFE.putByte(dataPtr + i, (byte) (i + 0xF8));
+    }
+  }
+
+  @After
+  public void free() {
+    UNSAFE.freeMemory(dataPtr);
+  }
+
+  @Test
+  public void inputStream_readsNativeMemory() {
+    NativeMemoryInputStream in = new NativeMemoryInputStream(dataPtr, SIZE);
+    assertEquals(8, in.available());
+    assertEquals(0xF8, in.read());
+    assertEquals(7, in.available());
+
+    byte[] buffer = new byte[10];
+    assertEquals(7, in.read(buffer, 1, 9));
+    assertArrayEquals(
+        new byte[] {0, (byte) 0xF9, (byte) 0xFA, (byte) 0xFB, (byte) 0xFC, (byte) 0xFD,
+            (byte) 0xFE, (byte) 0xFF, 0, 0},
+        buffer);
+    assertEquals(0, in.available());
+    assertEquals(-1, in.read());
+    assertEquals(-1, in.read(buffer, 0, 1));
+    assertEquals(0, in.read(buffer, 0, 0));
+  }
+
+  @Test
+  public void inputStream_reset() {
+    NativeMemoryInputStream in = new NativeMemoryInputStream();
+    assertEquals(-1, in.read());
+    in.reset(dataPtr + 6, 2);
+    assertEquals(2, in.available());
+    assertEquals(1, in.skip(1));
+    assertEquals(0xFF, in.read());
+    assertEquals(0, in.skip(5));
+  }
+
+  @Test
+  public void outputStream_truncatesAtCapacity() {
+    NativeMemoryOutputStream out = new NativeMemoryOutputStream(dataPtr, 4);
+    out.write(1);
+    out.write(new byte[] {2, 3, 4, 5, 6}, 0, 5);
+    out.write(7);
+    assertEquals(4, out.size());
+
+    byte[] contents = new byte[SIZE];
+    new NativeMemoryInputStream(dataPtr, SIZE).read(contents, 0, SIZE);
+    assertArrayEquals(
+        new byte[] {1, 2, 3, 4, (byte) 0xFC, (byte) 0xFD, (byte) 0xFE, (byte) 0xFF}, contents);
+
+    out.reset(dataPtr, SIZE);
+    assertEquals(0, out.size());
+  }
+}
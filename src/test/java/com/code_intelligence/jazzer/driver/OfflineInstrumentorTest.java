@@ -0,0 +1,221 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.driver;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Test;
+
+public class OfflineInstrumentorTest {
+  private static final int NUM_CLASSES = 200;
+  private static final int FIRST_ID = 10;
+
+  /**
+   * Instruments a class by replacing it with "<class name> <first ID> <number of IDs>". The number
+   * of IDs a class requires is its bytecode interpreted as a string, classes with a negative number
+   * aren't instrumented.
+   */
+  private static class FakeInstrumentor implements OfflineInstrumentor.Instrumentor {
+    @Override
+    public Integer countCoverageIds(String internalClassName, byte[] bytecode) {
+      randomDelay();
+      int numIds = Integer.parseInt(new String(bytecode, UTF_8));
+      return numIds >= 0 ? numIds : null;
+    }
+
+    @Override
+    public byte[] instrumentWithFirstId(String internalClassName, byte[] bytecode, int firstId) {
+      randomDelay();
+      return String.format("%s %d %s", internalClassName, firstId, new String(bytecode, UTF_8))
+          .getBytes(UTF_8);
+    }
+
+    // Let the tasks finish in a different order than they have been started in.
+    private static void randomDelay() {
+      LockSupport.parkNanos(ThreadLocalRandom.current().nextInt(100_000));
+    }
+  }
+
+  private static Map<String, byte[]> createJar(Path jar) throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(UTF_8));
+    entries.put("com/", new byte[0]);
+    entries.put("com/example/", new byte[0]);
+    entries.put("module-info.class", "module".getBytes(UTF_8));
+    for (int i = 0; i < NUM_CLASSES; i++) {
+      // Every fifth class isn't instrumented and every seventh doesn't require coverage IDs.
+      int numIds = i % 5 == 0 ? -1 : i % 7;
+      entries.put("com/example/Class" + i + ".class", String.valueOf(numIds).getBytes(UTF_8));
+      if (i == NUM_CLASSES / 2) {
+        entries.put("com/example/resource.txt", "resource".getBytes(UTF_8));
+        entries.put("META-INF/versions/11/com/example/Class1.class", "3".getBytes(UTF_8));
+      }
+    }
+
+    try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar.toFile()))) {
+      int i = 0;
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        ZipEntry zipEntry = new ZipEntry(entry.getKey());
+        // Alternate between stored and compressed entries, which have to specify their size and
+        // checksum upfront.
+        if (i++ % 2 == 0) {
+          CRC32 crc = new CRC32();
+          crc.update(entry.getValue());
+          zipEntry.setMethod(ZipEntry.STORED);
+          zipEntry.setSize(entry.getValue().length);
+          zipEntry.setCrc(crc.getValue());
+        }
+        zos.putNextEntry(zipEntry);
+        zos.write(entry.getValue());
+        zos.closeEntry();
+      }
+    }
+    return entries;
+  }
+
+  private static Map<String, byte[]> readJar(Path jar) throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      for (JarEntry entry : Collections.list(jarFile.entries())) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = jarFile.getInputStream(entry)) {
+          byte[] buf = new byte[8192];
+          int n;
+          while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+          }
+        }
+        entries.put(entry.getName(), out.toByteArray());
+      }
+    }
+    return entries;
+  }
+
+  private static List<Integer> compressionMethods(Path jar) throws IOException {
+    List<Integer> methods = new ArrayList<>();
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      for (JarEntry entry : Collections.list(jarFile.entries())) {
+        methods.add(entry.getMethod());
+      }
+    }
+    return methods;
+  }
+
+  @Test
+  public void testCoverageIdsAreContiguousAndDeterministic() throws IOException {
+    Path dir = Files.createTempDirectory("offline_instrumentor");
+    Path originalJar = dir.resolve("original.jar");
+    Map<String, byte[]> originalEntries = createJar(originalJar);
+
+    Map<String, byte[]> firstOutput = null;
+    for (int run = 0; run < 5; run++) {
+      Path instrumentedJar = dir.resolve("instrumented" + run + ".jar");
+      List<String> errorMessages = Collections.synchronizedList(new ArrayList<>());
+      int nextId = OfflineInstrumentor.createInstrumentedJar(new FakeInstrumentor(),
+          originalJar.toString(), instrumentedJar.toString(), FIRST_ID, errorMessages);
+      assertEquals(Collections.emptyList(), errorMessages);
+
+      Map<String, byte[]> instrumentedEntries = readJar(instrumentedJar);
+      // The output jar contains the same entries in the same order.
+      assertEquals(new ArrayList<>(originalEntries.keySet()),
+          new ArrayList<>(instrumentedEntries.keySet()));
+      // Entries keep their compression method, even if their contents changed.
+      assertEquals(compressionMethods(originalJar), compressionMethods(instrumentedJar));
+
+      // Classes are assigned contiguous, non-overlapping ranges of IDs in entry order.
+      int expectedFirstId = FIRST_ID;
+      int numInstrumentedClasses = 0;
+      for (Map.Entry<String, byte[]> entry : originalEntries.entrySet()) {
+        String name = entry.getKey();
+        byte[] original = entry.getValue();
+        byte[] instrumented = instrumentedEntries.get(name);
+        boolean isInstrumented = name.endsWith(".class") && !name.equals("module-info.class")
+            && !new String(original, UTF_8).startsWith("-");
+        if (!isInstrumented) {
+          assertArrayEquals(name, original, instrumented);
+          continue;
+        }
+        numInstrumentedClasses++;
+        String[] parts = new String(instrumented, UTF_8).split(" ");
+        String classFile = name.replaceFirst("^META-INF/versions/11/", "");
+        assertEquals(classFile.substring(0, classFile.length() - ".class".length()), parts[0]);
+        assertEquals(name, expectedFirstId, Integer.parseInt(parts[1]));
+        expectedFirstId += Integer.parseInt(parts[2]);
+      }
+      assertEquals(NUM_CLASSES - NUM_CLASSES / 5 + 1, numInstrumentedClasses);
+      assertEquals(expectedFirstId, nextId);
+
+      // The output doesn't depend on the order in which the classes have been instrumented.
+      if (firstOutput == null) {
+        firstOutput = instrumentedEntries;
+      } else {
+        for (Map.Entry<String, byte[]> entry : firstOutput.entrySet()) {
+          String name = entry.getKey();
+          assertArrayEquals(name, entry.getValue(), instrumentedEntries.get(name));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFailingClassIsCopied() throws IOException {
+    Path dir = Files.createTempDirectory("offline_instrumentor");
+    Path originalJar = dir.resolve("original.jar");
+    Map<String, byte[]> originalEntries = createJar(originalJar);
+    Path instrumentedJar = dir.resolve("instrumented.jar");
+
+    List<String> errorMessages = Collections.synchronizedList(new ArrayList<>());
+    OfflineInstrumentor.createInstrumentedJar(new FakeInstrumentor() {
+      @Override
+      public byte[] instrumentWithFirstId(String internalClassName, byte[] bytecode, int firstId) {
+        if (internalClassName.equals("com/example/Class2")) {
+          throw new IllegalStateException("expected");
+        }
+        return super.instrumentWithFirstId(internalClassName, bytecode, firstId);
+      }
+    }, originalJar.toString(), instrumentedJar.toString(), FIRST_ID, errorMessages);
+
+    assertEquals(1, errorMessages.size());
+    assertTrue(errorMessages.get(0), errorMessages.get(0).contains("com/example/Class2"));
+    Map<String, byte[]> instrumentedEntries = readJar(instrumentedJar);
+    assertArrayEquals(originalEntries.get("com/example/Class2.class"),
+        instrumentedEntries.get("com/example/Class2.class"));
+    // The IDs of the failed class remain reserved, so the IDs of the other classes don't change.
+    assertEquals(FIRST_ID + 1 + 2,
+        Integer.parseInt(new String(instrumentedEntries.get("com/example/Class3.class"), UTF_8)
+                             .split(" ")[1]));
+  }
+}
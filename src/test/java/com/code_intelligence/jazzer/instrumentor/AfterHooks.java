@@ -61,6 +61,24 @@ public class AfterHooks {
     ((AfterHooksTargetContract) thisObject).verifySecondSecret((String) returnValue);
   }
 
+  // Typed hooks can be applied to the same method as other hooks.
+  @MethodHook(type = HookType.AFTER,
+      targetClassName = "com.code_intelligence.jazzer.instrumentor.AfterHooksTarget",
+      targetMethod = "getSecondSecret", targetMethodDescriptor = "()Ljava/lang/String;")
+  public static void
+  patchGetSecondSecretTyped(Object thisObject, int hookId, String returnValue) {
+    ((AfterHooksTargetContract) thisObject).verifyTypedSecondSecret(returnValue);
+  }
+
+  @MethodHook(type = HookType.AFTER,
+      targetClassName = "com.code_intelligence.jazzer.instrumentor.AfterHooksTarget",
+      targetMethod = "getTypedSecret", targetMethodDescriptor = "(I)I")
+  public static void
+  patchGetTypedSecret(Object alwaysNull, int offset, int hookId, int returnValue) {
+    // Typed hooks receive the return value of the original method directly.
+    instance.verifyTypedSecret(returnValue - offset);
+  }
+
   // Verify the interaction of a BEFORE and an AFTER hook. The BEFORE hook modifies the argument of
   // the StringBuilder constructor.
   @MethodHook(
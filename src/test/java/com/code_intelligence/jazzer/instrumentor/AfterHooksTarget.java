@@ -43,11 +43,15 @@ public class AfterHooksTarget implements AfterHooksTargetContract {
     getFirstSecret();
 
     verifySecondSecret("not_secret_at_all");
+    verifyTypedSecondSecret("not_secret_at_all");
     getSecondSecret();
 
     verifyThirdSecret("not_the_secret");
     new StringBuilder("not_hunter3");
 
+    verifyTypedSecret(0);
+    getTypedSecret(5);
+
     return results;
   }
 
@@ -82,4 +86,17 @@ public class AfterHooksTarget implements AfterHooksTargetContract {
   public void verifyThirdSecret(String secret) {
     results.put("verifyThirdSecret", secret.equals("hunter3"));
   }
+
+  public void verifyTypedSecondSecret(String secret) {
+    results.put("verifyTypedSecondSecret", secret.equals("hunter2!"));
+  }
+
+  @SuppressWarnings("UnusedReturnValue")
+  static int getTypedSecret(int offset) {
+    return 42 + offset;
+  }
+
+  public void verifyTypedSecret(int secret) {
+    results.put("verifyTypedSecret", secret == 42);
+  }
 }
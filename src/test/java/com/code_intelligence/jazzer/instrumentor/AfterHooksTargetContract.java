@@ -26,4 +26,8 @@ public interface AfterHooksTargetContract extends DynamicTestContract {
   void verifySecondSecret(String secret);
 
   void verifyThirdSecret(String secret);
+
+  void verifyTypedSecondSecret(String secret);
+
+  void verifyTypedSecret(int secret);
 }
@@ -50,4 +50,16 @@ public class BeforeHooks {
       ((BeforeHooksTargetContract) thisObject).setFuncWithArgsCalled((Boolean) arguments[0]);
     }
   }
+
+  @MethodHook(type = HookType.BEFORE,
+      targetClassName = "com.code_intelligence.jazzer.instrumentor.BeforeHooksTarget",
+      targetMethod = "hasTypedFuncBeenCalled", targetMethodDescriptor = "(BJLjava/lang/String;)Z")
+  public static void
+  patchHasTypedFuncBeenCalled(
+      Object thisObject, int byteArgument, long longArgument, String stringArgument, int hookId) {
+    // Typed hooks receive the arguments of the original method directly.
+    if (byteArgument == 1 && longArgument == 2 && stringArgument.equals("foo")) {
+      ((BeforeHooksTargetContract) thisObject).setTypedFuncCalled(true);
+    }
+  }
 }
@@ -23,6 +23,7 @@ public class BeforeHooksTarget implements BeforeHooksTargetContract {
   Map<String, Boolean> results = new HashMap<>();
   Boolean func1Called = false;
   Boolean funcWithArgsCalled = false;
+  boolean typedFuncCalled = false;
 
   static Integer getTimesCalled() {
     return ++timesCalled;
@@ -40,6 +41,8 @@ public class BeforeHooksTarget implements BeforeHooksTargetContract {
       results.put("hasBeenCalledWithArgs", hasFuncWithArgsBeenCalled(true, "foo"));
     }
 
+    results.put("hasBeenCalledWithTypedArgs", hasTypedFuncBeenCalled((byte) 1, 2, "foo"));
+
     return results;
   }
 
@@ -58,4 +61,13 @@ public class BeforeHooksTarget implements BeforeHooksTargetContract {
   private boolean hasFuncWithArgsBeenCalled(Boolean boolArgument, String stringArgument) {
     return funcWithArgsCalled;
   }
+
+  public void setTypedFuncCalled(boolean val) {
+    typedFuncCalled = val;
+  }
+
+  private boolean hasTypedFuncBeenCalled(
+      byte byteArgument, long longArgument, String stringArgument) {
+    return typedFuncCalled;
+  }
 }
@@ -22,4 +22,6 @@ public interface BeforeHooksTargetContract extends DynamicTestContract {
   void func1();
 
   void setFuncWithArgsCalled(Boolean val);
+
+  void setTypedFuncCalled(boolean val);
 }
@@ -0,0 +1,29 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.code_intelligence.jazzer.instrumentor;
+
+public class ClassConstantsTarget {
+  public static boolean matches(String input, int number, long bigNumber, double fraction) {
+    switch (input) {
+      case "jazzer":
+        return number == 0xCAFEBABE;
+      case "fuzzing":
+        return bigNumber == 0x1234567890L;
+      default:
+        return fraction == 1.5 && number == 100000;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+// Copyright 2021 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.code_intelligence.jazzer.instrumentor
+
+import com.code_intelligence.jazzer.instrumentor.PatchTestUtils.classToBytecode
+import org.junit.Test
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class ClassConstantsTest {
+
+    @Test
+    fun testClassConstants() {
+        val constants = ClassConstants.of(classToBytecode(ClassConstantsTarget::class.java))
+        assertTrue(constants.strings.containsAll(listOf("jazzer", "fuzzing")))
+        val integrals = constants.integrals.toList()
+        assertTrue(integrals.containsAll(listOf(0xCAFEBABE.toInt().toLong(), 0x1234567890L, 100000L)))
+        // Small constants are pushed with a single instruction and thus not in the constant pool.
+        assertFalse(integrals.contains(0L))
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.instrumentor
+
+import com.code_intelligence.jazzer.instrumentor.PatchTestUtils.bytecodeToClass
+import com.code_intelligence.jazzer.instrumentor.PatchTestUtils.classToBytecode
+import org.junit.Before
+import org.junit.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+private val allInstrumentationTypes = setOf(
+    InstrumentationType.CMP,
+    InstrumentationType.DIV,
+    InstrumentationType.GEP,
+)
+
+private val mockCallbacksInternalClassName = MockTraceDataFlowCallbacks::class.java.name.replace('.', '/')
+
+/**
+ * Applies all instrumentations to [targetClass] in a single pass and returns an instance of the resulting class.
+ */
+private fun instrumentAll(targetClass: Class<*>, hooks: List<Hook>, firstEdgeId: Int): Pair<DynamicTestContract, Int> {
+    val internalClassName = targetClass.name.replace('.', '/')
+    val instrumentor = ClassInstrumentor(internalClassName, classToBytecode(targetClass))
+        .coverage(firstEdgeId, MockCoverageMap::class.java)
+        .traceDataFlow(allInstrumentationTypes, mockCallbacksInternalClassName)
+        .hooks(HookIndex(hooks), null)
+    val patchedClass = bytecodeToClass(targetClass.name, instrumentor.instrument())
+    return Pair(patchedClass.getDeclaredConstructor().newInstance() as DynamicTestContract, instrumentor.numEdgeIds)
+}
+
+private fun assertCoverageRecorded(firstEdgeId: Int, numEdgeIds: Int) {
+    assertTrue(numEdgeIds > 0)
+    val coveredEdgeIds = (0 until MockCoverageMap.SIZE).filter { MockCoverageMap.counters.get(it) != 0.toByte() }
+    assertTrue(coveredEdgeIds.isNotEmpty())
+    assertTrue(coveredEdgeIds.all { it >= firstEdgeId && it < firstEdgeId + numEdgeIds })
+}
+
+class ClassInstrumentorTest {
+
+    @Before
+    fun setUp() {
+        MockCoverageMap.clear()
+        MockTraceDataFlowCallbacks.init()
+    }
+
+    @Test
+    fun testTraceDataFlowTarget() {
+        val targetClass = TraceDataFlowInstrumentationTarget::class.java
+        val (instance, numEdgeIds) = instrumentAll(targetClass, emptyList(), 100)
+        assertSelfCheck(instance)
+        assertCoverageRecorded(100, numEdgeIds)
+        val fusedCalls = MockTraceDataFlowCallbacks.getHookCalls()
+
+        // The coverage and hook instrumentation must neither add nor hide data flow events.
+        MockTraceDataFlowCallbacks.init()
+        val internalClassName = targetClass.name.replace('.', '/')
+        val separatelyInstrumented = bytecodeToClass(
+            targetClass.name,
+            TraceDataFlowInstrumentor(allInstrumentationTypes, mockCallbacksInternalClassName)
+                .instrument(internalClassName, classToBytecode(targetClass)),
+        )
+        assertSelfCheck(separatelyInstrumented.getDeclaredConstructor().newInstance() as DynamicTestContract)
+        assertEquals(MockTraceDataFlowCallbacks.getHookCalls(), fusedCalls)
+        assertTrue(fusedCalls.isNotEmpty())
+    }
+
+    @Test
+    fun testAfterHooksTarget() {
+        val hooks = Hooks.loadHooks(emptyList(), setOf(AfterHooks::class.java.name)).first().hooks
+        val (instance, numEdgeIds) = instrumentAll(AfterHooksTarget::class.java, hooks, 0)
+        // Only passes if the hooks have been applied.
+        assertSelfCheck(instance, true)
+        assertCoverageRecorded(0, numEdgeIds)
+        assertTrue(MockTraceDataFlowCallbacks.getHookCalls().isNotEmpty())
+    }
+}
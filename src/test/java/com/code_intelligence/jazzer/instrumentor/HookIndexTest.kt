@@ -0,0 +1,124 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.instrumentor
+
+import com.code_intelligence.jazzer.api.HookType
+import com.code_intelligence.jazzer.api.MethodHook
+import org.junit.Test
+import java.lang.invoke.MethodHandle
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+object IndexTestHooks {
+    @MethodHook(type = HookType.AFTER, targetClassName = "java.lang.String", targetMethod = "startsWith")
+    @JvmStatic
+    fun afterB(method: MethodHandle, thisObject: Any?, arguments: Array<Any?>, hookId: Int, returnValue: Any?) {}
+
+    @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.String", targetMethod = "startsWith")
+    @JvmStatic
+    fun beforeA(method: MethodHandle, thisObject: Any?, arguments: Array<Any?>, hookId: Int) {}
+
+    @MethodHook(type = HookType.AFTER, targetClassName = "java.lang.String", targetMethod = "startsWith")
+    @JvmStatic
+    fun afterA(method: MethodHandle, thisObject: Any?, arguments: Array<Any?>, hookId: Int, returnValue: Any?) {}
+
+    @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.String", targetMethod = "startsWith")
+    @JvmStatic
+    fun beforeC(method: MethodHandle, thisObject: Any?, arguments: Array<Any?>, hookId: Int) {}
+
+    @MethodHook(
+        type = HookType.BEFORE,
+        targetClassName = "java.lang.String",
+        targetMethod = "startsWith",
+        targetMethodDescriptor = "(Ljava/lang/String;)Z",
+    )
+    @JvmStatic
+    fun beforeWithDescriptor(method: MethodHandle, thisObject: Any?, arguments: Array<Any?>, hookId: Int) {}
+
+    @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.String", targetMethod = "startsWith")
+    @JvmStatic
+    fun beforeB(method: MethodHandle, thisObject: Any?, arguments: Array<Any?>, hookId: Int) {}
+
+    @MethodHook(type = HookType.REPLACE, targetClassName = "java.lang.String", targetMethod = "endsWith")
+    @JvmStatic
+    fun replaceEndsWith(method: MethodHandle, thisObject: Any?, arguments: Array<Any?>, hookId: Int): Any? = null
+
+    @MethodHook(
+        type = HookType.BEFORE,
+        targetClassName = "java.lang.String",
+        targetMethod = "endsWith",
+        targetMethodDescriptor = "(Ljava/lang/CharSequence;)Z",
+    )
+    @JvmStatic
+    fun beforeEndsWith(method: MethodHandle, thisObject: Any?, arguments: Array<Any?>, hookId: Int) {}
+}
+
+class HookIndexTest {
+
+    private val hooks = IndexTestHooks::class.java.methods
+        .filter { it.isAnnotationPresent(MethodHook::class.java) }
+        .associate { method ->
+            val annotation = method.getAnnotation(MethodHook::class.java)
+            method.name to Hook.createAndVerifyHook(method, annotation, annotation.targetClassName)
+        }
+
+    private fun index(vararg names: String) = HookIndex(names.map { hooks.getValue(it) })
+
+    private fun HookIndex.findMatchingHookNames(owner: String, name: String, descriptor: String) =
+        findMatchingHooks(owner, name, descriptor).map { it.hookMethodName }
+
+    @Test
+    fun testRegistrationOrder() {
+        val index = index("afterB", "beforeA", "afterA", "beforeC", "beforeWithDescriptor", "beforeB")
+        // BEFORE hooks precede AFTER hooks, but hooks of the same type keep their registration order.
+        assertEquals(
+            listOf("beforeA", "beforeC", "beforeB", "afterB", "afterA"),
+            index.findMatchingHookNames("java/lang/String", "startsWith", "(Ljava/lang/String;I)Z"),
+        )
+        // Hooks for a particular descriptor precede those for all overloads of the same type.
+        assertEquals(
+            listOf("beforeWithDescriptor", "beforeA", "beforeC", "beforeB", "afterB", "afterA"),
+            index.findMatchingHookNames("java/lang/String", "startsWith", "(Ljava/lang/String;)Z"),
+        )
+
+        // Reversing the registration order reverses the order within each type.
+        assertEquals(
+            listOf("beforeB", "beforeC", "beforeA", "afterA", "afterB"),
+            index("beforeB", "beforeC", "afterA", "beforeA", "afterB")
+                .findMatchingHookNames("java/lang/String", "startsWith", "(Ljava/lang/String;I)Z"),
+        )
+    }
+
+    @Test
+    fun testNoMatchingHooks() {
+        val index = index("beforeA", "beforeWithDescriptor", "replaceEndsWith")
+        assertTrue(index.findMatchingHooks("java/lang/String", "equals", "(Ljava/lang/Object;)Z").isEmpty())
+        assertTrue(index.findMatchingHooks("java/lang/Object", "startsWith", "(Ljava/lang/String;)Z").isEmpty())
+    }
+
+    @Test
+    fun testConflictingReplaceHook() {
+        val index = index("replaceEndsWith", "beforeEndsWith")
+        assertEquals(
+            listOf("replaceEndsWith"),
+            index.findMatchingHookNames("java/lang/String", "endsWith", "(Ljava/lang/String;)Z"),
+        )
+        // The conflict is only reported for the overload targeted by both hooks.
+        assertFailsWith<IllegalStateException> {
+            index.findMatchingHooks("java/lang/String", "endsWith", "(Ljava/lang/CharSequence;)Z")
+        }
+    }
+}
@@ -0,0 +1,45 @@
+// Copyright 2021 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.code_intelligence.jazzer.instrumentor
+
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class HookTargetIndexTest {
+
+    @Test
+    fun testIndexIsReused() {
+        val indexDir = Files.createTempDirectory("hook_index")
+        HookTargetIndex(indexDir).use { index ->
+            assertTrue(
+                index.classesToHook("java.lang.CharSequence")
+                    .containsAll(listOf("java.lang.CharSequence", "java.lang.String")),
+            )
+            assertEquals(listOf("java.lang.String"), index.classesToHook("java.lang.String"))
+        }
+        val indexFile = Files.list(indexDir).use { it.iterator().asSequence().single() }
+
+        // A target that is only resolved this way if the index is used instead of a new scan.
+        Files.write(indexFile, listOf("com.example.Target com.example.Implementation"), StandardOpenOption.APPEND)
+        HookTargetIndex(indexDir).use { index ->
+            assertEquals(listOf("com.example.Implementation"), index.classesToHook("com.example.Target"))
+            assertTrue(index.classesToHook("java.lang.CharSequence").contains("java.lang.String"))
+        }
+    }
+}
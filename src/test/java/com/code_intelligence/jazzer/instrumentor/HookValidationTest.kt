@@ -23,7 +23,7 @@ class HookValidationTest {
     @Test
     fun testValidHooks() {
         val hooks = Hooks.loadHooks(emptyList(), setOf(ValidHookMocks::class.java.name)).first().hooks
-        assertEquals(5, hooks.size)
+        assertEquals(8, hooks.size)
     }
 
     @Test
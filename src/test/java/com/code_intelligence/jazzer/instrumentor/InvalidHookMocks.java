@@ -81,6 +81,28 @@ class InvalidHookMocks {
     return new Object();
   }
 
+  @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.Integer",
+      targetMethod = "compare")
+  public static void
+  typedHookWithoutDescriptor(Object alwaysNull, int arg1, int arg2, int hookId) {}
+
+  @MethodHook(type = HookType.REPLACE, targetClassName = "java.lang.Integer",
+      targetMethod = "compare", targetMethodDescriptor = "(II)I")
+  public static int
+  typedReplaceHook(Object alwaysNull, int arg1, int arg2, int hookId) {
+    return 0;
+  }
+
+  @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.Long", targetMethod = "compare",
+      targetMethodDescriptor = "(JJ)I")
+  public static void
+  typedHookWithNarrowedArgument(Object alwaysNull, int arg1, long arg2, int hookId) {}
+
+  @MethodHook(type = HookType.AFTER, targetClassName = "java.lang.Long", targetMethod = "compare",
+      targetMethodDescriptor = "(JJ)I")
+  public static void
+  typedAfterHookWithoutReturnValue(Object alwaysNull, long arg1, long arg2, int hookId) {}
+
   @MethodHook(type = HookType.AFTER, targetClassName = "java.lang.String", targetMethod = "equals")
   public static void primitiveReturnType(MethodHandle method, String thisObject, Object[] arguments,
       int hookId, boolean returnValue) {}
@@ -27,6 +27,10 @@ public class MockTraceDataFlowCallbacks {
     assertedCalls = 0;
   }
 
+  public static List<String> getHookCalls() {
+    return new ArrayList<>(hookCalls);
+  }
+
   public static boolean hookCall(String expectedCall) {
     if (assertedCalls >= hookCalls.size()) {
       System.err.println("Not seen (" + hookCalls.size() + " calls, but " + (assertedCalls + 1)
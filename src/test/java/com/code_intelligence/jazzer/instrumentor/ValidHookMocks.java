@@ -42,4 +42,17 @@ class ValidHookMocks {
   validReplaceHook2(MethodHandle method, String thisObject, Object[] arguments, int hookId) {
     return true;
   }
+
+  @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.Integer",
+      targetMethod = "compare", targetMethodDescriptor = "(II)I")
+  @MethodHook(type = HookType.BEFORE, targetClassName = "java.lang.Short",
+      targetMethod = "compare", targetMethodDescriptor = "(SS)I")
+  public static void
+  validTypedBeforeHook(Object alwaysNull, int arg1, int arg2, int hookId) {}
+
+  @MethodHook(type = HookType.AFTER, targetClassName = "java.lang.String",
+      targetMethod = "regionMatches", targetMethodDescriptor = "(ILjava/lang/String;II)Z")
+  public static void
+  validTypedAfterHook(String thisObject, int toffset, Object other, int ooffset, int len,
+      int hookId, boolean returnValue) {}
 }
@@ -70,10 +70,13 @@ class ArgumentsMutatorTest {
              false)) {
       mutator.init(prng);
     }
+    assertThat(mutator.canReuseArguments()).isTrue();
 
     fuzzThisFunctionArgument1 = null;
     fuzzThisFunctionArgument2 = null;
     mutator.invoke(true);
+    // Detached arguments don't expose the mutator's state.
+    assertThat(mutator.canReuseArguments()).isTrue();
     assertThat(fuzzThisFunctionArgument1).containsExactly(singletonList(true));
     assertThat(fuzzThisFunctionArgument2).containsExactly(false);
 
@@ -136,6 +139,7 @@ class ArgumentsMutatorTest {
     mutator.invoke(false);
     assertThat(fuzzThisFunctionArgument1).containsExactly(singletonList(true));
     assertThat(fuzzThisFunctionArgument2).containsExactly(false);
+    assertThat(mutator.canReuseArguments()).isFalse();
   }
 
   private List<List<Boolean>> mutableFuzzThisFunctionArgument1;
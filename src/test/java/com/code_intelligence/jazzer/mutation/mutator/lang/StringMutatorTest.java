@@ -29,6 +29,9 @@ import com.code_intelligence.jazzer.mutation.support.RandomSupport;
 import com.code_intelligence.jazzer.mutation.support.TestSupport.MockPseudoRandom;
 import com.code_intelligence.jazzer.mutation.support.TypeHolder;
 import com.google.protobuf.ByteString;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.SplittableRandom;
@@ -186,6 +189,22 @@ class StringMutatorTest {
     assertThat(s).isEqualTo("foobarÖÖ");
   }
 
+  @Test
+  void testReadExclusiveRawBytes() throws IOException {
+    SerializingMutator<String> mutator =
+        (SerializingMutator<String>) LangMutators.newFactory().createOrThrow(
+            new TypeHolder<@NotNull String>() {}.annotatedType());
+
+    // As the only or last argument, a String is encoded as its raw UTF-8 bytes without a length.
+    byte[] raw = "foobar".getBytes(StandardCharsets.UTF_8);
+    String s = mutator.readExclusive(new ByteArrayInputStream(raw));
+    assertThat(s).isEqualTo("foobar");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    mutator.writeExclusive(s, out);
+    assertThat(out.toByteArray()).isEqualTo(raw);
+  }
+
   private static boolean isValidUtf8(byte[] data) {
     return ByteString.copyFrom(data).isValidUtf8();
   }
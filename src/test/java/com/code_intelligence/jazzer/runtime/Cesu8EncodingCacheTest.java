@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 Code Intelligence GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.code_intelligence.jazzer.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class Cesu8EncodingCacheTest {
+  private static final Charset CESU8 = Charset.forName("CESU8");
+
+  private static byte[] expectedEncoding(String str) {
+    return str.substring(0, Math.min(str.length(), Cesu8EncodingCache.MAX_CHARS)).getBytes(CESU8);
+  }
+
+  private static byte[] encode(String str) {
+    byte[] buffer = new byte[Cesu8EncodingCache.MAX_ENCODED_LENGTH];
+    return Arrays.copyOf(buffer, Cesu8EncodingCache.encode(str, buffer));
+  }
+
+  @Test
+  public void encodeMatchesCesu8Charset() {
+    String[] strings = {
+        "",
+        "foobar",
+        "\u0000\u007F\u0080\u07FF\u0800\uFFFF",
+        "\uD83D\uDE00",
+        "a\uD800",
+        "\uD800a",
+        "\uDC00\uD800",
+        new String(new char[100]).replace('\0', '\u20AC'),
+        new String(new char[63]).replace('\0', 'a') + "\uD83D\uDE00",
+    };
+    for (String str : strings) {
+      assertArrayEquals(str, expectedEncoding(str), encode(str));
+    }
+  }
+
+  @Test
+  public void encodeMatchesCesu8CharsetOnRandomStrings() {
+    Random random = new Random(1337);
+    for (int i = 0; i < 10000; i++) {
+      char[] chars = new char[random.nextInt(80)];
+      for (int j = 0; j < chars.length; j++) {
+        // Favor surrogates and chars close to encoding length boundaries.
+        switch (random.nextInt(4)) {
+          case 0:
+            chars[j] = (char) (0xD800 + random.nextInt(0x800));
+            break;
+          case 1:
+            chars[j] = (char) random.nextInt(0x100);
+            break;
+          default:
+            chars[j] = (char) random.nextInt(0x10000);
+        }
+      }
+      String str = new String(chars);
+      assertArrayEquals(str, expectedEncoding(str), encode(str));
+    }
+  }
+
+  @Test
+  public void repeatedlySeenStringsAreCached() {
+    String str = new String("repeatedlySeenStringsAreCached");
+    assertNull(Cesu8EncodingCache.getCached(str));
+    byte[] cached = Cesu8EncodingCache.getCached(str);
+    assertArrayEquals(expectedEncoding(str), cached);
+    assertSame(cached, Cesu8EncodingCache.getCached(str));
+    // Strings are identified by reference, not by value.
+    assertNull(Cesu8EncodingCache.getCached(new String(str)));
+  }
+
+  @Test
+  public void longStringsAreNotCached() {
+    String str = new String(new char[Cesu8EncodingCache.MAX_CHARS + 1]);
+    assertNull(Cesu8EncodingCache.getCached(str));
+    assertNull(Cesu8EncodingCache.getCached(str));
+  }
+}
@@ -0,0 +1,35 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.runtime;
+
+import com.github.fmeum.rules_jni.RulesJni;
+
+/**
+ * Provides access to the calls of libFuzzer's data flow hooks recorded by the jazzer_driver
+ * replacement in src/test/native.
+ */
+final class FuzzerCallbackRecorder {
+  static {
+    RulesJni.loadLibrary("jazzer_driver", "/com/code_intelligence/jazzer/driver");
+  }
+
+  private FuzzerCallbackRecorder() {}
+
+  /**
+   * Returns the calls recorded since the last invocation of this method in the order they were
+   * made, each formatted as the name of the hook followed by its arguments.
+   */
+  static native String[] takeRecordedCalls();
+}
@@ -0,0 +1,74 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+public class TraceDataFlowForeignCallbacksTest {
+  private static int javaVersion() {
+    String version = System.getProperty("java.specification.version");
+    // Prior to JDK 9, versions are of the form 1.x.
+    return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+  }
+
+  @Test
+  public void testPrimitiveCallbacks() {
+    assumeTrue(javaVersion() >= 21);
+    assertTrue(TraceDataFlowForeignCallbacks.PRIMITIVE_CALLBACKS_AVAILABLE);
+    FuzzerCallbackRecorder.takeRecordedCalls();
+
+    TraceDataFlowForeignCallbacks.traceCmpInt(1, 2, 3);
+    TraceDataFlowForeignCallbacks.traceCmpLong(-1L, 5L, 4);
+    TraceDataFlowForeignCallbacks.traceDivInt(6, 7);
+    TraceDataFlowForeignCallbacks.traceDivLong(8L, 9);
+    TraceDataFlowForeignCallbacks.traceGep(10L, 11);
+    TraceDataFlowForeignCallbacks.tracePcIndir(12, 13);
+
+    assertArrayEquals(
+        new String[] {
+            "cmp4 3 1 2",
+            "cmp8 4 18446744073709551615 5",
+            "div4 7 6",
+            "div8 9 8",
+            "gep 11 10",
+            "pc_indir 12 13",
+        },
+        FuzzerCallbackRecorder.takeRecordedCalls());
+  }
+
+  @Test
+  public void testArrayCallbacks() {
+    assumeTrue(javaVersion() >= 22);
+    assertTrue(TraceDataFlowForeignCallbacks.ARRAY_CALLBACKS_AVAILABLE);
+    FuzzerCallbackRecorder.takeRecordedCalls();
+
+    TraceDataFlowForeignCallbacks.traceSwitch(1L, new long[] {2, 32, 1, 3}, 4);
+    TraceDataFlowForeignCallbacks.traceMemcmp(
+        new byte[] {5, 6, 7}, 2, new byte[] {5, 8}, 2, -1, 9);
+    TraceDataFlowForeignCallbacks.traceStrstr(new byte[] {10, 11, 12}, 2, 13);
+
+    assertArrayEquals(
+        new String[] {
+            "switch 4 1 32 1 3",
+            "compare_bytes 9 5 6 / 5 8 -1",
+            "memmem 13 10 11",
+        },
+        FuzzerCallbackRecorder.takeRecordedCalls());
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class TraceEventBufferTest {
+  private static final long[] SWITCH_CASES = {3, 64, -5, 1, 9};
+  private static final long[] EMPTY_SWITCH_CASES = {0, 32};
+
+  @Test
+  public void testReplayMatchesDirectCallbacks() {
+    FuzzerCallbackRecorder.takeRecordedCalls();
+
+    // Buffering is disabled by default, so these calls reach the fuzzer callbacks immediately.
+    TraceDataFlowNativeCallbacks.traceCmpInt(1, 2, 3);
+    TraceDataFlowNativeCallbacks.traceConstCmpInt(-1, Integer.MIN_VALUE, 4);
+    TraceDataFlowNativeCallbacks.traceCmpLong(-1L, Long.MAX_VALUE, 5);
+    TraceDataFlowNativeCallbacks.traceSwitch(-1L, SWITCH_CASES, 6);
+    TraceDataFlowNativeCallbacks.traceSwitch(7L, EMPTY_SWITCH_CASES, 8);
+    TraceDataFlowNativeCallbacks.traceDivInt(-9, 10);
+    TraceDataFlowNativeCallbacks.traceDivLong(Long.MIN_VALUE, 11);
+    TraceDataFlowNativeCallbacks.traceGep(-12L, 13);
+    String[] directCalls = FuzzerCallbackRecorder.takeRecordedCalls();
+    assertEquals(8, directCalls.length);
+
+    // Append events just like TraceDataFlowNativeCallbacks does with buffering enabled.
+    TraceEventBuffer.bufferEventsOnCurrentThread();
+    assertTrue(TraceEventBuffer.append(TraceEventBuffer.CMP_INT, 3, 1, 2));
+    assertTrue(TraceEventBuffer.append(TraceEventBuffer.CMP_INT, 4, -1, Integer.MIN_VALUE));
+    assertTrue(TraceEventBuffer.append(TraceEventBuffer.CMP_LONG, 5, -1L, Long.MAX_VALUE));
+    assertTrue(TraceEventBuffer.appendSwitch(-1L, SWITCH_CASES, 6));
+    assertTrue(TraceEventBuffer.appendSwitch(7L, EMPTY_SWITCH_CASES, 8));
+    assertTrue(TraceEventBuffer.append(TraceEventBuffer.DIV_INT, 10, -9, 0));
+    assertTrue(TraceEventBuffer.append(TraceEventBuffer.DIV_LONG, 11, Long.MIN_VALUE, 0));
+    assertTrue(TraceEventBuffer.append(TraceEventBuffer.GEP, 13, -12L, 0));
+    assertArrayEquals(new String[0], FuzzerCallbackRecorder.takeRecordedCalls());
+
+    TraceEventBuffer.drain();
+    assertArrayEquals(directCalls, FuzzerCallbackRecorder.takeRecordedCalls());
+    // The buffer is empty after a drain.
+    TraceEventBuffer.drain();
+    assertArrayEquals(new String[0], FuzzerCallbackRecorder.takeRecordedCalls());
+  }
+
+  @Test
+  public void testOtherThreadsAreNotBuffered() throws InterruptedException {
+    TraceEventBuffer.bufferEventsOnCurrentThread();
+    AtomicBoolean appended = new AtomicBoolean(true);
+    Thread thread = new Thread(() -> {
+      appended.set(TraceEventBuffer.append(TraceEventBuffer.CMP_INT, 1, 2, 3)
+          || TraceEventBuffer.appendSwitch(4, EMPTY_SWITCH_CASES, 5));
+    });
+    thread.start();
+    thread.join();
+    assertFalse(appended.get());
+  }
+}
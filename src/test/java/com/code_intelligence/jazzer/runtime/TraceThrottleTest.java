@@ -0,0 +1,89 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.code_intelligence.jazzer.runtime;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TraceThrottleTest {
+  @Test
+  public void testRepeatedEventsAreThrottled() {
+    TraceThrottle throttle = new TraceThrottle(3);
+    // The first event is new, the next three are allowed by the limit.
+    for (int i = 0; i < 4; i++) {
+      assertTrue(throttle.shouldTrace(5, 7, 1));
+    }
+    assertFalse(throttle.shouldTrace(5, 7, 1));
+    // Different arguments with the same distances are throttled as well.
+    assertFalse(throttle.shouldTrace(13, 15, 1));
+    // Other sites are unaffected.
+    assertTrue(throttle.shouldTrace(5, 7, 2));
+  }
+
+  @Test
+  public void testNewDistanceResetsThrottling() {
+    TraceThrottle throttle = new TraceThrottle(1);
+    assertTrue(throttle.shouldTrace(1L, 2L, 1));
+    assertTrue(throttle.shouldTrace(1L, 2L, 1));
+    assertFalse(throttle.shouldTrace(1L, 2L, 1));
+    // Equal arguments have a new Hamming distance of 0.
+    assertTrue(throttle.shouldTrace(2L, 2L, 1));
+    assertTrue(throttle.shouldTrace(1L, 2L, 1));
+    assertFalse(throttle.shouldTrace(1L, 2L, 1));
+    // Same Hamming distance, but a new number of leading zeros of the difference.
+    assertTrue(throttle.shouldTrace(2L, 1L, 1));
+  }
+
+  @Test
+  public void testThrottlingIsResetPeriodically() {
+    TraceThrottle throttle = new TraceThrottle(1);
+    assertTrue(throttle.shouldTrace(5, 7, 1));
+    assertTrue(throttle.shouldTrace(5, 7, 1));
+    assertFalse(throttle.shouldTrace(5, 7, 1));
+    for (int i = 0; i < TraceThrottle.INPUTS_PER_RESET - 1; i++) {
+      throttle.onInputExecuted();
+    }
+    assertFalse(throttle.shouldTrace(5, 7, 1));
+    throttle.onInputExecuted();
+    assertTrue(throttle.shouldTrace(5, 7, 1));
+    assertFalse(throttle.shouldTrace(5, 7, 1));
+  }
+
+  @Test
+  public void testSitesAreIdentifiedByFullId() {
+    TraceThrottle throttle = new TraceThrottle(0);
+    assertTrue(throttle.shouldTrace(5, 7, 0x12340001));
+    assertFalse(throttle.shouldTrace(5, 7, 0x12340001));
+    // Only the upper bits differ.
+    assertTrue(throttle.shouldTrace(5, 7, 0x56780001));
+    assertTrue(throttle.shouldTrace(5, 7, -1));
+  }
+
+  @Test
+  public void testSwitchCasesAreThrottledIndividually() {
+    TraceThrottle throttle = new TraceThrottle(0);
+    long[] cases = {3, 32, 0, 16, 48};
+    // Compared to 16 with a difference of 15 ^ 16 = 31.
+    assertTrue(throttle.shouldTraceSwitch(15, cases, 1));
+    assertFalse(throttle.shouldTraceSwitch(15, cases, 1));
+    // Compared to 48 with the same difference.
+    assertTrue(throttle.shouldTraceSwitch(47, cases, 1));
+    assertFalse(throttle.shouldTraceSwitch(47, cases, 1));
+    // Switches and compares at the same site don't affect each other.
+    assertTrue(throttle.shouldTrace(15L, 16L, 1));
+  }
+}
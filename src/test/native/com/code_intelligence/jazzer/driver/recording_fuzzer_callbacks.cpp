@@ -0,0 +1,124 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+// Replaces the libFuzzer hooks called by jazzer_fuzzer_callbacks.cpp and
+// trace_event_buffer.cpp with implementations that record their arguments,
+// which tests obtain via FuzzerCallbackRecorder.java.
+
+#include <jni.h>
+
+#include <cstddef>
+#include <cstdint>
+#include <string>
+#include <vector>
+
+#include "com_code_intelligence_jazzer_runtime_FuzzerCallbackRecorder.h"
+#include "src/main/native/com/code_intelligence/jazzer/driver/sanitizer_hooks_with_pc.h"
+
+namespace {
+std::vector<std::string> recorded_calls;
+
+std::string pcToString(void *caller_pc) {
+  return std::to_string(reinterpret_cast<uintptr_t>(caller_pc));
+}
+
+std::string bytesToString(const void *bytes, std::size_t n) {
+  std::string result;
+  const auto *data = static_cast<const uint8_t *>(bytes);
+  for (std::size_t i = 0; i < n; ++i) {
+    result += " " + std::to_string(data[i]);
+  }
+  return result;
+}
+}  // namespace
+
+extern "C" {
+void __sanitizer_cov_trace_cmp4_with_pc(void *caller_pc, uint32_t arg1,
+                                        uint32_t arg2) {
+  recorded_calls.push_back("cmp4 " + pcToString(caller_pc) + " " +
+                           std::to_string(arg1) + " " + std::to_string(arg2));
+}
+
+void __sanitizer_cov_trace_cmp8_with_pc(void *caller_pc, uint64_t arg1,
+                                        uint64_t arg2) {
+  recorded_calls.push_back("cmp8 " + pcToString(caller_pc) + " " +
+                           std::to_string(arg1) + " " + std::to_string(arg2));
+}
+
+void __sanitizer_cov_trace_switch_with_pc(void *caller_pc, uint64_t val,
+                                          uint64_t *cases) {
+  // cases[0] is the number of case values, cases[1] their size in bits.
+  std::string call = "switch " + pcToString(caller_pc) + " " +
+                     std::to_string(val) + " " + std::to_string(cases[1]);
+  for (uint64_t i = 0; i < cases[0]; ++i) {
+    call += " " + std::to_string(cases[2 + i]);
+  }
+  recorded_calls.push_back(call);
+}
+
+void __sanitizer_cov_trace_div4_with_pc(void *caller_pc, uint32_t val) {
+  recorded_calls.push_back("div4 " + pcToString(caller_pc) + " " +
+                           std::to_string(val));
+}
+
+void __sanitizer_cov_trace_div8_with_pc(void *caller_pc, uint64_t val) {
+  recorded_calls.push_back("div8 " + pcToString(caller_pc) + " " +
+                           std::to_string(val));
+}
+
+void __sanitizer_cov_trace_gep_with_pc(void *caller_pc, uintptr_t idx) {
+  recorded_calls.push_back("gep " + pcToString(caller_pc) + " " +
+                           std::to_string(idx));
+}
+
+void __sanitizer_cov_trace_pc_indir_with_pc(void *caller_pc,
+                                            uintptr_t callee) {
+  recorded_calls.push_back("pc_indir " + pcToString(caller_pc) + " " +
+                           std::to_string(callee));
+}
+
+void __sanitizer_weak_hook_compare_bytes(void *caller_pc, const void *s1,
+                                         const void *s2, std::size_t n1,
+                                         std::size_t n2, int result) {
+  recorded_calls.push_back("compare_bytes " + pcToString(caller_pc) +
+                           bytesToString(s1, n1) + " /" +
+                           bytesToString(s2, n2) + " " +
+                           std::to_string(result));
+}
+
+void __sanitizer_weak_hook_memmem(void *caller_pc, const void *s1,
+                                  std::size_t len1, const void *s2,
+                                  std::size_t len2, void *result) {
+  recorded_calls.push_back("memmem " + pcToString(caller_pc) +
+                           bytesToString(s2, len2));
+}
+}
+
+[[maybe_unused]] jobjectArray
+Java_com_code_1intelligence_jazzer_runtime_FuzzerCallbackRecorder_takeRecordedCalls(
+    JNIEnv *env, jclass) {
+  jclass string_class = env->FindClass("java/lang/String");
+  if (string_class == nullptr) return nullptr;
+  jobjectArray result =
+      env->NewObjectArray(recorded_calls.size(), string_class, nullptr);
+  if (result == nullptr) return nullptr;
+  for (std::size_t i = 0; i < recorded_calls.size(); ++i) {
+    jstring call = env->NewStringUTF(recorded_calls[i].c_str());
+    if (call == nullptr) return nullptr;
+    env->SetObjectArrayElement(result, i, call);
+    env->DeleteLocalRef(call);
+  }
+  recorded_calls.clear();
+  return result;
+}
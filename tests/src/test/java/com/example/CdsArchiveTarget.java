@@ -0,0 +1,24 @@
+// Copyright 2023 Code Intelligence GmbH
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.example;
+
+public class CdsArchiveTarget {
+  public static void fuzzerTestOneInput(byte[] data) {
+    // Never crashes so that workers in fork mode exit through libFuzzer's exit.
+    if (data.length > 1 && data[0] == 'J') {
+      System.out.print("");
+    }
+  }
+}
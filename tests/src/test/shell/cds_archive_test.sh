@@ -0,0 +1,54 @@
+#!/bin/bash
+# Copyright 2023 Code Intelligence GmbH
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# This test verifies that the native launcher creates the AppCDS archive specified with
+# --cds_archive in fork mode, in which neither the parent nor the workers exit through System.exit,
+# and that subsequent runs use the archive without recreating it.
+
+# --- begin runfiles.bash initialization v2 ---
+# Copy-pasted from the Bazel Bash runfiles library v2.
+set -uo pipefail; f=bazel_tools/tools/bash/runfiles/runfiles.bash
+source "${RUNFILES_DIR:-/dev/null}/$f" 2>/dev/null || \
+  source "$(grep -sm1 "^$f " "${RUNFILES_MANIFEST_FILE:-/dev/null}" | cut -f2- -d' ')" 2>/dev/null || \
+  source "$0.runfiles/$f" 2>/dev/null || \
+  source "$(grep -sm1 "^$f " "$0.runfiles_manifest" | cut -f2- -d' ')" 2>/dev/null || \
+  source "$(grep -sm1 "^$f " "$0.exe.runfiles_manifest" | cut -f2- -d' ')" 2>/dev/null || \
+  { echo>&2 "ERROR: cannot find $f"; exit 1; }; f=; set -e
+# --- end runfiles.bash initialization v2 ---
+
+function fail() {
+  echo "FAILED: $1"
+  exit 1
+}
+
+archive=$TEST_TMPDIR/jazzer.jsa
+
+function run_jazzer() {
+  "$(rlocation jazzer/launcher/jazzer)" \
+    --cp="$(rlocation jazzer/tests/CdsArchiveTarget_deploy.jar)" \
+    --target_class=com.example.CdsArchiveTarget \
+    --cds_archive="$archive" \
+    "$@"
+}
+
+run_jazzer -fork=2 -max_total_time=10 || fail "Fork mode run failed"
+[[ -s $archive ]] || fail "AppCDS archive has not been created in fork mode"
+[[ -e $archive.tmp ]] && fail "Temporary AppCDS archive has not been removed"
+
+checksum=$(cksum < "$archive")
+output=$(run_jazzer -runs=10 2>&1) || fail "Run with existing archive failed: $output"
+[[ $output == *"Creating AppCDS archive"* ]] && fail "Existing AppCDS archive has been recreated"
+[[ $(cksum < "$archive") == "$checksum" ]] || fail "Existing AppCDS archive has been modified"
+exit 0